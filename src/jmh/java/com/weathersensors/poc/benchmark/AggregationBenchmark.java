@@ -0,0 +1,58 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cost of computing every stat of one sensor over its whole history. streams is the original
+ * SensorController approach, one stream per metric and stat, kept as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class AggregationBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private History history;
+
+    @Setup
+    public void setUp(){
+        history = new History(size);
+    }
+
+    @Benchmark
+    public void streams(Blackhole blackhole){
+        for(Function<WeatherReport, Integer> metric : MetricAccessors.ALL){
+            OptionalDouble average = history.reports.stream().map(metric).filter(Objects::nonNull)
+                    .mapToInt(Integer::intValue).average();
+            blackhole.consume(average);
+            blackhole.consume(history.reports.stream().map(metric).filter(Objects::nonNull).mapToInt(Integer::intValue).min());
+            blackhole.consume(history.reports.stream().map(metric).filter(Objects::nonNull).mapToInt(Integer::intValue).max());
+            blackhole.consume(history.reports.stream().map(metric).filter(Objects::nonNull).mapToInt(Integer::intValue).sum());
+        }
+    }
+
+    @Benchmark
+    public WeatherAggregate singlePass(){
+        return WeatherAggregate.of(history.reports);
+    }
+
+    @Benchmark
+    public WeatherAggregate columnar(){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        history.series.aggregate(aggregate);
+        return aggregate;
+    }
+}
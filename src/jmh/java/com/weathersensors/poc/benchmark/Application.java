@@ -0,0 +1,139 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.WeatherSensorsApplication;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.service.IngestService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * The application without its web server, on a fresh in-memory database, for benchmarks going through the
+ * services and repositories. Properties are given as name=value and override application.properties.
+ */
+final class Application implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+
+    Application(String... properties){
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.main.web-application-type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DATABASE_TO_LOWER=TRUE"));
+        for(String property : properties){
+            args.add("--" + property);
+        }
+        context = new SpringApplicationBuilder(WeatherSensorsApplication.class).run(args.toArray(String[]::new));
+    }
+
+    <T> T bean(Class<T> type){
+        return context.getBean(type);
+    }
+
+    /**
+     * Stores sensors titled prefix-00000 and on, each with running aggregates of a hundred readings.
+     */
+    List<Sensor> createSensors(String prefix, int count){
+        SplittableRandom random = new SplittableRandom(42);
+        List<Sensor> sensors = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            Sensor sensor = new Sensor();
+            sensor.setTitle(String.format("%s-%05d", prefix, i));
+            for(int j = 0; j < 100; j++){
+                sensor.getAggregate().getTemperature().add(random.nextInt(-20, 110));
+                sensor.getAggregate().getHumidity().add(random.nextInt(0, 101));
+                sensor.getAggregate().getWindSpeed().add(random.nextInt(0, 80));
+            }
+            sensors.add(sensor);
+        }
+        return bean(SensorRepository.class).saveAll(sensors);
+    }
+
+    /**
+     * Stores a reading per sensor for every hour in [from, to) through IngestService, so the running aggregates
+     * and the rollups hold them too.
+     */
+    void ingestHourly(List<Sensor> sensors, Instant from, Instant to){
+        ingest(sensors, from, to, Duration.ofHours(1));
+    }
+
+    /**
+     * Stores a reading per sensor every step in [from, to) through IngestService. They are stored in
+     * transactions of at most 500 readings of one sensor, which keeps the persistence context flushed
+     * before every rollup lookup small.
+     */
+    void ingest(List<Sensor> sensors, Instant from, Instant to, Duration step){
+        SplittableRandom random = new SplittableRandom(42);
+        IngestService ingestService = bean(IngestService.class);
+        for(Sensor sensor : sensors){
+            List<WeatherReport> weatherReports = new ArrayList<>();
+            for(Instant time = from; time.isBefore(to); time = time.plus(step)){
+                WeatherReport weatherReport = new WeatherReport.Builder(sensor)
+                        .withTemperature(random.nextInt(-20, 110))
+                        .withHumidity(random.nextInt(0, 101))
+                        .withWithSpeed(random.nextInt(0, 80))
+                        .build();
+                weatherReport.setReportDate(Date.from(time));
+                weatherReports.add(weatherReport);
+                if(weatherReports.size() == 500){
+                    ingestService.ingestAll(weatherReports);
+                    weatherReports = new ArrayList<>();
+                }
+            }
+            if(!weatherReports.isEmpty()){
+                ingestService.ingestAll(weatherReports);
+            }
+        }
+    }
+
+    @Override
+    public void close(){
+        context.close();
+    }
+
+    /**
+     * Discards what is written, or stops the writer at its first byte with {@link FirstByte}.
+     */
+    static final class Sink extends OutputStream {
+
+        private final boolean stopAtFirstByte;
+
+        Sink(boolean stopAtFirstByte){
+            this.stopAtFirstByte = stopAtFirstByte;
+        }
+
+        @Override
+        public void write(int b) throws FirstByte {
+            if(stopAtFirstByte){
+                throw new FirstByte();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws FirstByte {
+            if(stopAtFirstByte && len > 0){
+                throw new FirstByte();
+            }
+        }
+    }
+
+    static final class FirstByte extends IOException {
+
+        @Override
+        public synchronized Throwable fillInStackTrace(){
+            return this;
+        }
+    }
+}
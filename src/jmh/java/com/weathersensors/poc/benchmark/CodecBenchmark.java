@@ -0,0 +1,110 @@
+package com.weathersensors.poc.benchmark;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.weathersensors.poc.dto.WeatherReportBatchItem;
+import com.weathersensors.poc.dto.WeatherReportCodec;
+import com.weathersensors.poc.entity.WeatherReading;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding what POST /weather receives: one reading for a sensor named in the path, and a batch of readings
+ * naming their sensor by id, each one minute after the previous, as JSON (the original encoding) and in the
+ * binary encoding of {@link WeatherReportCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"500"})
+    private int size;
+
+    private ObjectReader readingReader;
+    private ObjectReader batchReader;
+    private byte[] jsonReading;
+    private byte[] binaryReading;
+    private byte[] jsonBatch;
+    private byte[] binaryBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        readingReader = objectMapper.readerFor(WeatherReading.class);
+        batchReader = objectMapper.readerFor(WeatherReportBatchItem.class);
+
+        SplittableRandom random = new SplittableRandom(42);
+        jsonReading = "{\"temperature\":21,\"humidity\":64,\"windSpeed\":12}".getBytes();
+        ByteArrayOutputStream reading = new ByteArrayOutputStream();
+        new WeatherReportCodec.Writer(reading).write(null, null, 21, 64, 12);
+        binaryReading = reading.toByteArray();
+
+        List<WeatherReportBatchItem> items = new ArrayList<>(size);
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        WeatherReportCodec.Writer writer = new WeatherReportCodec.Writer(batch);
+        UUID sensorId = UUID.randomUUID();
+        long reportDate = System.currentTimeMillis() - size * 60_000L;
+        for(int i = 0; i < size; i++){
+            WeatherReportBatchItem item = new WeatherReportBatchItem();
+            item.setSensor(sensorId.toString());
+            item.setReportDate(new Date(reportDate + i * 60_000L));
+            item.setTemperature(random.nextInt(-20, 110));
+            item.setHumidity(random.nextInt(0, 101));
+            item.setWindSpeed(random.nextInt(0, 80));
+            items.add(item);
+            writer.write(sensorId, new Date(item.getReportDate()), item.getTemperature(), item.getHumidity(),
+                    item.getWindSpeed());
+        }
+        jsonBatch = objectMapper.writeValueAsBytes(items);
+        binaryBatch = batch.toByteArray();
+    }
+
+    @Benchmark
+    public WeatherReading jsonReading() throws IOException {
+        return readingReader.readValue(jsonReading);
+    }
+
+    @Benchmark
+    public WeatherReading binaryReading() throws IOException {
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(new ByteArrayInputStream(binaryReading));
+        WeatherReading reading = new WeatherReading();
+        reader.next();
+        reader.readInto(reading);
+        return reading;
+    }
+
+    @Benchmark
+    public List<WeatherReportBatchItem> jsonBatch() throws IOException {
+        List<WeatherReportBatchItem> items = new ArrayList<>(size);
+        try(MappingIterator<WeatherReportBatchItem> iterator = batchReader.readValues(jsonBatch)){
+            while(iterator.hasNextValue()){
+                items.add(iterator.nextValue());
+            }
+        }
+        return items;
+    }
+
+    @Benchmark
+    public List<WeatherReportBatchItem> binaryBatch() throws IOException {
+        List<WeatherReportBatchItem> items = new ArrayList<>(size);
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(new ByteArrayInputStream(binaryBatch));
+        while(reader.next()){
+            items.add(reader.item());
+        }
+        return items;
+    }
+}
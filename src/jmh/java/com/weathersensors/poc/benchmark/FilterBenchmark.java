@@ -0,0 +1,74 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.service.SensorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the sensors GET /sensor is filtered on, one title or ten ids: every sensor loaded and then
+ * filtered with List.contains (the original approach), against SensorService.findSensors, which has the
+ * database look them up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FilterBenchmark {
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private Application application;
+    private SensorRepository sensorRepository;
+    private SensorService sensorService;
+    private List<String> titles;
+    private List<UUID> ids;
+
+    @Setup
+    public void setUp(){
+        application = new Application();
+        List<Sensor> sensors = application.createSensors("filter", size);
+        sensorRepository = application.bean(SensorRepository.class);
+        sensorService = application.bean(SensorService.class);
+        titles = List.of(sensors.get(size / 2).getTitle());
+        ids = sensors.stream().skip(size / 3).limit(10).map(Sensor::getId).toList();
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public List<Sensor> titleFilteredFindAll(){
+        return filter(List.of(), titles);
+    }
+
+    @Benchmark
+    public List<Sensor> titleLookup(){
+        return sensorService.findSensors(List.of(), titles);
+    }
+
+    @Benchmark
+    public List<Sensor> idsFilteredFindAll(){
+        return filter(ids, List.of());
+    }
+
+    @Benchmark
+    public List<Sensor> idsLookup(){
+        return sensorService.findSensors(ids, List.of());
+    }
+
+    private List<Sensor> filter(List<UUID> uuids, List<String> titles){
+        return sensorRepository.findAll().stream()
+                .filter(s -> uuids.isEmpty() || uuids.contains(s.getId()))
+                .filter(s -> titles.isEmpty() || titles.contains(s.getTitle())).toList();
+    }
+}
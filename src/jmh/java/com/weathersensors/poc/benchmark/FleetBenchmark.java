@@ -0,0 +1,59 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.service.FleetService;
+import com.weathersensors.poc.service.SensorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /sensor/fleet through FleetService, over every sensor: all time from the running aggregates, and over
+ * two whole days from the rollups, with a percentile so the rollups are read row by row and merged.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FleetBenchmark {
+
+    private static final List<Stat> STATS = List.of(Stat.AVERAGE, Stat.P90);
+    private static final Instant FROM = Instant.parse("2023-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2023-01-03T00:00:00Z");
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private Application application;
+    private FleetService fleetService;
+    private List<Sensor> sensors;
+
+    @Setup
+    public void setUp(){
+        application = new Application("weather.rollup.zone=UTC");
+        application.ingestHourly(application.createSensors("fleet", size), FROM, TO);
+        fleetService = application.bean(FleetService.class);
+        sensors = application.bean(SensorService.class).findByTitlePrefix("fleet-");
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public WeatherAggregate allTime(){
+        return fleetService.aggregate(sensors, null, null, STATS);
+    }
+
+    @Benchmark
+    public WeatherAggregate range(){
+        return fleetService.aggregate(sensors, FROM, TO, STATS);
+    }
+}
@@ -0,0 +1,50 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.store.SensorSeries;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Synthetic report history of one sensor, one reading per minute ending now. About one reading in ten
+ * leaves out each metric, but never all of them, like sensors that only report some of them.
+ */
+final class History {
+
+    static final long INTERVAL_MILLIS = 60_000;
+
+    final List<WeatherReport> reports;
+    final SensorSeries series = new SensorSeries();
+    final long firstTimestamp;
+    final long lastTimestamp;
+
+    History(int size){
+        Sensor sensor = new Sensor();
+        sensor.setId(UUID.randomUUID());
+        sensor.setTitle("Benchmark");
+        SplittableRandom random = new SplittableRandom(42);
+
+        reports = new ArrayList<>(size);
+        lastTimestamp = System.currentTimeMillis();
+        firstTimestamp = lastTimestamp - (size - 1) * INTERVAL_MILLIS;
+        for(int i = 0; i < size; i++){
+            Integer temperature = random.nextInt(10) == 0 ? null : random.nextInt(-20, 110);
+            Integer humidity = random.nextInt(10) == 0 ? null : random.nextInt(0, 101);
+            boolean windOnly = temperature == null && humidity == null;
+            WeatherReport weatherReport = new WeatherReport.Builder(sensor)
+                    .withTemperature(temperature)
+                    .withHumidity(humidity)
+                    .withWithSpeed(!windOnly && random.nextInt(10) == 0 ? null : random.nextInt(0, 80))
+                    .build();
+            weatherReport.setReportDate(new Date(firstTimestamp + i * INTERVAL_MILLIS));
+            reports.add(weatherReport);
+            series.append(weatherReport.getReportDate().getTime(), weatherReport.getTemperature(),
+                    weatherReport.getHumidity(), weatherReport.getWindSpeed());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.weathersensors.poc.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weathersensors.poc.controller.SensorController;
+import com.weathersensors.poc.entity.Stat;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing every sensor with GET /sensor, through SensorController without the query cache: the whole list
+ * built and then serialized (the original approach), NDJSON streamed from a database cursor, and the first
+ * page of 100. The firstByte cases stop at the first byte written, which is what a client waits for before
+ * it sees anything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ListingBenchmark {
+
+    private static final List<Stat> STATS = List.of(Stat.AVERAGE, Stat.MAX);
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private Application application;
+    private SensorController sensorController;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp(){
+        application = new Application("weather.query.cache.max-size=0");
+        application.createSensors("listing", size);
+        sensorController = application.bean(SensorController.class);
+        objectMapper = application.bean(ObjectMapper.class);
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public void list() throws IOException {
+        writeList(new Application.Sink(false));
+    }
+
+    @Benchmark
+    public void listFirstByte() throws IOException {
+        try{
+            writeList(new Application.Sink(true));
+        } catch(Application.FirstByte e){
+            // What the client waits for
+        }
+    }
+
+    @Benchmark
+    public void stream() throws IOException {
+        streamBody().writeTo(new Application.Sink(false));
+    }
+
+    @Benchmark
+    public void streamFirstByte() throws IOException {
+        try{
+            streamBody().writeTo(new Application.Sink(true));
+        } catch(UncheckedIOException e){
+            // Stopped at the first sensor written
+        }
+    }
+
+    @Benchmark
+    public void firstPage() throws IOException {
+        // The next page link is built from the current request
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("GET", "/sensor")));
+        try{
+            objectMapper.writeValue(new Application.Sink(false), sensorController.getSensors(Optional.empty(), Optional.empty(),
+                    STATS, Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(100), Optional.empty(), null).getBody());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    private void writeList(Application.Sink sink) throws IOException {
+        ResponseEntity<?> response = sensorController.getSensors(Optional.empty(), Optional.empty(), STATS,
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), null);
+        objectMapper.writeValue(sink, response.getBody());
+    }
+
+    private StreamingResponseBody streamBody(){
+        return sensorController.streamSensors(Optional.empty(), Optional.empty(), STATS, Optional.empty(), Optional.empty(),
+                Optional.empty()).getBody();
+    }
+}
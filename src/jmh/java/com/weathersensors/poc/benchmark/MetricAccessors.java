@@ -0,0 +1,15 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.WeatherReport;
+
+import java.util.List;
+import java.util.function.Function;
+
+final class MetricAccessors {
+
+    static final List<Function<WeatherReport, Integer>> ALL =
+            List.of(WeatherReport::getTemperature, WeatherReport::getHumidity, WeatherReport::getWindSpeed);
+
+    private MetricAccessors(){
+    }
+}
@@ -0,0 +1,44 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.metrics.WeatherMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost WeatherMetrics adds to each request, recording into the Prometheus registry Actuator serves: the
+ * three ingest phases of one reading, and one stat query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private final List<Stat> stats = List.of(Stat.AVERAGE, Stat.MAX);
+    private WeatherMetrics weatherMetrics;
+    private long nanos = 250_000;
+
+    @Setup
+    public void setUp(){
+        weatherMetrics = new WeatherMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+    }
+
+    @Benchmark
+    public void ingest(){
+        weatherMetrics.ingestPhase(WeatherMetrics.IngestPhase.LOOKUP, nanos);
+        weatherMetrics.ingestPhase(WeatherMetrics.IngestPhase.VALIDATION, nanos);
+        weatherMetrics.ingestPhase(WeatherMetrics.IngestPhase.PERSISTENCE, nanos);
+    }
+
+    @Benchmark
+    public void query(){
+        weatherMetrics.query(stats, true, nanos, 100, 10_000);
+    }
+}
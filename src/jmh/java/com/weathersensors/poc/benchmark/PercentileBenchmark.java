@@ -0,0 +1,81 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.MetricHistogram;
+import com.weathersensors.poc.entity.WeatherReport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The P90 temperature of one sensor over its whole history: every value copied out and sorted (the approach
+ * without histograms), a MetricHistogram filled from the readings, and the hourly histograms a rollup already
+ * holds merged into one, which is how a date range is answered. decode reads a histogram back from the bytes
+ * stored in a rollup or a sensor's running aggregate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class PercentileBenchmark {
+
+    private static final int PERCENT = 90;
+    private static final int READINGS_PER_HOUR = (int) (3_600_000 / History.INTERVAL_MILLIS);
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private History history;
+    private List<MetricHistogram> hourly;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp(){
+        history = new History(size);
+        hourly = new ArrayList<>();
+        for(int i = 0; i < size; i += READINGS_PER_HOUR){
+            hourly.add(histogram(history.reports.subList(i, Math.min(size, i + READINGS_PER_HOUR))));
+        }
+        encoded = histogram(history.reports).toBytes();
+    }
+
+    @Benchmark
+    public Integer sorted(){
+        int[] values = history.reports.stream().map(WeatherReport::getTemperature).filter(Objects::nonNull)
+                .mapToInt(Integer::intValue).toArray();
+        Arrays.sort(values);
+        return values.length == 0 ? null : values[Math.max(1, (PERCENT * values.length + 99) / 100) - 1];
+    }
+
+    @Benchmark
+    public Integer histogram(){
+        return histogram(history.reports).percentile(PERCENT);
+    }
+
+    @Benchmark
+    public Integer mergedHourly(){
+        MetricHistogram histogram = new MetricHistogram();
+        hourly.forEach(histogram::merge);
+        return histogram.percentile(PERCENT);
+    }
+
+    @Benchmark
+    public MetricHistogram decode(){
+        return MetricHistogram.fromBytes(encoded);
+    }
+
+    private static MetricHistogram histogram(List<WeatherReport> reports){
+        MetricHistogram histogram = new MetricHistogram();
+        for(WeatherReport weatherReport : reports){
+            if(weatherReport.getTemperature() != null){
+                histogram.add(weatherReport.getTemperature());
+            }
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,75 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of aggregating the middle half of a sensor's history. localDates converts every report date to a
+ * LocalDate the way the original startDate/endDate filter did, epochMillis compares raw timestamps, and
+ * columnar binary searches the range bounds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class RangeFilterBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private History history;
+    private ZoneId zone;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private long from;
+    private long to;
+
+    @Setup
+    public void setUp(){
+        history = new History(size);
+        zone = ZoneId.systemDefault();
+        long quarter = (history.lastTimestamp - history.firstTimestamp) / 4;
+        from = history.firstTimestamp + quarter;
+        to = history.lastTimestamp - quarter;
+        startDate = new java.util.Date(from).toInstant().atZone(zone).toLocalDate();
+        endDate = new java.util.Date(to).toInstant().atZone(zone).toLocalDate();
+    }
+
+    @Benchmark
+    public WeatherAggregate localDates(){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        for(WeatherReport weatherReport : history.reports){
+            LocalDate date = weatherReport.getReportDate().toInstant().atZone(zone).toLocalDate();
+            if(!date.isBefore(startDate) && !date.isAfter(endDate)){
+                aggregate.add(weatherReport);
+            }
+        }
+        return aggregate;
+    }
+
+    @Benchmark
+    public WeatherAggregate epochMillis(){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        for(WeatherReport weatherReport : history.reports){
+            long timestamp = weatherReport.getReportDate().getTime();
+            if(timestamp >= from && timestamp < to){
+                aggregate.add(weatherReport);
+            }
+        }
+        return aggregate;
+    }
+
+    @Benchmark
+    public WeatherAggregate columnar(){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        history.series.aggregate(from, to, aggregate);
+        return aggregate;
+    }
+}
@@ -0,0 +1,76 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.repository.SensorAggregateView;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GROUP BY query behind a date range, over 20 sensors with half a year of hourly reports: one day of one
+ * sensor, and one day of every sensor. Without indexes only the sensor_id foreign key index is left, which is
+ * what the table had before the (sensor_id, report_date) and report_date indexes. Each call asks for the next
+ * day, as H2 hands back the previous result of a query asked again with the same parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RangeQueryBenchmark {
+
+    private static final Instant FROM = Instant.parse("2023-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2023-07-01T00:00:00Z");
+    private static final int DAYS = 180;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private Application application;
+    private WeatherReportRepository weatherReportRepository;
+    private List<UUID> ids;
+    private int day;
+
+    @Setup
+    public void setUp(){
+        application = new Application();
+        List<Sensor> sensors = application.createSensors("range", 20);
+        application.ingestHourly(sensors, FROM, TO);
+        if(!indexed){
+            JdbcTemplate jdbcTemplate = application.bean(JdbcTemplate.class);
+            jdbcTemplate.execute("drop index idx_weather_report_sensor_date");
+            jdbcTemplate.execute("drop index idx_weather_report_date");
+        }
+        weatherReportRepository = application.bean(WeatherReportRepository.class);
+        ids = List.of(sensors.get(10).getId());
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public List<SensorAggregateView> sensorDay(){
+        day = (day + 1) % DAYS;
+        return weatherReportRepository.aggregateBySensor(false, ids, true, List.of(), start(day), start(day + 1));
+    }
+
+    @Benchmark
+    public List<SensorAggregateView> fleetDay(){
+        day = (day + 1) % DAYS;
+        return weatherReportRepository.aggregateBySensor(true, List.of(), true, List.of(), start(day), start(day + 1));
+    }
+
+    private static Date start(int day){
+        return Date.from(FROM.plus(day, ChronoUnit.DAYS));
+    }
+}
@@ -0,0 +1,107 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.service.SensorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Starting the application in log storage mode over 100 sensors with a week of readings a minute, about a
+ * million log records. The last day was logged after the newest snapshot. Without snapshots the whole log is
+ * replayed into the columnar store, with them the snapshot is loaded and only that day is replayed. The
+ * snapshot each start writes when it is closed is deleted again, so every start reads the same one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RestartBenchmark {
+
+    private static final Instant FROM = Instant.parse("2023-01-01T00:00:00Z");
+    private static final Instant SNAPSHOT = Instant.parse("2023-01-07T00:00:00Z");
+    private static final Instant TO = Instant.parse("2023-01-08T00:00:00Z");
+
+    @Param({"false", "true"})
+    private boolean snapshot;
+
+    private Path directory;
+    private Set<Path> seeded;
+    private Application application;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("restart-benchmark");
+        List<Sensor> sensors = new ArrayList<>();
+        try(Application seeding = new Application(properties(true))){
+            SensorService sensorService = seeding.bean(SensorService.class);
+            for(int i = 0; i < 100; i++){
+                Sensor sensor = new Sensor();
+                sensor.setTitle(String.format("restart-%05d", i));
+                sensorService.save(sensor);
+                sensors.add(sensor);
+            }
+            seeding.ingest(sensors, FROM, SNAPSHOT, Duration.ofMinutes(1));
+        }
+        try(Application tail = new Application(properties(false))){
+            tail.ingest(sensors, SNAPSHOT, TO, Duration.ofMinutes(1));
+        }
+        seeded = snapshots();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)){
+            for(Path path : paths.sorted(Comparator.reverseOrder()).toList()){
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Application restart(){
+        application = new Application(properties(snapshot));
+        return application;
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        application.close();
+        for(Path path : snapshots()){
+            if(!seeded.contains(path)){
+                Files.delete(path);
+            }
+        }
+    }
+
+    private String[] properties(boolean snapshots){
+        return new String[]{
+                "weather.storage.mode=log",
+                "weather.store.columnar.enabled=true",
+                "weather.storage.log.directory=" + directory.resolve("log"),
+                "weather.snapshot.enabled=" + snapshots,
+                "weather.snapshot.directory=" + directory.resolve("snapshots")};
+    }
+
+    private Set<Path> snapshots(){
+        try(Stream<Path> paths = Files.list(directory.resolve("snapshots"))){
+            return paths.collect(Collectors.toSet());
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
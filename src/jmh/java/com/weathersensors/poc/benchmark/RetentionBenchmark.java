@@ -0,0 +1,86 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.repository.ReportRow;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.service.RetentionService;
+import com.weathersensors.poc.service.StatsService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 100 sensors with four weeks of hourly reports and weather.retention.raw-days=7, with and without the reports
+ * before the cutoff deleted: reading every raw row, which is what the columnar store does on startup, and the
+ * stats of every sensor over the whole days of the week before the cutoff, which the rollups answer either way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RetentionBenchmark {
+
+    private static final List<Stat> STATS = List.of(Stat.AVERAGE, Stat.P90);
+
+    @Param({"false", "true"})
+    private boolean compacted;
+
+    private Application application;
+    private WeatherReportRepository weatherReportRepository;
+    private StatsService statsService;
+    private TransactionTemplate transaction;
+    private List<Sensor> sensors;
+    private List<UUID> ids;
+    private Instant weekFrom;
+    private Instant weekTo;
+
+    @Setup
+    public void setUp(){
+        application = new Application("weather.rollup.zone=UTC", "weather.retention.raw-days=7");
+        Instant to = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        sensors = application.createSensors("retention", 100);
+        application.ingestHourly(sensors, to.minus(28, ChronoUnit.DAYS), to);
+        RetentionService retentionService = application.bean(RetentionService.class);
+        if(compacted){
+            retentionService.compactBefore(retentionService.cutoff());
+        }
+        weatherReportRepository = application.bean(WeatherReportRepository.class);
+        statsService = application.bean(StatsService.class);
+        transaction = new TransactionTemplate(application.bean(PlatformTransactionManager.class));
+        transaction.setReadOnly(true);
+        ids = sensors.stream().map(Sensor::getId).toList();
+        weekTo = retentionService.cutoff();
+        weekFrom = weekTo.minus(7, ChronoUnit.DAYS);
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public long rowScan(){
+        return transaction.execute(status -> {
+            try(Stream<ReportRow> rows = weatherReportRepository.streamAllRows()){
+                return rows.count();
+            }
+        });
+    }
+
+    @Benchmark
+    public Map<UUID, WeatherAggregate> weekBeforeCutoff(){
+        return statsService.aggregate(sensors, ids, List.of(), weekFrom, weekTo, STATS);
+    }
+}
@@ -0,0 +1,67 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Metric;
+import com.weathersensors.poc.entity.MetricAggregate;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.service.SeriesService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A week of one sensor's temperature, from a reading a minute, through SeriesService. In the database, buckets
+ * of 30 minutes are read from the raw rows, which is how every series was read before the rollups filled
+ * whole-hour buckets, while 1 hour and 1 day buckets come from the hourly and daily rollups. With the columnar
+ * store every bucket is read from memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SeriesBenchmark {
+
+    private static final Instant FROM = Instant.parse("2023-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2023-01-08T00:00:00Z");
+
+    @Param({"false", "true"})
+    private boolean columnar;
+
+    private Application application;
+    private SeriesService seriesService;
+    private UUID sensorId;
+
+    @Setup
+    public void setUp(){
+        application = new Application("weather.rollup.zone=UTC", "weather.store.columnar.enabled=" + columnar);
+        List<Sensor> sensors = application.createSensors("series", 1);
+        application.ingest(sensors, FROM, TO, Duration.ofMinutes(1));
+        sensorId = sensors.get(0).getId();
+        seriesService = application.bean(SeriesService.class);
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public MetricAggregate[] halfHours(){
+        return seriesService.series(sensorId, Metric.TEMPERATURE, FROM, TO, Duration.ofMinutes(30));
+    }
+
+    @Benchmark
+    public MetricAggregate[] hours(){
+        return seriesService.series(sensorId, Metric.TEMPERATURE, FROM, TO, Duration.ofHours(1));
+    }
+
+    @Benchmark
+    public MetricAggregate[] days(){
+        return seriesService.series(sensorId, Metric.TEMPERATURE, FROM, TO, Duration.ofDays(1));
+    }
+}
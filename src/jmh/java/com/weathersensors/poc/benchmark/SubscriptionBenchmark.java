@@ -0,0 +1,110 @@
+package com.weathersensors.poc.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weathersensors.poc.controller.SensorController;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.service.IngestService;
+import com.weathersensors.poc.service.SubscriptionService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.DiscardingEmitterHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One interval of live stats for clients watching 10 of 1000 sensors each, while 100 of the sensors receive a
+ * reading. push ingests the readings and publishes to the SSE subscribers, whose events are encoded and then
+ * discarded. poll ingests the same readings and has every client ask GET /sensor for its sensors with the ETag
+ * of its last answer, through the query cache, which is the cheapest a polling client can get.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SubscriptionBenchmark {
+
+    private static final List<Stat> STATS = List.of(Stat.AVERAGE, Stat.MAX);
+    private static final int SENSORS = 1000;
+    private static final int WATCHED = 10;
+    private static final int CHANGED = 100;
+
+    @Param({"100", "1000"})
+    private int clients;
+
+    private Application application;
+    private IngestService ingestService;
+    private SubscriptionService subscriptionService;
+    private SensorController sensorController;
+    private ObjectMapper objectMapper;
+    private List<Sensor> sensors;
+    private UUID[][] watched;
+    private String[] etags;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        application = new Application("weather.subscription.interval=3600000");
+        sensors = application.createSensors("subscription", SENSORS);
+        ingestService = application.bean(IngestService.class);
+        subscriptionService = application.bean(SubscriptionService.class);
+        sensorController = application.bean(SensorController.class);
+        objectMapper = application.bean(ObjectMapper.class);
+
+        SplittableRandom random = new SplittableRandom(42);
+        watched = new UUID[clients][];
+        etags = new String[clients];
+        DiscardingEmitterHandler handler = new DiscardingEmitterHandler();
+        for(int i = 0; i < clients; i++){
+            List<Sensor> subscribed = new ArrayList<>();
+            for(int j = 0; j < WATCHED; j++){
+                subscribed.add(sensors.get(random.nextInt(SENSORS)));
+            }
+            watched[i] = subscribed.stream().map(Sensor::getId).distinct().toArray(UUID[]::new);
+            handler.connect(subscriptionService.subscribe(subscribed, STATS).orElseThrow());
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        application.close();
+    }
+
+    @Benchmark
+    public void push(){
+        ingestNext();
+        subscriptionService.publish();
+    }
+
+    @Benchmark
+    public void poll() throws IOException {
+        ingestNext();
+        for(int i = 0; i < clients; i++){
+            ResponseEntity<?> response = sensorController.getSensors(Optional.of(watched[i]), Optional.empty(), STATS,
+                    Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), etags[i]);
+            if(response.getStatusCode() == HttpStatus.OK){
+                objectMapper.writeValue(new Application.Sink(false), response.getBody());
+                etags[i] = response.getHeaders().getETag();
+            }
+        }
+    }
+
+    private void ingestNext(){
+        List<WeatherReport> weatherReports = new ArrayList<>(CHANGED);
+        for(int i = 0; i < CHANGED; i++){
+            weatherReports.add(new WeatherReport.Builder(sensors.get(next)).withTemperature(next % 100).build());
+            next = (next + 1) % SENSORS;
+        }
+        ingestService.ingestAll(weatherReports);
+    }
+}
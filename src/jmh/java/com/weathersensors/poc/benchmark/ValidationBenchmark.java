@@ -0,0 +1,74 @@
+package com.weathersensors.poc.benchmark;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReading;
+import com.weathersensors.poc.entity.WeatherReport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a report with WeatherReport.Builder, for a valid reading and for one rejected with
+ * an IllegalArgumentException, against binding a WeatherReading, whose validate returns the rejection
+ * reason instead of throwing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private Sensor sensor;
+    private int temperature = 70;
+    private int humidity = 40;
+    private int windSpeed = 12;
+    private int invalidTemperature = 500;
+
+    @Setup
+    public void setUp(){
+        sensor = new Sensor();
+        sensor.setId(UUID.randomUUID());
+        sensor.setTitle("Benchmark");
+    }
+
+    @Benchmark
+    public WeatherReport validReport(){
+        return new WeatherReport.Builder(sensor)
+                .withTemperature(temperature)
+                .withHumidity(humidity)
+                .withWithSpeed(windSpeed)
+                .build();
+    }
+
+    @Benchmark
+    public Object rejectedReport(){
+        try{
+            return new WeatherReport.Builder(sensor)
+                    .withTemperature(invalidTemperature)
+                    .build();
+        } catch(IllegalArgumentException e){
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object validReading(){
+        WeatherReading reading = new WeatherReading();
+        reading.setTemperature(temperature);
+        reading.setHumidity(humidity);
+        reading.setWindSpeed(windSpeed);
+        Object reason = reading.validate();
+        return reason == null ? reading.toWeatherReport(sensor) : reason;
+    }
+
+    @Benchmark
+    public Object rejectedReading(){
+        WeatherReading reading = new WeatherReading();
+        reading.setTemperature(invalidTemperature);
+        Object reason = reading.validate();
+        return reason == null ? reading.toWeatherReport(sensor) : reason;
+    }
+}
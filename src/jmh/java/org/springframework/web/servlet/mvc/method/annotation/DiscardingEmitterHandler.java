@@ -0,0 +1,51 @@
+package org.springframework.web.servlet.mvc.method.annotation;
+
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Takes an emitter over as a client connection would, encoding what is sent and then discarding it, so benchmarks
+ * can push events without a servlet container. It sits in Spring's package because the handler interface and
+ * ResponseBodyEmitter.initialize are package-private.
+ */
+public final class DiscardingEmitterHandler implements ResponseBodyEmitter.Handler {
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    public void connect(ResponseBodyEmitter emitter) throws IOException {
+        emitter.initialize(this);
+    }
+
+    public long getBytes(){
+        return bytes.get();
+    }
+
+    @Override
+    public void send(Object data, MediaType mediaType){
+        bytes.addAndGet(data.toString().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Override
+    public void complete(){
+    }
+
+    @Override
+    public void completeWithError(Throwable failure){
+    }
+
+    @Override
+    public void onTimeout(Runnable callback){
+    }
+
+    @Override
+    public void onError(Consumer<Throwable> callback){
+    }
+
+    @Override
+    public void onCompletion(Runnable callback){
+    }
+}
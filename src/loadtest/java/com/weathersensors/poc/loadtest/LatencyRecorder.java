@@ -0,0 +1,66 @@
+package com.weathersensors.poc.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every latency sample of one endpoint so exact percentiles can be reported at the end of a run.
+ * Requests still pending when the run ends have no sample, so a large pending count means the
+ * percentiles understate the real latency.
+ */
+class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+    private long sent;
+
+    LatencyRecorder(String name){
+        this.name = name;
+    }
+
+    synchronized void sent(){
+        sent++;
+    }
+
+    synchronized void record(long nanos, boolean success){
+        if(!success){
+            errors++;
+        }
+        if(count == samples.length){
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized void reset(){
+        sent -= count;
+        count = 0;
+        errors = 0;
+    }
+
+    synchronized String report(double seconds){
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%-28s %9d %7d %9d %10.1f %9.2f %9.2f %9.2f %9.2f", name, count, errors, sent - count,
+                count / seconds,
+                millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)), millis(percentile(sorted, 0.999)),
+                millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+    }
+
+    static String header(){
+        return String.format("%-28s %9s %7s %9s %10s %9s %9s %9s %9s", "endpoint", "requests", "errors", "pending", "req/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms");
+    }
+
+    private static long percentile(long[] sorted, double quantile){
+        if(sorted.length == 0){
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos){
+        return nanos / 1_000_000.0;
+    }
+}
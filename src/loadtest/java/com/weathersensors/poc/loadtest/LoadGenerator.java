@@ -0,0 +1,174 @@
+package com.weathersensors.poc.loadtest;
+
+import com.weathersensors.poc.WeatherSensorsApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.CommandLinePropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Simulates a fleet of sensors against the REST API and prints throughput and latency percentiles per
+ * endpoint. Unless --load.target points at a running instance, the application is started in this JVM
+ * on a random port with an empty in-memory database, and every other argument is passed on to it, so
+ * e.g. --weather.ingest.mode=async can be compared against the default.
+ * <p>
+ * Requests are sent on a fixed schedule whether or not earlier ones have completed, and latency is
+ * measured from the scheduled send time, so a stalled server shows up in the percentiles instead of
+ * slowing the load down.
+ * <pre>
+ * --load.sensors=100        sensors created through POST /sensor before the run
+ * --load.report-rate=500    POST /weather/{sensor} requests per second, spread over all sensors
+ * --load.query-rate=20      GET /sensor requests per second, half of them with a date range
+ * --load.warmup=10          seconds of traffic before measuring starts
+ * --load.duration=30        seconds of measured traffic
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String[] STATS = {"AVERAGE", "MIN", "MAX", "SUM", "MIN,MAX,AVERAGE"};
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String target;
+    private final List<String> sensors = new ArrayList<>();
+
+    private final LatencyRecorder reports = new LatencyRecorder("POST /weather/{sensor}");
+    private final LatencyRecorder stats = new LatencyRecorder("GET /sensor?stat");
+    private final LatencyRecorder ranges = new LatencyRecorder("GET /sensor?startDate&endDate");
+
+    LoadGenerator(String target){
+        this.target = target;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLinePropertySource<?> options = new SimpleCommandLinePropertySource(args);
+        int sensorCount = intOption(options, "load.sensors", 100);
+        int reportRate = intOption(options, "load.report-rate", 500);
+        int queryRate = intOption(options, "load.query-rate", 20);
+        int warmup = intOption(options, "load.warmup", 10);
+        int duration = intOption(options, "load.duration", 30);
+
+        ConfigurableApplicationContext application = null;
+        String target = options.getProperty("load.target");
+        if(target == null){
+            List<String> applicationArgs = new ArrayList<>(List.of(args));
+            applicationArgs.add("--server.port=0");
+            application = SpringApplication.run(WeatherSensorsApplication.class, applicationArgs.toArray(String[]::new));
+            target = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+        }
+
+        try{
+            LoadGenerator generator = new LoadGenerator(target);
+            generator.createSensors(sensorCount);
+            generator.run(reportRate, queryRate, warmup, duration);
+        } finally {
+            if(application != null){
+                application.close();
+            }
+        }
+    }
+
+    void createSensors(int count) throws Exception {
+        for(int i = 0; i < count; i++){
+            String title = String.format("load-%05d", i);
+            HttpResponse<String> response = client.send(post("/sensor", "{\"title\":\"" + title + "\"}"),
+                    HttpResponse.BodyHandlers.ofString());
+            if(response.statusCode() != 201 && response.statusCode() != 409){
+                throw new IllegalStateException("Could not create sensor " + title + ": " + response.body());
+            }
+            sensors.add(title);
+        }
+    }
+
+    void run(int reportRate, int queryRate, int warmup, int duration) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        schedule(scheduler, reportRate, this::sendReport);
+        schedule(scheduler, queryRate, this::sendQuery);
+
+        System.out.printf("Warming up for %ds against %s with %d sensors%n", warmup, target, sensors.size());
+        TimeUnit.SECONDS.sleep(warmup);
+        reports.reset();
+        stats.reset();
+        ranges.reset();
+        System.out.printf("Measuring for %ds at %d reports/s and %d queries/s%n", duration, reportRate, queryRate);
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(duration);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        scheduler.shutdownNow();
+
+        System.out.println(LatencyRecorder.header());
+        System.out.println(reports.report(seconds));
+        System.out.println(stats.report(seconds));
+        System.out.println(ranges.report(seconds));
+    }
+
+    // Each request is handed the time it was due, which lags behind the clock when the scheduler falls behind
+    private void schedule(ScheduledExecutorService scheduler, int rate, LongConsumer request){
+        if(rate > 0){
+            long period = TimeUnit.SECONDS.toNanos(1) / rate;
+            long origin = System.nanoTime();
+            long[] sent = {0};
+            scheduler.scheduleAtFixedRate(() -> request.accept(origin + period * sent[0]++), 0, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void sendReport(long scheduled){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String sensor = sensors.get(random.nextInt(sensors.size()));
+        String body = String.format("{\"temperature\":%d,\"humidity\":%d,\"windSpeed\":%d}",
+                random.nextInt(-20, 110), random.nextInt(0, 101), random.nextInt(0, 80));
+        send(post("/weather/" + sensor, body), reports, scheduled);
+    }
+
+    private void sendQuery(long scheduled){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String stat = STATS[random.nextInt(STATS.length)];
+        if(random.nextBoolean()){
+            send(get("/sensor?stat=" + stat), stats, scheduled);
+        } else {
+            LocalDate today = LocalDate.now();
+            send(get("/sensor?stat=" + stat + "&startDate=" + today.minusDays(1) + "&endDate=" + today), ranges, scheduled);
+        }
+    }
+
+    private void send(HttpRequest request, LatencyRecorder recorder, long scheduled){
+        recorder.sent();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> recorder.record(System.nanoTime() - scheduled,
+                        failure == null && response.statusCode() < 400));
+    }
+
+    private HttpRequest post(String path, String body){
+        return HttpRequest.newBuilder(URI.create(target + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest get(String path){
+        return HttpRequest.newBuilder(URI.create(target + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private static int intOption(CommandLinePropertySource<?> options, String name, int defaultValue){
+        String value = options.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,73 @@
+package com.weathersensors.poc.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Thread safe cache holding at most maxSize entries, evicting the least recently used one first.
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LruCache(int maxSize){
+        this.entries = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest){
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key){
+        V value = entries.get(key);
+        if(value == null){
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value or loads it. A null from the loader is returned but not cached.
+     */
+    public V get(K key, Function<K, V> loader){
+        V value = get(key);
+        if(value == null){
+            value = loader.apply(key);
+            if(value != null){
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value){
+        entries.put(key, value);
+    }
+
+    public synchronized void remove(K key){
+        entries.remove(key);
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+}
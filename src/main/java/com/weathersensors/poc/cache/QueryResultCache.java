@@ -0,0 +1,170 @@
+package com.weathersensors.poc.cache;
+
+import com.weathersensors.poc.entity.Stat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches query results by their normalized query, and tells whether a result is still current from
+ * version counters instead of recomputing it. One sequence numbers every change: a sensor's version is
+ * the sequence number of its last ingest, and creating a sensor bumps the registry version, since it
+ * can change which sensors a query matches. A result is current while none of its sensors and not the
+ * registry changed after the sequence number taken before it was computed.
+ * <p>
+ * The ETag of a result hashes its sensors' versions with a random epoch, so tags from before a restart never match.
+ */
+@Component
+public class QueryResultCache {
+
+    private final LruCache<Key, Entry<?>> entries;
+    private final Map<UUID, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long registryVersion;
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    public QueryResultCache(@Value("${weather.query.cache.max-size:1000}") int maxSize){
+        this.entries = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Taken before computing a result that is then handed to {@link #put}.
+     */
+    public long sequence(){
+        return sequence.get();
+    }
+
+    /**
+     * Records new reports for the sensors, once the surrounding transaction committed if there is one,
+     * so a result computed before the reports are visible can't be stored as current.
+     */
+    public void changed(Collection<UUID> sensorIds){
+        afterCommit(() -> {
+            for(UUID id : sensorIds){
+                versions.put(id, sequence.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * Records a change that may affect any query, like a new sensor.
+     */
+    public void changedAll(){
+        afterCommit(() -> registryVersion = sequence.incrementAndGet());
+    }
+
+    /**
+     * The cached result for the query, or null when there is none or it is out of date.
+     */
+    public <T> Entry<T> get(Key key){
+        @SuppressWarnings("unchecked")
+        Entry<T> entry = (Entry<T>) entries.get(key);
+        if(entry != null && !isCurrent(entry.sensorIds, entry.sequence)){
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a result computed after taking the sequence number. A result that may have missed a change
+     * made while it was computed is not cached and gets no ETag.
+     */
+    public <T> Entry<T> put(Key key, long sequence, List<UUID> sensorIds, T value, Map<String, String> headers){
+        if(!isCurrent(sensorIds, sequence)){
+            return new Entry<>(sequence, sensorIds, value, headers, null);
+        }
+        Entry<T> entry = new Entry<>(sequence, sensorIds, value, headers, etag(sensorIds));
+        entries.put(key, entry);
+        return entry;
+    }
+
+    public long getHits(){
+        return entries.getHits();
+    }
+
+    public long getMisses(){
+        return entries.getMisses();
+    }
+
+    private boolean isCurrent(List<UUID> sensorIds, long sequence){
+        if(registryVersion > sequence){
+            return false;
+        }
+        for(UUID id : sensorIds){
+            if(versions.getOrDefault(id, 0L) > sequence){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String etag(List<UUID> sensorIds){
+        long hash = mix(epoch ^ registryVersion);
+        for(UUID id : sensorIds){
+            hash = mix(hash ^ id.getMostSignificantBits());
+            hash = mix(hash ^ id.getLeastSignificantBits());
+            hash = mix(hash ^ versions.getOrDefault(id, 0L));
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    // Finalizer of SplitMix64
+    private static long mix(long value){
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static void afterCommit(Runnable change){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit(){
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    /**
+     * A query with its filters sorted and deduplicated, so equivalent requests share an entry.
+     */
+    public record Key(List<UUID> ids, List<String> titles, List<Stat> stats, Instant from, Instant to,
+                      Integer limit, UUID after) {
+
+        public static Key of(Collection<UUID> ids, Collection<String> titles, Collection<Stat> stats, Instant from,
+                             Instant to, Integer limit, UUID after){
+            return new Key(List.copyOf(new TreeSet<>(ids)), List.copyOf(new TreeSet<>(titles)),
+                    stats.isEmpty() ? List.of() : List.copyOf(EnumSet.copyOf(stats)), from, to, limit, after);
+        }
+    }
+
+    public record Entry<T>(long sequence, List<UUID> sensorIds, T value, Map<String, String> headers, String etag) {
+
+        /**
+         * Whether an If-None-Match header names this entry's ETag, or is a wildcard.
+         */
+        public boolean matches(String ifNoneMatch){
+            if(etag == null || ifNoneMatch == null){
+                return false;
+            }
+            for(String tag : ifNoneMatch.split(",")){
+                String trimmed = tag.trim();
+                if(trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,31 +1,81 @@
 package com.weathersensors.poc.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.weathersensors.poc.cache.QueryResultCache;
 import com.weathersensors.poc.dto.Error;
 import com.weathersensors.poc.dto.ErrorDTO;
+import com.weathersensors.poc.dto.FleetDTO;
 import com.weathersensors.poc.dto.SensorDTO;
+import com.weathersensors.poc.dto.SeriesDTO;
+import com.weathersensors.poc.dto.SeriesPointDTO;
+import com.weathersensors.poc.entity.Metric;
+import com.weathersensors.poc.entity.MetricAggregate;
 import com.weathersensors.poc.entity.Sensor;
 import com.weathersensors.poc.entity.Stat;
-import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.metrics.WeatherMetrics;
+import com.weathersensors.poc.service.FleetService;
 import com.weathersensors.poc.service.SensorService;
+import com.weathersensors.poc.service.SeriesService;
+import com.weathersensors.poc.service.StatsService;
+import com.weathersensors.poc.service.SubscriptionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.function.ToIntFunction;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/sensor")
 public class SensorController {
 
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     @Autowired
     private SensorService sensorService;
 
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private SeriesService seriesService;
+
+    @Autowired
+    private FleetService fleetService;
+
+    @Autowired
+    private WeatherMetrics weatherMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Value("${weather.sensor.page.max-size:1000}")
+    private int maxPageSize;
+
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> createSensor(@RequestBody Sensor sensor){
@@ -46,190 +96,340 @@ public class SensorController {
     }
 
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<SensorDTO>> getSensors(@RequestParam Optional<UUID []> id,
-                                                      @RequestParam Optional<String []> title,
-                                                      @RequestParam(defaultValue = "AVERAGE") Stat stat,
-                                                      @RequestParam Optional<LocalDate> startDate,
-                                                      @RequestParam Optional<LocalDate> endDate){
-
-
+    public ResponseEntity<?> getSensors(@RequestParam Optional<UUID []> id,
+                                        @RequestParam Optional<String []> title,
+                                        @RequestParam(defaultValue = "AVERAGE") List<Stat> stat,
+                                        @RequestParam Optional<LocalDate> startDate,
+                                        @RequestParam Optional<LocalDate> endDate,
+                                        @RequestParam Optional<String> zone,
+                                        @RequestParam Optional<Integer> limit,
+                                        @RequestParam Optional<UUID> after,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+
+        long start = System.nanoTime();
         List<UUID> uuids = id.map(value -> Arrays.stream(value).toList()).orElseGet(ArrayList::new);
         List<String> titles = title.map(value -> Arrays.stream(value).toList()).orElseGet(ArrayList::new);
+        if(limit.isPresent() && (limit.get() < 1 || limit.get() > maxPageSize)){
+            return new ResponseEntity<>
+                    (errorDTO("limit must be between 1 and " + maxPageSize), HttpStatus.BAD_REQUEST);
+        }
+        Optional<ZoneId> zoneId = zoneId(zone);
+        if(zoneId.isEmpty()){
+            return new ResponseEntity<>(errorDTO("Unknown time zone " + zone.get()), HttpStatus.BAD_REQUEST);
+        }
+        Instant from = rangeStart(startDate, endDate, zoneId.get());
+        Instant to = rangeEnd(startDate, endDate, zoneId.get());
+        Optional<String> rangeError = rangeError(from, to);
+        if(rangeError.isPresent()){
+            return new ResponseEntity<>(errorDTO(rangeError.get()), HttpStatus.BAD_REQUEST);
+        }
 
-        List<Sensor> sensors =
-                sensorService.findAllSensors().stream()
-                        .filter(s -> uuids.isEmpty() || uuids.contains(s.getId()))
-                        .filter(s -> titles.isEmpty() || titles.contains(s.getTitle())).toList();
-
-        if(startDate.isPresent() && endDate.isPresent()) {
-            for (Sensor s : sensors) {
-                s.getWeatherReports().removeIf(wr -> wr.getReportDate().toInstant().atZone(ZoneId.systemDefault())
-                                .toLocalDate().isBefore(startDate.get()) || wr.getReportDate().toInstant().atZone(ZoneId.systemDefault())
-                        .toLocalDate().isAfter(endDate.get()));
+        QueryResultCache.Key key = QueryResultCache.Key.of(uuids, titles, stat, from, to, limit.orElse(null), after.orElse(null));
+        QueryResultCache.Entry<List<SensorDTO>> cached = queryResultCache.get(key);
+        if(cached != null){
+            return respond(cached, ifNoneMatch);
+        }
+        long sequence = queryResultCache.sequence();
+
+        List<Sensor> sensors;
+        Map<UUID, WeatherAggregate> aggregates;
+        Map<String, String> headers = new HashMap<>();
+        if(limit.isEmpty() && after.isEmpty()){
+            sensors = sensorService.findSensors(uuids, titles);
+            aggregates = statsService.aggregate(sensors, uuids, titles, from, to, stat);
+        } else {
+            int pageSize = limit.orElse(maxPageSize);
+            sensors = findPage(uuids, titles, after.orElse(null), pageSize);
+            aggregates = aggregate(sensors, stat, from, to);
+            if(sensors.size() == pageSize){
+                String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", sensors.get(sensors.size() - 1).getId())
+                        .toUriString();
+                headers.put(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
             }
         }
 
-        List<SensorDTO> sensorDTOS = sensors.stream().map(s -> sensorDto(s, stat)).toList();
-        return new ResponseEntity<>(sensorDTOS, HttpStatus.OK);
+        List<SensorDTO> sensorDTOS = sensors.stream()
+                .map(s -> sensorDto(s, stat, aggregates.getOrDefault(s.getId(), new WeatherAggregate())))
+                .toList();
+        weatherMetrics.query(stat, from != null, System.nanoTime() - start, sensorDTOS.size(), readings(sensors, aggregates));
+        return respond(queryResultCache.put(key, sequence, sensors.stream().map(Sensor::getId).toList(),
+                sensorDTOS, headers), ifNoneMatch);
 
     }
 
-    private SensorDTO sensorDto(Sensor sensor){
-        SensorDTO sensorDTO = new SensorDTO();
-        sensorDTO.setId(sensor.getId().toString());
-        sensorDTO.setTitle(sensor.getTitle());
-        return sensorDTO;
+    private static ResponseEntity<?> respond(QueryResultCache.Entry<List<SensorDTO>> entry, String ifNoneMatch){
+        HttpHeaders headers = new HttpHeaders();
+        entry.headers().forEach(headers::add);
+        if(entry.etag() != null){
+            headers.setETag(entry.etag());
+        }
+        if(entry.matches(ifNoneMatch)){
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<>(entry.value(), headers, HttpStatus.OK);
     }
 
-    private SensorDTO sensorDto(Sensor sensor, Stat stat){
-
-        SensorDTO sensorDTO = new SensorDTO();
-        sensorDTO.setId(sensor.getId().toString());
-        sensorDTO.setTitle(sensor.getTitle());
+    /**
+     * Same query as {@link #getSensors}, written as one Json document per line while the sensors are read,
+     * so neither memory use nor the time to the first sensor grows with the number of sensors.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSensors(@RequestParam Optional<UUID []> id,
+                                                               @RequestParam Optional<String []> title,
+                                                               @RequestParam(defaultValue = "AVERAGE") List<Stat> stat,
+                                                               @RequestParam Optional<LocalDate> startDate,
+                                                               @RequestParam Optional<LocalDate> endDate,
+                                                               @RequestParam Optional<String> zone){
 
-        switch(stat){
-            case AVERAGE -> setAverages(sensor, sensorDTO);
-            case MIN -> setMin(sensor, sensorDTO);
-            case MAX -> setMax(sensor, sensorDTO);
-            case SUM -> setSum(sensor, sensorDTO);
+        List<UUID> uuids = id.map(value -> Arrays.stream(value).toList()).orElseGet(ArrayList::new);
+        List<String> titles = title.map(value -> Arrays.stream(value).toList()).orElseGet(ArrayList::new);
+        Optional<ZoneId> zoneId = zoneId(zone);
+        if(zoneId.isEmpty()){
+            // The handler can only return a streamed body, so the error is written as a single JSON document
+            ErrorDTO error = errorDTO("Unknown time zone " + zone.get());
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> objectMapper.writeValue(out, error));
         }
-        return sensorDTO;
+        Instant from = rangeStart(startDate, endDate, zoneId.get());
+        Instant to = rangeEnd(startDate, endDate, zoneId.get());
+        Optional<String> rangeError = rangeError(from, to);
+        if(rangeError.isPresent()){
+            ErrorDTO error = errorDTO(rangeError.get());
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> objectMapper.writeValue(out, error));
+        }
+        ObjectWriter writer = objectMapper.writerFor(SensorDTO.class);
+
+        StreamingResponseBody body = out -> {
+            long start = System.nanoTime();
+            int[] sensorCount = {0};
+            long[] readingCount = {0};
+            Consumer<List<Sensor>> writeChunk = sensors -> {
+                Map<UUID, WeatherAggregate> aggregates = aggregate(sensors, stat, from, to);
+                try{
+                    for(Sensor sensor : sensors){
+                        out.write(writer.writeValueAsBytes(
+                                sensorDto(sensor, stat, aggregates.getOrDefault(sensor.getId(), new WeatherAggregate()))));
+                        out.write('\n');
+                    }
+                    out.flush();
+                } catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+                sensorCount[0] += sensors.size();
+                readingCount[0] += readings(sensors, aggregates);
+            };
+            if(uuids.isEmpty() && titles.isEmpty()){
+                sensorService.forEachChunk(STREAM_CHUNK_SIZE, writeChunk);
+            } else {
+                writeChunk.accept(sensorService.findSensors(uuids, titles));
+            }
+            weatherMetrics.query(stat, from != null, System.nanoTime() - start, sensorCount[0], readingCount[0]);
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
-    private void setAverages(Sensor sensor, SensorDTO sensorDTO) {
-        sensorDTO.setAverageTemp(getAverageTemperature(sensor));
-        sensorDTO.setAverageHumidity(getAverageHumidity(sensor));
-        sensorDTO.setAverageWindSpeed(getAverageWindSpeed(sensor));
-    }
+    /**
+     * Subscribes to the sensors matching id and title, sending their all-time stats now and again at most
+     * once per interval after they received readings, as Server-Sent Events.
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<? extends ResponseBodyEmitter> subscribe(@RequestParam Optional<UUID []> id,
+                                                                   @RequestParam Optional<String []> title,
+                                                                   @RequestParam(defaultValue = "AVERAGE") List<Stat> stat){
 
-    private void setMin(Sensor sensor, SensorDTO sensorDTO) {
-        sensorDTO.setMinTemp(getMinTemperature(sensor));
-        sensorDTO.setMinHumidity(getMinHumidity(sensor));
-        sensorDTO.setMinWindSpeed(getMinWindSpeed(sensor));
+        List<UUID> uuids = id.map(value -> Arrays.stream(value).toList()).orElseGet(ArrayList::new);
+        List<String> titles = title.map(value -> Arrays.stream(value).toList()).orElseGet(ArrayList::new);
+        if(uuids.isEmpty() && titles.isEmpty()){
+            return emitterError(HttpStatus.BAD_REQUEST, "A subscription needs an id or title");
+        }
+        List<Sensor> sensors = sensorService.findSensors(uuids, titles);
+        if(sensors.isEmpty()){
+            return emitterError(HttpStatus.NOT_FOUND, "No sensor matches the id and title");
+        }
+        Optional<SseEmitter> emitter = subscriptionService.subscribe(sensors, stat);
+        if(emitter.isEmpty()){
+            return emitterError(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscriptions, try again later");
+        }
+        return ResponseEntity.ok(emitter.get());
     }
 
-    private void setMax(Sensor sensor, SensorDTO sensorDTO) {
-        sensorDTO.setMaxTemp(getMaxTemperature(sensor));
-        sensorDTO.setMaxHumidity(getMaxHumidity(sensor));
-        sensorDTO.setMaxWindSpeed(getMaxWindSpeed(sensor));
+    // As for the stream, the handler can only return an emitter, so the error is the one Json document it sends
+    private ResponseEntity<ResponseBodyEmitter> emitterError(HttpStatus status, String message){
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try{
+            emitter.send(errorDTO(message), MediaType.APPLICATION_JSON);
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        emitter.complete();
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(emitter);
     }
 
-    private void setSum(Sensor sensor, SensorDTO sensorDTO) {
-        sensorDTO.setTempSum(getTemperatureSum(sensor));
-        sensorDTO.setHumiditySum(getHumiditySum(sensor));
-        sensorDTO.setWindSpeedSum(getWindSpeedSum(sensor));
+    // Pages are ordered the way the database orders UUIDs, by their unsigned value, which is also their text order
+    private List<Sensor> findPage(List<UUID> uuids, List<String> titles, UUID after, int pageSize){
+        if(uuids.isEmpty() && titles.isEmpty()){
+            return sensorService.findPage(after, pageSize);
+        }
+        return sensorService.findSensors(uuids, titles).stream()
+                .filter(s -> after == null || s.getId().toString().compareTo(after.toString()) > 0)
+                .sorted(Comparator.comparing(s -> s.getId().toString()))
+                .limit(pageSize)
+                .toList();
     }
 
-    private Double getAverageTemperature(Sensor sensor){
-        if(getAverage(sensor,"temperature").isPresent()){
-            return getAverage(sensor,"temperature").getAsDouble();
+    // Aggregates exactly the given sensors, an empty id filter would match all of them
+    private Map<UUID, WeatherAggregate> aggregate(List<Sensor> sensors, List<Stat> stats, Instant from, Instant to){
+        if(sensors.isEmpty()){
+            return Map.of();
         }
-        return null;
+        return statsService.aggregate(sensors, sensors.stream().map(Sensor::getId).toList(), List.of(), from, to, stats);
     }
-    private Double getAverageHumidity(Sensor sensor){
-        if(getAverage(sensor,"humidity").isPresent()){
-            return getAverage(sensor,"humidity").getAsDouble();
+
+    /**
+     * Combines every sensor whose title starts with titlePrefix, or the whole fleet without one, into a
+     * single set of stats.
+     */
+    @GetMapping(value = "/fleet", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getFleet(@RequestParam(defaultValue = "") String titlePrefix,
+                                      @RequestParam(defaultValue = "AVERAGE") List<Stat> stat,
+                                      @RequestParam Optional<LocalDate> startDate,
+                                      @RequestParam Optional<LocalDate> endDate,
+                                      @RequestParam Optional<String> zone){
+
+        long start = System.nanoTime();
+        Optional<ZoneId> zoneId = zoneId(zone);
+        if(zoneId.isEmpty()){
+            return new ResponseEntity<>(errorDTO("Unknown time zone " + zone.get()), HttpStatus.BAD_REQUEST);
         }
-        return null;
-    }
-    private Double getAverageWindSpeed(Sensor sensor){
-        if(getAverage(sensor,"windSpeed").isPresent()){
-            return getAverage(sensor,"windSpeed").getAsDouble();
+        Instant from = rangeStart(startDate, endDate, zoneId.get());
+        Instant to = rangeEnd(startDate, endDate, zoneId.get());
+        Optional<String> rangeError = rangeError(from, to);
+        if(rangeError.isPresent()){
+            return new ResponseEntity<>(errorDTO(rangeError.get()), HttpStatus.BAD_REQUEST);
         }
-        return null;
+
+        List<Sensor> sensors = sensorService.findByTitlePrefix(titlePrefix);
+        WeatherAggregate aggregate = fleetService.aggregate(sensors, from, to, stat);
+        FleetDTO fleetDTO = setStats(new FleetDTO(), stat, aggregate);
+        fleetDTO.setTitlePrefix(titlePrefix);
+        fleetDTO.setSensorCount(sensors.size());
+        weatherMetrics.query(stat, from != null, System.nanoTime() - start, sensors.size(), readings(aggregate));
+        return new ResponseEntity<>(fleetDTO, HttpStatus.OK);
     }
 
-    private Integer getMinTemperature(Sensor sensor){
-        if(getMin(sensor,"temperature").isPresent()){
-            return getMin(sensor,"temperature").getAsInt();
+    @GetMapping(value = "/{id}/series", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getSeries(@PathVariable UUID id,
+                                       @RequestParam Metric metric,
+                                       @RequestParam(defaultValue = "AVERAGE") Stat stat,
+                                       @RequestParam(defaultValue = "1h") String bucket,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                       @RequestParam Optional<Integer> maxPoints){
+
+        int points = maxPoints.orElse(seriesService.getMaxPoints());
+        if(points < 1 || points > seriesService.getMaxPoints()){
+            return new ResponseEntity<>
+                    (errorDTO("maxPoints must be between 1 and " + seriesService.getMaxPoints()), HttpStatus.BAD_REQUEST);
         }
-        return null;
-    }
-    private Integer getMinHumidity(Sensor sensor){
-        if(getMin(sensor,"humidity").isPresent()){
-            return getMin(sensor,"humidity").getAsInt();
+        if(!from.isBefore(to)){
+            return new ResponseEntity<>(errorDTO("from must be before to"), HttpStatus.BAD_REQUEST);
         }
-        return null;
-    }
-    private Integer getMinWindSpeed(Sensor sensor){
-        if(getMin(sensor,"windSpeed").isPresent()){
-            return getMin(sensor,"windSpeed").getAsInt();
+        Duration width;
+        try{
+            width = SeriesService.bucketFor(from, to, SeriesService.parseBucket(bucket), points);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(errorDTO(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+        if(sensorService.findById(id).isEmpty()){
+            return new ResponseEntity<>(errorDTO("Sensor with id " + id + " not found"), HttpStatus.NOT_FOUND);
         }
-        return null;
-    }
 
-    private Integer getMaxTemperature(Sensor sensor){
-        if(getMax(sensor,"temperature").isPresent()){
-            return getMax(sensor,"temperature").getAsInt();
+        MetricAggregate[] buckets;
+        try{
+            buckets = seriesService.series(id, metric, from, to, width);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(errorDTO(e.getMessage()), HttpStatus.BAD_REQUEST);
         }
-        return null;
-    }
-    private Integer getMaxHumidity(Sensor sensor){
-        if(getMax(sensor,"humidity").isPresent()){
-            return getMax(sensor,"humidity").getAsInt();
+        long origin = Math.floorDiv(from.toEpochMilli(), width.toMillis()) * width.toMillis();
+        List<SeriesPointDTO> series = new ArrayList<>();
+        for(int i = 0; i < buckets.length; i++){
+            if(buckets[i] != null){
+                Instant start = Instant.ofEpochMilli(origin + i * width.toMillis());
+                series.add(new SeriesPointDTO(start.toString(), buckets[i].value(stat), buckets[i].getCount()));
+            }
         }
-        return null;
+        return new ResponseEntity<>(new SeriesDTO(id.toString(), metric, stat, SeriesService.formatBucket(width), series),
+                HttpStatus.OK);
     }
-    private Integer getMaxWindSpeed(Sensor sensor){
-        if(getMax(sensor,"windSpeed").isPresent()){
-            return getMax(sensor,"windSpeed").getAsInt();
+
+    // Empty when the requested zone is unknown, the rollup zone when none was requested
+    private Optional<ZoneId> zoneId(Optional<String> zone){
+        if(zone.isEmpty()){
+            return Optional.of(statsService.getZone());
+        }
+        try{
+            return Optional.of(ZoneId.of(zone.get()));
+        } catch(DateTimeException e){
+            return Optional.empty();
         }
-        return null;
     }
 
-    private Integer getTemperatureSum(Sensor sensor){
-        return getSum(sensor,"temperature");
-    }
-    private Integer getHumiditySum(Sensor sensor){
-        return getSum(sensor,"humidity");
+    // Empty when the range can still be answered exactly, see StatsService.checkRange
+    private Optional<String> rangeError(Instant from, Instant to){
+        try{
+            statsService.checkRange(from, to);
+            return Optional.empty();
+        } catch(IllegalArgumentException e){
+            return Optional.of(e.getMessage());
+        }
     }
 
-    private Integer getWindSpeedSum(Sensor sensor){
-        return getSum(sensor,"windSpeed");
+    /**
+     * startDate and endDate are whole days in the zone, so the range is [startDate 00:00, endDate + 1 day 00:00).
+     */
+    private static Instant rangeStart(Optional<LocalDate> startDate, Optional<LocalDate> endDate, ZoneId zone){
+        if(startDate.isEmpty() || endDate.isEmpty()){
+            return null;
+        }
+        return startDate.get().atStartOfDay(zone).toInstant();
     }
 
-    private OptionalDouble getAverage(Sensor sensor, String metric){
-        return sensor.getWeatherReports().stream().filter(getMetricPredicate(metric)).mapToInt(getMetricFunction(metric)).average();
+    private static Instant rangeEnd(Optional<LocalDate> startDate, Optional<LocalDate> endDate, ZoneId zone){
+        if(startDate.isEmpty() || endDate.isEmpty()){
+            return null;
+        }
+        return endDate.get().plusDays(1).atStartOfDay(zone).toInstant();
     }
 
-    public OptionalInt getMin(Sensor sensor, String metric){
-        return sensor.getWeatherReports().stream().filter(getMetricPredicate(metric)).mapToInt(getMetricFunction(metric)).min();
+    private static long readings(List<Sensor> sensors, Map<UUID, WeatherAggregate> aggregates){
+        long readings = 0;
+        for(Sensor sensor : sensors){
+            WeatherAggregate aggregate = aggregates.get(sensor.getId());
+            if(aggregate != null){
+                readings += readings(aggregate);
+            }
+        }
+        return readings;
     }
 
-    public OptionalInt getMax(Sensor sensor, String metric){
-        return sensor.getWeatherReports().stream().filter(getMetricPredicate(metric)).mapToInt(getMetricFunction(metric)).max();
+    private static long readings(WeatherAggregate aggregate){
+        return aggregate.getTemperature().getCount() + aggregate.getHumidity().getCount()
+                + aggregate.getWindSpeed().getCount();
     }
 
-    public int getSum(Sensor sensor, String metric){
-        return sensor.getWeatherReports().stream().filter(getMetricPredicate(metric)).mapToInt(getMetricFunction(metric)).sum();
+    private SensorDTO sensorDto(Sensor sensor){
+        return SensorDTO.of(sensor);
     }
 
-    private static ToIntFunction<WeatherReport> getMetricFunction(String metric) {
-        if(metric.equalsIgnoreCase("temperature")){
-            return WeatherReport::getTemperature;
-        }
-        if(metric.equalsIgnoreCase("humidity")){
-            return WeatherReport::getHumidity;
-        }
-        if(metric.equalsIgnoreCase("windSpeed")){
-            return WeatherReport::getWindSpeed;
-        }
-        return WeatherReport::getTemperature;
+    private SensorDTO sensorDto(Sensor sensor, List<Stat> stats, WeatherAggregate aggregate){
+        return setStats(sensorDto(sensor), stats, aggregate);
     }
 
-    private static Predicate<WeatherReport> getMetricPredicate(String metric){
-
-        if(metric.equalsIgnoreCase("temperature")){
-            return weatherReport -> weatherReport.getTemperature() != null;
-        }
-        if(metric.equalsIgnoreCase("humidity")){
-            return weatherReport -> weatherReport.getHumidity() != null;
-        }
-        if(metric.equalsIgnoreCase("windSpeed")){
-            return weatherReport -> weatherReport.getHumidity() != null;
-
-        }
-        return weatherReport -> weatherReport.getTemperature() != null;
+    private <T extends SensorDTO> T setStats(T sensorDTO, List<Stat> stats, WeatherAggregate aggregate){
+        sensorDTO.setStats(stats, aggregate);
+        return sensorDTO;
     }
 
 
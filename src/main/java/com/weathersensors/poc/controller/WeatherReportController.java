@@ -1,18 +1,34 @@
 package com.weathersensors.poc.controller;
 
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.weathersensors.poc.dto.Error;
 import com.weathersensors.poc.dto.ErrorDTO;
+import com.weathersensors.poc.dto.WeatherReportAckDTO;
+import com.weathersensors.poc.dto.WeatherReportBatchItem;
+import com.weathersensors.poc.dto.WeatherReportCodec;
+import com.weathersensors.poc.entity.InvalidWeatherReportException;
 import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReading;
 import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.metrics.WeatherMetrics;
+import com.weathersensors.poc.metrics.WeatherMetrics.IngestPhase;
+import com.weathersensors.poc.service.IngestService;
 import com.weathersensors.poc.service.SensorService;
-import com.weathersensors.poc.service.WeatherReportService;
+import com.weathersensors.poc.service.WriteBehindQueue;
+import org.springframework.http.HttpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -22,49 +38,154 @@ public class WeatherReportController {
 
 
     @Autowired
-    private WeatherReportService weatherReportService;
+    private SensorService sensorService;
 
     @Autowired
-    private SensorService sensorService;
+    private IngestService ingestService;
+
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+
+    @Autowired
+    private WeatherMetrics weatherMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${weather.ingest.batch.max-size:5000}")
+    private int maxBatchSize;
 
     @PostMapping(path = "/{sensor_identifier}", consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> addWeatherReport(@RequestBody WeatherReport weatherReport, @RequestParam(defaultValue = "title") String identifier,
+    public ResponseEntity<?> addWeatherReport(@RequestBody WeatherReading reading, @RequestParam(defaultValue = "title") String identifier,
                                               @PathVariable("sensor_identifier") String sensorIdentifier){
 
+        return accept(reading, identifier, sensorIdentifier);
+    }
+
+    @PostMapping(path = "/{sensor_identifier}", consumes = WeatherReportCodec.MEDIA_TYPE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> addBinaryWeatherReport(InputStream body, @RequestParam(defaultValue = "title") String identifier,
+                                                    @PathVariable("sensor_identifier") String sensorIdentifier){
+
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(body);
+        WeatherReading reading = new WeatherReading();
+        try{
+            if(!reader.next()){
+                throw new IOException("Empty body");
+            }
+            if(reader.has(WeatherReportCodec.SENSOR_ID)){
+                return getErrorDTOResponseEntity("The sensor is given by the path, the weather report must not carry a sensor id",
+                        HttpStatus.BAD_REQUEST);
+            }
+            reader.readInto(reading);
+            if(reader.next()){
+                throw new IOException("More than one record");
+            }
+        } catch(IOException e){
+            return getErrorDTOResponseEntity("Body must be exactly one binary weather report", HttpStatus.BAD_REQUEST);
+        }
+        return accept(reading, identifier, sensorIdentifier);
+    }
+
+    // The reading is validated before the sensor is looked up, so a broken sensor's readings cost no lookups
+    private ResponseEntity<?> accept(WeatherReading reading, String identifier, String sensorIdentifier){
+
+        long start = System.nanoTime();
+        InvalidWeatherReportException.Reason invalid = reading.validate();
+        if(invalid != null){
+            weatherMetrics.rejected(invalid);
+            return getErrorDTOResponseEntity(invalid.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        start = phaseDone(IngestPhase.VALIDATION, start);
+
         Optional<Sensor> sensorOptional;
         if(identifier.equalsIgnoreCase("id")){
             try{
                 sensorOptional = sensorService.findById(UUID.fromString(sensorIdentifier));
             } catch(IllegalArgumentException e){
+                weatherMetrics.rejected(WeatherMetrics.MALFORMED_SENSOR_ID);
                 return getErrorDTOResponseEntity("Incorrect UUID format for id identifier", HttpStatus.BAD_REQUEST);
             }
         }
         else {
             sensorOptional = sensorService.findByTitle(sensorIdentifier);
         }
+        phaseDone(IngestPhase.LOOKUP, start);
 
         if(sensorOptional.isEmpty()){
+            weatherMetrics.rejected(WeatherMetrics.UNKNOWN_SENSOR);
             return getErrorDTOResponseEntity("Sensor with " + identifier + " " + sensorIdentifier + " not found", HttpStatus.BAD_REQUEST);
         }
+        WeatherReport wr = reading.toWeatherReport(sensorOptional.get());
 
-        WeatherReport wr;
-        try{
-            Sensor sensor = sensorOptional.get();
-            wr = new WeatherReport.Builder(sensor)
-                    .withTemperature(weatherReport.getTemperature())
-                    .withHumidity(weatherReport.getHumidity())
-                    .withWithSpeed(weatherReport.getWindSpeed())
-                    .build();
-            weatherReportService.save(wr);
-            sensor.addWeatherReport(wr);
-            sensorService.save(sensor);
+        if(writeBehindQueue.isEnabled()){
+            if(!writeBehindQueue.offer(wr)){
+                weatherMetrics.rejected(WeatherMetrics.QUEUE_FULL);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(errorDTO("Too many weather reports are waiting to be stored, retry later"));
+            }
+            return new ResponseEntity<>(new WeatherReportAckDTO(null, wr.getReportDate()), HttpStatus.ACCEPTED);
+        }
 
+        try{
+            ingestService.ingest(wr);
         } catch(IllegalArgumentException e){
-            return new ResponseEntity<>
-                    (errorDTO(e.getMessage()), HttpStatus.BAD_REQUEST);
+            return getErrorDTOResponseEntity(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(new WeatherReportAckDTO(wr.getId().toString(), wr.getReportDate()), HttpStatus.CREATED);
+    }
+
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> addWeatherReports(InputStream body, @RequestParam(defaultValue = "title") String identifier){
+
+        List<WeatherReportBatchItem> items = new ArrayList<>();
+        try(MappingIterator<WeatherReportBatchItem> iterator =
+                    objectMapper.readerFor(WeatherReportBatchItem.class).readValues(body)){
+            while(iterator.hasNextValue()){
+                if(items.size() == maxBatchSize){
+                    return getErrorDTOResponseEntity("Batch must not contain more than " + maxBatchSize + " weather reports",
+                            HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                items.add(iterator.nextValue());
+            }
+        } catch(IOException | RuntimeException e){
+            return getErrorDTOResponseEntity("Batch must be a JSON array or newline delimited JSON of weather reports",
+                    HttpStatus.BAD_REQUEST);
         }
-        return new ResponseEntity<>(wr, HttpStatus.CREATED);
+
+        return new ResponseEntity<>(ingestService.ingestBatch(items, identifier), HttpStatus.OK);
+    }
+
+    /**
+     * Binary records always name their sensor by id.
+     */
+    @PostMapping(consumes = WeatherReportCodec.MEDIA_TYPE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> addBinaryWeatherReports(InputStream body){
+
+        List<WeatherReportBatchItem> items = new ArrayList<>();
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(body);
+        try{
+            while(reader.next()){
+                if(items.size() == maxBatchSize){
+                    return getErrorDTOResponseEntity("Batch must not contain more than " + maxBatchSize + " weather reports",
+                            HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                items.add(reader.item());
+            }
+        } catch(IOException e){
+            return getErrorDTOResponseEntity("Batch must be a sequence of binary weather reports", HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<>(ingestService.ingestBatch(items, "id"), HttpStatus.OK);
+    }
+
+    private long phaseDone(IngestPhase phase, long start){
+        long now = System.nanoTime();
+        weatherMetrics.ingestPhase(phase, now - start);
+        return now;
     }
 
     private ResponseEntity<ErrorDTO> getErrorDTOResponseEntity(String message, HttpStatus status) {
@@ -0,0 +1,26 @@
+package com.weathersensors.poc.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@AllArgsConstructor
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResultDTO {
+
+    private int index;
+    private int status;
+    private String id;
+    private Error error;
+
+    public static BatchItemResultDTO created(int index, String id){
+        return new BatchItemResultDTO(index, 201, id, null);
+    }
+
+    public static BatchItemResultDTO rejected(int index, String message){
+        return new BatchItemResultDTO(index, 400, null, new Error(message));
+    }
+}
@@ -0,0 +1,20 @@
+package com.weathersensors.poc.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Stats of several sensors combined, with the same fields as a single {@link SensorDTO}.
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FleetDTO extends SensorDTO {
+
+    private String titlePrefix;
+    private int sensorCount;
+
+}
@@ -1,10 +1,15 @@
 package com.weathersensors.poc.dto;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.Collection;
+
 @Setter
 @Getter
 @NoArgsConstructor
@@ -22,8 +27,94 @@ public class SensorDTO {
     private Integer maxTemp;
     private Integer maxHumidity;
     private Integer maxWindSpeed;
-    private Integer tempSum;
-    private Integer humiditySum;
-    private Integer windSpeedSum;
+    private Long tempSum;
+    private Long humiditySum;
+    private Long windSpeedSum;
+    private Integer p50Temp;
+    private Integer p50Humidity;
+    private Integer p50WindSpeed;
+    private Integer p90Temp;
+    private Integer p90Humidity;
+    private Integer p90WindSpeed;
+    private Integer p95Temp;
+    private Integer p95Humidity;
+    private Integer p95WindSpeed;
+    private Integer p99Temp;
+    private Integer p99Humidity;
+    private Integer p99WindSpeed;
+
+    public static SensorDTO of(Sensor sensor){
+        SensorDTO sensorDTO = new SensorDTO();
+        sensorDTO.setId(sensor.getId().toString());
+        sensorDTO.setTitle(sensor.getTitle());
+        return sensorDTO;
+    }
+
+    /**
+     * Fills in the fields of each stat from the aggregate, the fields of other stats are left as they are.
+     */
+    public void setStats(Collection<Stat> stats, WeatherAggregate aggregate){
+        for(Stat stat : stats){
+            switch(stat){
+                case AVERAGE -> fillAverages(aggregate);
+                case MIN -> fillMin(aggregate);
+                case MAX -> fillMax(aggregate);
+                case SUM -> fillSum(aggregate);
+                case P50, P90, P95, P99 -> fillPercentile(stat, aggregate);
+            }
+        }
+    }
+
+    private void fillAverages(WeatherAggregate aggregate){
+        setAverageTemp(aggregate.getTemperature().average());
+        setAverageHumidity(aggregate.getHumidity().average());
+        setAverageWindSpeed(aggregate.getWindSpeed().average());
+    }
+
+    private void fillMin(WeatherAggregate aggregate){
+        setMinTemp(aggregate.getTemperature().minimum());
+        setMinHumidity(aggregate.getHumidity().minimum());
+        setMinWindSpeed(aggregate.getWindSpeed().minimum());
+    }
+
+    private void fillMax(WeatherAggregate aggregate){
+        setMaxTemp(aggregate.getTemperature().maximum());
+        setMaxHumidity(aggregate.getHumidity().maximum());
+        setMaxWindSpeed(aggregate.getWindSpeed().maximum());
+    }
+
+    private void fillSum(WeatherAggregate aggregate){
+        setTempSum(aggregate.getTemperature().getSum());
+        setHumiditySum(aggregate.getHumidity().getSum());
+        setWindSpeedSum(aggregate.getWindSpeed().getSum());
+    }
 
+    private void fillPercentile(Stat stat, WeatherAggregate aggregate){
+        Integer temperature = aggregate.getTemperature().percentile(stat.getPercent());
+        Integer humidity = aggregate.getHumidity().percentile(stat.getPercent());
+        Integer windSpeed = aggregate.getWindSpeed().percentile(stat.getPercent());
+        switch(stat){
+            case P50 -> {
+                setP50Temp(temperature);
+                setP50Humidity(humidity);
+                setP50WindSpeed(windSpeed);
+            }
+            case P90 -> {
+                setP90Temp(temperature);
+                setP90Humidity(humidity);
+                setP90WindSpeed(windSpeed);
+            }
+            case P95 -> {
+                setP95Temp(temperature);
+                setP95Humidity(humidity);
+                setP95WindSpeed(windSpeed);
+            }
+            case P99 -> {
+                setP99Temp(temperature);
+                setP99Humidity(humidity);
+                setP99WindSpeed(windSpeed);
+            }
+            default -> throw new IllegalArgumentException(stat + " is not a percentile");
+        }
+    }
 }
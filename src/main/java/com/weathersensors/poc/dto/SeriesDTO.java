@@ -0,0 +1,22 @@
+package com.weathersensors.poc.dto;
+
+import com.weathersensors.poc.entity.Metric;
+import com.weathersensors.poc.entity.Stat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+@Setter
+public class SeriesDTO {
+
+    private String id;
+    private Metric metric;
+    private Stat stat;
+    private String bucket;
+    private List<SeriesPointDTO> points;
+
+}
@@ -0,0 +1,16 @@
+package com.weathersensors.poc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@AllArgsConstructor
+@Getter
+@Setter
+public class SeriesPointDTO {
+
+    private String start;
+    private Number value;
+    private long count;
+
+}
@@ -0,0 +1,21 @@
+package com.weathersensors.poc.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * Acknowledges a stored reading. The id is missing when the reading was only queued.
+ */
+@AllArgsConstructor
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WeatherReportAckDTO {
+
+    private String id;
+    private Date reportDate;
+}
@@ -0,0 +1,15 @@
+package com.weathersensors.poc.dto;
+
+import com.weathersensors.poc.entity.WeatherReading;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Setter
+@Getter
+@NoArgsConstructor
+public class WeatherReportBatchItem extends WeatherReading {
+
+    private String sensor;
+
+}
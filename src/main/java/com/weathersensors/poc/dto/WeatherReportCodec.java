@@ -0,0 +1,244 @@
+package com.weathersensors.poc.dto;
+
+import com.weathersensors.poc.entity.WeatherReading;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of weather reports, accepted by /weather with the {@link #MEDIA_TYPE} content
+ * type. A body is a sequence of records, each one:
+ * <pre>
+ * flags        1 byte: 1 temperature, 2 humidity, 4 wind speed, 8 sensor id, 16 report date
+ * sensor id    16 bytes, most significant half first
+ * report date  epoch millis minus the previous record's report date, or minus 0 for the first
+ * metrics      temperature, humidity and wind speed in that order
+ * </pre>
+ * Every field after the flags is only there when flagged, and numbers are zigzag varints. A reading
+ * without sensor id and date costs 2 to 5 bytes, against 20 to 50 as JSON.
+ */
+public final class WeatherReportCodec {
+
+    public static final String MEDIA_TYPE = "application/vnd.weather-report";
+
+    public static final int TEMPERATURE = 1;
+    public static final int HUMIDITY = 2;
+    public static final int WIND_SPEED = 4;
+    public static final int SENSOR_ID = 8;
+    public static final int REPORT_DATE = 16;
+    private static final int KNOWN_FLAGS = TEMPERATURE | HUMIDITY | WIND_SPEED | SENSOR_ID | REPORT_DATE;
+
+    private WeatherReportCodec(){
+    }
+
+    /**
+     * Decodes one record at a time into primitive fields, which stay valid until the next call to {@link #next()}.
+     * The input is read in blocks, so it may be read past the current record.
+     */
+    public static final class Reader {
+
+        // A dozen batch records, while a single reading only pays for a small array
+        private static final int BUFFER_SIZE = 256;
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long previousDate;
+
+        private int flags;
+        private long sensorMost;
+        private long sensorLeast;
+        private long reportDate;
+        private int temperature;
+        private int humidity;
+        private int windSpeed;
+
+        public Reader(InputStream in){
+            this.in = in;
+        }
+
+        /**
+         * Reads the next record, or returns false at the end of the body.
+         */
+        public boolean next() throws IOException {
+            int first = read();
+            if(first < 0){
+                return false;
+            }
+            if((first & ~KNOWN_FLAGS) != 0){
+                throw new IOException("Unknown flags " + Integer.toBinaryString(first));
+            }
+            flags = first;
+            if(has(SENSOR_ID)){
+                sensorMost = readLong();
+                sensorLeast = readLong();
+            }
+            if(has(REPORT_DATE)){
+                reportDate = previousDate + decodeZigzag(readVarint(10));
+                previousDate = reportDate;
+            }
+            temperature = has(TEMPERATURE) ? readInt() : 0;
+            humidity = has(HUMIDITY) ? readInt() : 0;
+            windSpeed = has(WIND_SPEED) ? readInt() : 0;
+            return true;
+        }
+
+        public boolean has(int flag){
+            return (flags & flag) != 0;
+        }
+
+        public UUID sensorId(){
+            return has(SENSOR_ID) ? new UUID(sensorMost, sensorLeast) : null;
+        }
+
+        public long reportDate(){
+            return reportDate;
+        }
+
+        public int temperature(){
+            return temperature;
+        }
+
+        public int humidity(){
+            return humidity;
+        }
+
+        public int windSpeed(){
+            return windSpeed;
+        }
+
+        public WeatherReportBatchItem item(){
+            WeatherReportBatchItem item = new WeatherReportBatchItem();
+            item.setSensor(has(SENSOR_ID) ? sensorId().toString() : null);
+            readInto(item);
+            return item;
+        }
+
+        /**
+         * Copies the current record's report date and metrics, leaving the reading's other fields as they are.
+         */
+        public void readInto(WeatherReading reading){
+            if(has(REPORT_DATE)){
+                reading.setReportDate(reportDate);
+            }
+            if(has(TEMPERATURE)){
+                reading.setTemperature(temperature);
+            }
+            if(has(HUMIDITY)){
+                reading.setHumidity(humidity);
+            }
+            if(has(WIND_SPEED)){
+                reading.setWindSpeed(windSpeed);
+            }
+        }
+
+        private int readInt() throws IOException {
+            long value = decodeZigzag(readVarint(5));
+            if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+                throw new IOException("Metric out of int range");
+            }
+            return (int) value;
+        }
+
+        private long readLong() throws IOException {
+            long value = 0;
+            for(int i = 0; i < 8; i++){
+                value = value << 8 | readByte();
+            }
+            return value;
+        }
+
+        private long readVarint(int maxBytes) throws IOException {
+            long value = 0;
+            for(int i = 0; i < maxBytes; i++){
+                int b = readByte();
+                value |= (long) (b & 0x7F) << (7 * i);
+                if((b & 0x80) == 0){
+                    return value;
+                }
+            }
+            throw new IOException("Varint longer than " + maxBytes + " bytes");
+        }
+
+        private int readByte() throws IOException {
+            int b = read();
+            if(b < 0){
+                throw new EOFException("Truncated record");
+            }
+            return b;
+        }
+
+        private int read() throws IOException {
+            if(position == limit){
+                int read = in.read(buffer, 0, BUFFER_SIZE);
+                if(read <= 0){
+                    return -1;
+                }
+                position = 0;
+                limit = read;
+            }
+            return buffer[position++] & 0xFF;
+        }
+    }
+
+    public static final class Writer {
+
+        private final OutputStream out;
+        private long previousDate;
+
+        public Writer(OutputStream out){
+            this.out = out;
+        }
+
+        /**
+         * Writes one record, leaving out every null field.
+         */
+        public void write(UUID sensorId, Date reportDate, Integer temperature, Integer humidity, Integer windSpeed)
+                throws IOException {
+            int flags = (temperature != null ? TEMPERATURE : 0) | (humidity != null ? HUMIDITY : 0)
+                    | (windSpeed != null ? WIND_SPEED : 0) | (sensorId != null ? SENSOR_ID : 0)
+                    | (reportDate != null ? REPORT_DATE : 0);
+            out.write(flags);
+            if(sensorId != null){
+                writeLong(sensorId.getMostSignificantBits());
+                writeLong(sensorId.getLeastSignificantBits());
+            }
+            if(reportDate != null){
+                writeVarint(encodeZigzag(reportDate.getTime() - previousDate));
+                previousDate = reportDate.getTime();
+            }
+            for(Integer value : new Integer[]{temperature, humidity, windSpeed}){
+                if(value != null){
+                    writeVarint(encodeZigzag(value));
+                }
+            }
+        }
+
+        private void writeLong(long value) throws IOException {
+            for(int shift = 56; shift >= 0; shift -= 8){
+                out.write((int) (value >>> shift));
+            }
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while((value & ~0x7FL) != 0){
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    private static long decodeZigzag(long encoded){
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    private static long encodeZigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,37 @@
+package com.weathersensors.poc.entity;
+
+import lombok.Getter;
+
+/**
+ * Thrown by {@link WeatherReport.Builder} for a reading that can't be stored, with the reason it was rejected.
+ */
+@Getter
+public class InvalidWeatherReportException extends IllegalArgumentException {
+
+    @Getter
+    public enum Reason {
+        NO_SENSOR("Weather report must be linked to valid Sensor"),
+        TEMPERATURE_OUT_OF_RANGE("Temperature must be valid value between -150 and 200 Fahrenheit"),
+        HUMIDITY_OUT_OF_RANGE("Humidity must be between 0 and 100%"),
+        WIND_SPEED_OUT_OF_RANGE("Wind Speed must be between 0 and 250 MPH"),
+        NO_METRICS("Invalid Weather Report, at least one metric must be reported"),
+        REPORT_DATE_IN_FUTURE("Report date must not be in the future");
+
+        private final String message;
+
+        Reason(String message){
+            this.message = message;
+        }
+    }
+
+    private final Reason reason;
+
+    public InvalidWeatherReportException(Reason reason){
+        this(reason, reason.getMessage());
+    }
+
+    public InvalidWeatherReportException(Reason reason, String message){
+        super(message);
+        this.reason = reason;
+    }
+}
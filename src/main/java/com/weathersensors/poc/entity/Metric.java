@@ -0,0 +1,13 @@
+package com.weathersensors.poc.entity;
+
+public enum Metric {
+    TEMPERATURE,HUMIDITY,WIND_SPEED;
+
+    public MetricAggregate of(WeatherAggregate aggregate){
+        return switch(this){
+            case TEMPERATURE -> aggregate.getTemperature();
+            case HUMIDITY -> aggregate.getHumidity();
+            case WIND_SPEED -> aggregate.getWindSpeed();
+        };
+    }
+}
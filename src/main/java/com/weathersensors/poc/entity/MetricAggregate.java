@@ -0,0 +1,109 @@
+package com.weathersensors.poc.entity;
+
+import jakarta.persistence.Convert;
+import jakarta.persistence.Embeddable;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Running count/sum/min/max for a single metric. Min and max are only meaningful when count is above zero.
+ * The histogram backs percentiles, it is left empty by aggregates built from GROUP BY queries, which then
+ * have no percentiles.
+ */
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+public class MetricAggregate {
+
+    private long count;
+    private long sum;
+    private int min;
+    private int max;
+    @Convert(converter = MetricHistogramConverter.class)
+    private MetricHistogram histogram = new MetricHistogram();
+
+    public static MetricAggregate of(Long count, Long sum, Integer min, Integer max){
+        MetricAggregate aggregate = new MetricAggregate();
+        if(count != null && count > 0){
+            aggregate.count = count;
+            aggregate.sum = sum;
+            aggregate.min = min;
+            aggregate.max = max;
+        }
+        return aggregate;
+    }
+
+    public void add(Integer value){
+        if(value != null){
+            add(value.intValue());
+        }
+    }
+
+    public void add(int value){
+        add(value, 1);
+    }
+
+    public void add(int value, long times){
+        if(count == 0){
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count += times;
+        sum += value * times;
+        histogram.add(value, times);
+    }
+
+    public void merge(MetricAggregate other){
+        if(other.count == 0){
+            return;
+        }
+        if(count == 0){
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+        sum += other.sum;
+        histogram.merge(other.histogram);
+    }
+
+    public boolean isEmpty(){
+        return count == 0;
+    }
+
+    public Double average(){
+        return isEmpty() ? null : (double) sum / count;
+    }
+
+    public Integer minimum(){
+        return isEmpty() ? null : min;
+    }
+
+    public Integer maximum(){
+        return isEmpty() ? null : max;
+    }
+
+    /**
+     * Null when empty, or when some of the values were merged in without a histogram.
+     */
+    public Integer percentile(int percent){
+        return isEmpty() || histogram.getTotal() != count ? null : histogram.percentile(percent);
+    }
+
+    public Number value(Stat stat){
+        return switch(stat){
+            case AVERAGE -> average();
+            case MIN -> minimum();
+            case MAX -> maximum();
+            case SUM -> isEmpty() ? null : sum;
+            case P50, P90, P95, P99 -> percentile(stat.getPercent());
+        };
+    }
+}
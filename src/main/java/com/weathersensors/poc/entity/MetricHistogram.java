@@ -0,0 +1,178 @@
+package com.weathersensors.poc.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Exact number of times each value was seen, kept in a dense array from the lowest to the highest value.
+ * Report metrics are integers bounded by {@link WeatherReport.Builder}, a few hundred distinct values at
+ * most, so a histogram stays small whatever the number of readings, merges by adding counts and answers
+ * any percentile exactly.
+ */
+public class MetricHistogram {
+
+    private static final long[] EMPTY = new long[0];
+
+    private int lowest;
+    private long[] counts = EMPTY;
+    private long total;
+
+    public void add(int value){
+        add(value, 1);
+    }
+
+    public void add(int value, long times){
+        cover(value, value);
+        counts[value - lowest] += times;
+        total += times;
+    }
+
+    public void merge(MetricHistogram other){
+        if(other.total == 0){
+            return;
+        }
+        cover(other.lowest, other.lowest + other.counts.length - 1);
+        int offset = other.lowest - lowest;
+        for(int i = 0; i < other.counts.length; i++){
+            counts[offset + i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    public long getTotal(){
+        return total;
+    }
+
+    /**
+     * Nearest-rank percentile: the smallest value that at least percent % of the values are lower than or equal to.
+     */
+    public Integer percentile(int percent){
+        if(total == 0){
+            return null;
+        }
+        long rank = Math.max(1, (percent * total + 99) / 100);
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return lowest + i;
+            }
+        }
+        return lowest + counts.length - 1;
+    }
+
+    /**
+     * Encodes the lowest value followed by an (index gap, count) pair per value seen, all as varints.
+     */
+    public byte[] toBytes(){
+        if(total == 0){
+            return new byte[0];
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        writeVarint(out, ((lowest << 1) ^ (lowest >> 31)) & 0xFFFFFFFFL);
+        int previous = 0;
+        for(int i = 0; i < counts.length; i++){
+            if(counts[i] != 0){
+                writeVarint(out, i - previous);
+                writeVarint(out, counts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Histograms with the same counts are equal whatever the range their arrays grew to. Without this, an
+     * entity holding a histogram would look modified to every flush and be written back as it was read.
+     */
+    @Override
+    public boolean equals(Object o){
+        if(this == o){
+            return true;
+        }
+        if(!(o instanceof MetricHistogram other) || total != other.total){
+            return false;
+        }
+        int low = Math.min(lowest, other.lowest);
+        int high = Math.max(lowest + counts.length, other.lowest + other.counts.length);
+        for(int value = low; value < high; value++){
+            if(countOf(value) != other.countOf(value)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(){
+        return Long.hashCode(total);
+    }
+
+    public static MetricHistogram fromBytes(byte[] bytes){
+        MetricHistogram histogram = new MetricHistogram();
+        if(bytes == null || bytes.length == 0){
+            return histogram;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int zigzag = (int) readVarint(in);
+        int lowest = (zigzag >>> 1) ^ -(zigzag & 1);
+        // Sized by a first pass, growing the array value by value would copy it once per value
+        int start = in.position();
+        int highest = 0;
+        while(in.hasRemaining()){
+            highest += (int) readVarint(in);
+            readVarint(in);
+        }
+        histogram.cover(lowest, lowest + highest);
+        in.position(start);
+        int index = 0;
+        while(in.hasRemaining()){
+            index += (int) readVarint(in);
+            histogram.add(lowest + index, readVarint(in));
+        }
+        return histogram;
+    }
+
+    private long countOf(int value){
+        int index = value - lowest;
+        return index >= 0 && index < counts.length ? counts[index] : 0;
+    }
+
+    private void cover(int low, int high){
+        if(counts.length == 0){
+            lowest = low;
+            counts = new long[high - low + 1];
+            return;
+        }
+        if(low < lowest){
+            long[] grown = new long[counts.length + (lowest - low)];
+            System.arraycopy(counts, 0, grown, lowest - low, counts.length);
+            counts = grown;
+            lowest = low;
+        }
+        if(high >= lowest + counts.length){
+            counts = Arrays.copyOf(counts, high - lowest + 1);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value){
+        while((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in){
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do{
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+}
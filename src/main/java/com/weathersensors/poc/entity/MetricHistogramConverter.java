@@ -0,0 +1,18 @@
+package com.weathersensors.poc.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter
+public class MetricHistogramConverter implements AttributeConverter<MetricHistogram, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(MetricHistogram histogram){
+        return histogram == null ? null : histogram.toBytes();
+    }
+
+    @Override
+    public MetricHistogram convertToEntityAttribute(byte[] bytes){
+        return MetricHistogram.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,27 @@
+package com.weathersensors.poc.entity;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupResolution {
+    HOUR, DAY;
+
+    public Instant floor(Instant instant, ZoneId zone){
+        return switch(this){
+            case HOUR -> instant.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> instant.atZone(zone).toLocalDate().atStartOfDay(zone).toInstant();
+        };
+    }
+
+    public Instant ceil(Instant instant, ZoneId zone){
+        Instant floor = floor(instant, zone);
+        if(floor.equals(instant)){
+            return floor;
+        }
+        return switch(this){
+            case HOUR -> floor.plus(1, ChronoUnit.HOURS);
+            case DAY -> floor.atZone(zone).toLocalDate().plusDays(1).atStartOfDay(zone).toInstant();
+        };
+    }
+}
@@ -23,12 +23,13 @@ public class Sensor {
     @Column(name = "title", unique = true, nullable = false, length = 25)
     private String title;
 
-    @OneToMany
+    // Owned by WeatherReport.sensor, so storing a report is one insert. Loading this reads the sensor's whole history
+    @OneToMany(mappedBy = "sensor")
     @JsonIgnore
-    private List<WeatherReport> weatherReports;
+    private List<WeatherReport> weatherReports = new ArrayList<>();
 
-    public void addWeatherReport(WeatherReport weatherReport){
-        weatherReports.add(weatherReport);
-    }
+    @Embedded
+    @JsonIgnore
+    private WeatherAggregate aggregate = new WeatherAggregate();
 
 }
@@ -1,5 +1,23 @@
 package com.weathersensors.poc.entity;
 
 public enum Stat {
-    AVERAGE,MIN,MAX,SUM;
+    AVERAGE,MIN,MAX,SUM,P50(50),P90(90),P95(95),P99(99);
+
+    private final int percent;
+
+    Stat(){
+        this(0);
+    }
+
+    Stat(int percent){
+        this.percent = percent;
+    }
+
+    public boolean isPercentile(){
+        return percent > 0;
+    }
+
+    public int getPercent(){
+        return percent;
+    }
 }
@@ -0,0 +1,76 @@
+package com.weathersensors.poc.entity;
+
+import jakarta.persistence.AttributeOverride;
+import jakarta.persistence.AttributeOverrides;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.Embedded;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Collection;
+
+/**
+ * Count/sum/min/max of every metric a {@link WeatherReport} can carry, so any {@link Stat} can be answered
+ * without going back to the raw reports.
+ */
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+public class WeatherAggregate {
+
+    // Enough for a count on every value of the widest metric range
+    private static final int HISTOGRAM_LENGTH = 8192;
+
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "count", column = @Column(name = "temperature_count")),
+            @AttributeOverride(name = "sum", column = @Column(name = "temperature_sum")),
+            @AttributeOverride(name = "min", column = @Column(name = "temperature_min")),
+            @AttributeOverride(name = "max", column = @Column(name = "temperature_max")),
+            @AttributeOverride(name = "histogram", column = @Column(name = "temperature_histogram", length = HISTOGRAM_LENGTH))
+    })
+    private MetricAggregate temperature = new MetricAggregate();
+
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "count", column = @Column(name = "humidity_count")),
+            @AttributeOverride(name = "sum", column = @Column(name = "humidity_sum")),
+            @AttributeOverride(name = "min", column = @Column(name = "humidity_min")),
+            @AttributeOverride(name = "max", column = @Column(name = "humidity_max")),
+            @AttributeOverride(name = "histogram", column = @Column(name = "humidity_histogram", length = HISTOGRAM_LENGTH))
+    })
+    private MetricAggregate humidity = new MetricAggregate();
+
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "count", column = @Column(name = "wind_speed_count")),
+            @AttributeOverride(name = "sum", column = @Column(name = "wind_speed_sum")),
+            @AttributeOverride(name = "min", column = @Column(name = "wind_speed_min")),
+            @AttributeOverride(name = "max", column = @Column(name = "wind_speed_max")),
+            @AttributeOverride(name = "histogram", column = @Column(name = "wind_speed_histogram", length = HISTOGRAM_LENGTH))
+    })
+    private MetricAggregate windSpeed = new MetricAggregate();
+
+    public static WeatherAggregate of(Collection<WeatherReport> weatherReports){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        for(WeatherReport weatherReport : weatherReports){
+            aggregate.add(weatherReport);
+        }
+        return aggregate;
+    }
+
+    public void add(WeatherReport weatherReport){
+        temperature.add(weatherReport.getTemperature());
+        humidity.add(weatherReport.getHumidity());
+        windSpeed.add(weatherReport.getWindSpeed());
+    }
+
+    public void merge(WeatherAggregate other){
+        temperature.merge(other.temperature);
+        humidity.merge(other.humidity);
+        windSpeed.merge(other.windSpeed);
+    }
+}
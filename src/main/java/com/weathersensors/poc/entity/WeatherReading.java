@@ -0,0 +1,127 @@
+package com.weathersensors.poc.entity;
+
+import com.fasterxml.jackson.annotation.JsonSetter;
+
+import java.util.Date;
+
+/**
+ * A reading as it arrives, before it becomes a {@link WeatherReport}: primitive values with a presence
+ * bit each, and validation that returns the rejection reason instead of throwing, so a stream of bad
+ * readings costs no exceptions. Absent values read as 0. JSON binds through the boxed setters, where
+ * null leaves a value absent.
+ */
+public class WeatherReading {
+
+    public static final int TEMPERATURE = 1;
+    public static final int HUMIDITY = 2;
+    public static final int WIND_SPEED = 4;
+    public static final int REPORT_DATE = 8;
+    private static final int METRICS = TEMPERATURE | HUMIDITY | WIND_SPEED;
+
+    private int present;
+    private int temperature;
+    private int humidity;
+    private int windSpeed;
+    private long reportDate;
+
+    public boolean has(int flag){
+        return (present & flag) != 0;
+    }
+
+    public int getTemperature(){
+        return temperature;
+    }
+
+    public int getHumidity(){
+        return humidity;
+    }
+
+    public int getWindSpeed(){
+        return windSpeed;
+    }
+
+    public long getReportDate(){
+        return reportDate;
+    }
+
+    @JsonSetter
+    public void setTemperature(Integer temperature){
+        this.temperature = set(TEMPERATURE, temperature);
+    }
+
+    @JsonSetter
+    public void setHumidity(Integer humidity){
+        this.humidity = set(HUMIDITY, humidity);
+    }
+
+    @JsonSetter
+    public void setWindSpeed(Integer windSpeed){
+        this.windSpeed = set(WIND_SPEED, windSpeed);
+    }
+
+    @JsonSetter
+    public void setReportDate(Date reportDate){
+        this.reportDate = reportDate == null ? 0 : reportDate.getTime();
+        present = reportDate == null ? present & ~REPORT_DATE : present | REPORT_DATE;
+    }
+
+    public void setTemperature(int temperature){
+        this.temperature = temperature;
+        present |= TEMPERATURE;
+    }
+
+    public void setHumidity(int humidity){
+        this.humidity = humidity;
+        present |= HUMIDITY;
+    }
+
+    public void setWindSpeed(int windSpeed){
+        this.windSpeed = windSpeed;
+        present |= WIND_SPEED;
+    }
+
+    public void setReportDate(long reportDate){
+        this.reportDate = reportDate;
+        present |= REPORT_DATE;
+    }
+
+    /**
+     * Why the reading would be rejected, or null when it can be stored.
+     */
+    public InvalidWeatherReportException.Reason validate(){
+        if(has(TEMPERATURE) && WeatherReport.isOutsideValidRange(temperature, -150, 200)){
+            return InvalidWeatherReportException.Reason.TEMPERATURE_OUT_OF_RANGE;
+        }
+        if(has(HUMIDITY) && WeatherReport.isOutsideValidRange(humidity, 0, 100)){
+            return InvalidWeatherReportException.Reason.HUMIDITY_OUT_OF_RANGE;
+        }
+        if(has(WIND_SPEED) && WeatherReport.isOutsideValidRange(windSpeed, 0, 250)){
+            return InvalidWeatherReportException.Reason.WIND_SPEED_OUT_OF_RANGE;
+        }
+        if((present & METRICS) == 0){
+            return InvalidWeatherReportException.Reason.NO_METRICS;
+        }
+        if(has(REPORT_DATE) && reportDate > System.currentTimeMillis() + WeatherReport.MAX_CLOCK_SKEW){
+            return InvalidWeatherReportException.Reason.REPORT_DATE_IN_FUTURE;
+        }
+        return null;
+    }
+
+    /**
+     * Only meant for a reading that passed {@link #validate()}, nothing is checked again.
+     */
+    public WeatherReport toWeatherReport(Sensor sensor){
+        WeatherReport weatherReport = new WeatherReport();
+        weatherReport.setSensor(sensor);
+        weatherReport.setReportDate(has(REPORT_DATE) ? new Date(reportDate) : new Date());
+        weatherReport.setTemperature(has(TEMPERATURE) ? temperature : null);
+        weatherReport.setHumidity(has(HUMIDITY) ? humidity : null);
+        weatherReport.setWindSpeed(has(WIND_SPEED) ? windSpeed : null);
+        return weatherReport;
+    }
+
+    private int set(int flag, Integer value){
+        present = value == null ? present & ~flag : present | flag;
+        return value == null ? 0 : value;
+    }
+}
@@ -10,6 +10,10 @@ import java.util.Date;
 import java.util.UUID;
 
 @Entity(name="weather_report")
+@Table(indexes = {
+        @Index(name = "idx_weather_report_sensor_date", columnList = "sensor_id, report_date"),
+        @Index(name = "idx_weather_report_date", columnList = "report_date")
+})
 @NoArgsConstructor
 @Getter
 @Setter
@@ -24,12 +28,15 @@ public class WeatherReport {
     @ManyToOne
     @JoinColumn(name = "sensor_id")
     private Sensor sensor;
-    @Column(nullable = false)
+    @Column(name = "report_date", nullable = false)
     private Date reportDate;
     private Integer temperature;
     private Integer humidity;
     private Integer windSpeed;
 
+    // Allowed drift between a sensor's clock and ours
+    static final long MAX_CLOCK_SKEW = 60_000;
+
     public WeatherReport(Builder builder){
         this.sensor = builder.sensor;
         this.reportDate = builder.reportDate;
@@ -38,24 +45,41 @@ public class WeatherReport {
         this.windSpeed = builder.windSpeed;
     }
 
+    static boolean isOutsideValidRange(int value, int min, int max){
+        return value < min || value > max;
+    }
+
     public static class Builder {
         private final Sensor sensor;
-        private final Date reportDate;
+        private Date reportDate;
         private Integer temperature;
         private Integer humidity;
         private Integer windSpeed;
 
         public Builder(Sensor sensor){
             if(sensor == null){
-                throw new IllegalArgumentException("Weather report must be linked to valid Sensor");
+                throw new InvalidWeatherReportException(InvalidWeatherReportException.Reason.NO_SENSOR);
             }
             this.sensor = sensor;
             this.reportDate = new Date();
         }
 
+        /**
+         * Sets when the reading was taken, for readings buffered on the way. Null keeps the current time.
+         */
+        public Builder withReportDate(Date reportDate){
+            if(reportDate != null && reportDate.getTime() > System.currentTimeMillis() + MAX_CLOCK_SKEW){
+                throw new InvalidWeatherReportException(InvalidWeatherReportException.Reason.REPORT_DATE_IN_FUTURE);
+            }
+            if(reportDate != null){
+                this.reportDate = reportDate;
+            }
+            return this;
+        }
+
         public Builder withTemperature(Integer temperature){
             if(temperature != null && isOutsideValidRange(temperature, -150, 200)){
-                throw new IllegalArgumentException("Temperature must be valid value between -150 and 200 Fahrenheit");
+                throw new InvalidWeatherReportException(InvalidWeatherReportException.Reason.TEMPERATURE_OUT_OF_RANGE);
             }
             this.temperature = temperature;
             return this;
@@ -63,7 +87,7 @@ public class WeatherReport {
 
         public Builder withHumidity(Integer humidity){
             if(humidity != null && isOutsideValidRange(humidity, 0, 100)){
-                throw new IllegalArgumentException("Humidity must be between 0 and 100%");
+                throw new InvalidWeatherReportException(InvalidWeatherReportException.Reason.HUMIDITY_OUT_OF_RANGE);
             }
             this.humidity = humidity;
             return this;
@@ -71,7 +95,7 @@ public class WeatherReport {
 
         public Builder withWithSpeed(Integer windSpeed){
             if(windSpeed != null && isOutsideValidRange(windSpeed, 0, 250)){
-                throw new IllegalArgumentException("Wind Speed must be between 0 and 250 MPH");
+                throw new InvalidWeatherReportException(InvalidWeatherReportException.Reason.WIND_SPEED_OUT_OF_RANGE);
             }
             this.windSpeed = windSpeed;
             return this;
@@ -79,13 +103,9 @@ public class WeatherReport {
 
         public WeatherReport build(){
             if(temperature == null && windSpeed == null && humidity == null){
-                throw new IllegalArgumentException("Invalid Weather Report, at least one metric must be reported");
+                throw new InvalidWeatherReportException(InvalidWeatherReportException.Reason.NO_METRICS);
             }
             return new WeatherReport(this);
         }
-
-        private boolean isOutsideValidRange(int value, int min, int max){
-            return value < min || value > max;
-        }
     }
 }
@@ -0,0 +1,40 @@
+package com.weathersensors.poc.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+import java.util.UUID;
+
+@Entity(name = "weather_rollup")
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"sensor_id", "resolution", "bucket_start"}))
+@NoArgsConstructor
+@Getter
+@Setter
+public class WeatherRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @ManyToOne
+    @JoinColumn(name = "sensor_id", nullable = false)
+    private Sensor sensor;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private RollupResolution resolution;
+    @Column(name = "bucket_start", nullable = false)
+    private Date bucketStart;
+
+    @Embedded
+    private WeatherAggregate aggregate = new WeatherAggregate();
+
+    public WeatherRollup(Sensor sensor, RollupResolution resolution, Date bucketStart){
+        this.sensor = sensor;
+        this.resolution = resolution;
+        this.bucketStart = bucketStart;
+    }
+}
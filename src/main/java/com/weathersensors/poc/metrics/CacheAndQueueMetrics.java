@@ -0,0 +1,61 @@
+package com.weathersensors.poc.metrics;
+
+import com.weathersensors.poc.cache.QueryResultCache;
+import com.weathersensors.poc.service.SensorService;
+import com.weathersensors.poc.service.SubscriptionService;
+import com.weathersensors.poc.service.WriteBehindQueue;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the sensor lookup and query result cache counters, the depth of the write-behind queue, the reports
+ * it dropped and the number of open subscriptions.
+ */
+@Component
+public class CacheAndQueueMetrics implements MeterBinder {
+
+    private final SensorService sensorService;
+    private final WriteBehindQueue writeBehindQueue;
+    private final QueryResultCache queryResultCache;
+    private final SubscriptionService subscriptionService;
+
+    public CacheAndQueueMetrics(SensorService sensorService, WriteBehindQueue writeBehindQueue,
+                                QueryResultCache queryResultCache, SubscriptionService subscriptionService){
+        this.sensorService = sensorService;
+        this.writeBehindQueue = writeBehindQueue;
+        this.queryResultCache = queryResultCache;
+        this.subscriptionService = subscriptionService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        FunctionCounter.builder("weather.sensor.cache.requests", sensorService, SensorService::getCacheHits)
+                .description("Sensor lookups by title or id")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("weather.sensor.cache.requests", sensorService, SensorService::getCacheMisses)
+                .description("Sensor lookups by title or id")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("weather.query.cache.requests", queryResultCache, QueryResultCache::getHits)
+                .description("GET /sensor queries answered from cached results")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("weather.query.cache.requests", queryResultCache, QueryResultCache::getMisses)
+                .description("GET /sensor queries answered from cached results")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("weather.ingest.queue.size", writeBehindQueue, WriteBehindQueue::size)
+                .description("Weather reports waiting for the write-behind writer")
+                .register(registry);
+        FunctionCounter.builder("weather.ingest.queue.dropped", writeBehindQueue, WriteBehindQueue::getDropped)
+                .description("Accepted weather reports the write-behind writer could not store")
+                .register(registry);
+        Gauge.builder("weather.subscriptions", subscriptionService, SubscriptionService::getSubscriberCount)
+                .description("Open Server-Sent Events subscriptions")
+                .register(registry);
+    }
+}
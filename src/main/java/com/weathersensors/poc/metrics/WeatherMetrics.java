@@ -0,0 +1,104 @@
+package com.weathersensors.poc.metrics;
+
+import com.weathersensors.poc.entity.InvalidWeatherReportException;
+import com.weathersensors.poc.entity.Stat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Timers and counters for the ingest and query paths, served in Prometheus format at /actuator/prometheus.
+ * <pre>
+ * weather_ingest_seconds{phase="lookup|validation|persistence"}   time spent in each step of storing readings
+ * weather_ingest_rejected_total{reason}                         readings refused, by validation reason
+ * weather_query_seconds{stat, range="true|false"}               GET /sensor latency
+ * weather_query_sensors                                         sensors returned per query
+ * weather_query_readings                                        metric values covered by the answer per query
+ * </pre>
+ */
+@Component
+public class WeatherMetrics {
+
+    public enum IngestPhase {
+        LOOKUP,
+        VALIDATION,
+        PERSISTENCE
+    }
+
+    // Rejection reasons besides the ones of InvalidWeatherReportException
+    public static final String UNKNOWN_SENSOR = "unknown_sensor";
+    public static final String MALFORMED_SENSOR_ID = "malformed_sensor_id";
+    public static final String QUEUE_FULL = "queue_full";
+
+    private final MeterRegistry registry;
+    private final DistributionSummary sensorsReturned;
+    private final DistributionSummary readingsAggregated;
+    // Looked up once, registering on every call costs more than recording
+    private final Map<IngestPhase, Timer> ingestTimers = new EnumMap<>(IngestPhase.class);
+    private final Map<Integer, Timer> queryTimers = new ConcurrentHashMap<>();
+
+    public WeatherMetrics(MeterRegistry registry){
+        this.registry = registry;
+        for(IngestPhase phase : IngestPhase.values()){
+            ingestTimers.put(phase, Timer.builder("weather.ingest")
+                    .description("Time spent in each step of storing weather reports")
+                    .tag("phase", phase.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        this.sensorsReturned = DistributionSummary.builder("weather.query.sensors")
+                .description("Sensors returned by one stat query")
+                .register(registry);
+        this.readingsAggregated = DistributionSummary.builder("weather.query.readings")
+                .description("Metric values covered by the answer to one stat query, summed over its sensors")
+                .register(registry);
+    }
+
+    public void ingestPhase(IngestPhase phase, long nanos){
+        ingestTimers.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rejected(InvalidWeatherReportException.Reason reason){
+        rejected(reason.name().toLowerCase());
+    }
+
+    public void rejected(String reason){
+        Counter.builder("weather.ingest.rejected")
+                .description("Weather reports refused, by reason")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void query(Collection<Stat> stats, boolean ranged, long nanos, int sensors, long readings){
+        // One bit per stat and one for the range, so the same stats in any order share a timer
+        int key = ranged ? 1 : 0;
+        for(Stat stat : stats){
+            key |= 2 << stat.ordinal();
+        }
+        queryTimers.computeIfAbsent(key, k -> queryTimer(stats, ranged)).record(nanos, TimeUnit.NANOSECONDS);
+        sensorsReturned.record(sensors);
+        readingsAggregated.record(readings);
+    }
+
+    private Timer queryTimer(Collection<Stat> stats, boolean ranged){
+        String stat = stats.isEmpty() ? "NONE"
+                : EnumSet.copyOf(stats).stream().map(Enum::name).collect(Collectors.joining(","));
+        return Timer.builder("weather.query")
+                .description("Stat query latency")
+                .tag("stat", stat)
+                .tag("range", Boolean.toString(ranged))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,30 @@
+package com.weathersensors.poc.repository;
+
+import com.weathersensors.poc.entity.WeatherAggregate;
+
+import java.util.UUID;
+
+/**
+ * How many reports of a sensor carried the same readings, enough to rebuild the sensor's histograms
+ * without hydrating the reports.
+ */
+public interface ReadingCountView {
+
+    UUID getSensorId();
+    Integer getTemperature();
+    Integer getHumidity();
+    Integer getWindSpeed();
+    Long getTimes();
+
+    default void addTo(WeatherAggregate aggregate){
+        if(getTemperature() != null){
+            aggregate.getTemperature().add(getTemperature(), getTimes());
+        }
+        if(getHumidity() != null){
+            aggregate.getHumidity().add(getHumidity(), getTimes());
+        }
+        if(getWindSpeed() != null){
+            aggregate.getWindSpeed().add(getWindSpeed(), getTimes());
+        }
+    }
+}
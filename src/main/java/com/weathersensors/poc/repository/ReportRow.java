@@ -0,0 +1,13 @@
+package com.weathersensors.poc.repository;
+
+import java.util.Date;
+import java.util.UUID;
+
+public interface ReportRow {
+
+    UUID getSensorId();
+    Date getReportDate();
+    Integer getTemperature();
+    Integer getHumidity();
+    Integer getWindSpeed();
+}
@@ -0,0 +1,40 @@
+package com.weathersensors.poc.repository;
+
+import com.weathersensors.poc.entity.MetricAggregate;
+import com.weathersensors.poc.entity.WeatherAggregate;
+
+import java.util.UUID;
+
+/**
+ * Per-sensor count/sum/min/max computed by a GROUP BY query, so aggregates never hydrate report entities.
+ */
+public interface SensorAggregateView {
+
+    UUID getSensorId();
+
+    Long getTemperatureCount();
+    Long getTemperatureSum();
+    Integer getTemperatureMin();
+    Integer getTemperatureMax();
+
+    Long getHumidityCount();
+    Long getHumiditySum();
+    Integer getHumidityMin();
+    Integer getHumidityMax();
+
+    Long getWindSpeedCount();
+    Long getWindSpeedSum();
+    Integer getWindSpeedMin();
+    Integer getWindSpeedMax();
+
+    default WeatherAggregate toAggregate(){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        aggregate.setTemperature(MetricAggregate.of(getTemperatureCount(), getTemperatureSum(),
+                getTemperatureMin(), getTemperatureMax()));
+        aggregate.setHumidity(MetricAggregate.of(getHumidityCount(), getHumiditySum(),
+                getHumidityMin(), getHumidityMax()));
+        aggregate.setWindSpeed(MetricAggregate.of(getWindSpeedCount(), getWindSpeedSum(),
+                getWindSpeedMin(), getWindSpeedMax()));
+        return aggregate;
+    }
+}
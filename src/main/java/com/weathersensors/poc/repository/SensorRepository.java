@@ -1,15 +1,61 @@
 package com.weathersensors.poc.repository;
 
 import com.weathersensors.poc.entity.Sensor;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface SensorRepository extends JpaRepository<Sensor, UUID> {
 
      Optional<Sensor> findByTitle(String title);
 
+     List<Sensor> findByTitleIn(Collection<String> titles);
+
+     List<Sensor> findByIdIn(Collection<UUID> ids);
+
+     List<Sensor> findByIdInAndTitleIn(Collection<UUID> ids, Collection<String> titles);
+
+     List<Sensor> findByTitleStartingWith(String prefix);
+
+     List<SensorTitleView> findAllBy();
+
+     // Locked in id order, so two transactions locking overlapping sets of sensors can't deadlock
+     @Lock(LockModeType.PESSIMISTIC_WRITE)
+     @Query("select s from sensor s where s.id in :ids order by s.id")
+     List<Sensor> lockByIds(@Param("ids") Collection<UUID> ids);
+
+     // save() would give the sensor a newly generated id, this keeps the one it had before a restart
+     @Modifying
+     @Query(value = "insert into sensor (id, title, " +
+             "temperature_count, temperature_sum, temperature_min, temperature_max, " +
+             "humidity_count, humidity_sum, humidity_min, humidity_max, " +
+             "wind_speed_count, wind_speed_sum, wind_speed_min, wind_speed_max) " +
+             "values (:id, :title, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0)", nativeQuery = true)
+     int insertWithId(@Param("id") UUID id, @Param("title") String title);
+
+     @Query("select s from sensor s order by s.id")
+     List<Sensor> findFirstPage(Pageable pageable);
+
+     @Query("select s from sensor s where s.id > :after order by s.id")
+     List<Sensor> findPageAfter(@Param("after") UUID after, Pageable pageable);
+
+     @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+     @Query("select s from sensor s order by s.id")
+     Stream<Sensor> streamAll();
+
 }
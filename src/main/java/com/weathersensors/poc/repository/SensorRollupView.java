@@ -0,0 +1,11 @@
+package com.weathersensors.poc.repository;
+
+import com.weathersensors.poc.entity.WeatherAggregate;
+
+import java.util.UUID;
+
+public interface SensorRollupView {
+
+    UUID getSensorId();
+    WeatherAggregate getAggregate();
+}
@@ -0,0 +1,9 @@
+package com.weathersensors.poc.repository;
+
+import java.util.UUID;
+
+public interface SensorTitleView {
+
+    UUID getId();
+    String getTitle();
+}
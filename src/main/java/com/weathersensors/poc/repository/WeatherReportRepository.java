@@ -1,13 +1,66 @@
 package com.weathersensors.poc.repository;
 
 import com.weathersensors.poc.entity.WeatherReport;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface WeatherReportRepository extends JpaRepository<WeatherReport, UUID> {
 
+    @Query("select s.id as sensorId, " +
+            "count(r.temperature) as temperatureCount, sum(r.temperature) as temperatureSum, " +
+            "min(r.temperature) as temperatureMin, max(r.temperature) as temperatureMax, " +
+            "count(r.humidity) as humidityCount, sum(r.humidity) as humiditySum, " +
+            "min(r.humidity) as humidityMin, max(r.humidity) as humidityMax, " +
+            "count(r.windSpeed) as windSpeedCount, sum(r.windSpeed) as windSpeedSum, " +
+            "min(r.windSpeed) as windSpeedMin, max(r.windSpeed) as windSpeedMax " +
+            "from weather_report r join r.sensor s " +
+            "where (:anyId = true or s.id in :ids) and (:anyTitle = true or s.title in :titles) " +
+            "and r.reportDate >= :from and r.reportDate < :to " +
+            "group by s.id")
+    List<SensorAggregateView> aggregateBySensor(@Param("anyId") boolean anyId, @Param("ids") Collection<UUID> ids,
+                                                @Param("anyTitle") boolean anyTitle, @Param("titles") Collection<String> titles,
+                                                @Param("from") Date from, @Param("to") Date to);
+
+    @Query("select s.id as sensorId, r.temperature as temperature, r.humidity as humidity, " +
+            "r.windSpeed as windSpeed, count(r) as times " +
+            "from weather_report r join r.sensor s " +
+            "where (:anyId = true or s.id in :ids) and (:anyTitle = true or s.title in :titles) " +
+            "and r.reportDate >= :from and r.reportDate < :to " +
+            "group by s.id, r.temperature, r.humidity, r.windSpeed")
+    List<ReadingCountView> countReadingsBySensor(@Param("anyId") boolean anyId, @Param("ids") Collection<UUID> ids,
+                                                 @Param("anyTitle") boolean anyTitle, @Param("titles") Collection<String> titles,
+                                                 @Param("from") Date from, @Param("to") Date to);
+
+    @Query("select r.id from weather_report r where r.reportDate < :before")
+    List<UUID> findIdsBefore(@Param("before") Date before, Pageable pageable);
+
+    @Modifying
+    @Query("delete from weather_report r where r.id in :ids")
+    int deleteByIds(@Param("ids") Collection<UUID> ids);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select r.sensor.id as sensorId, r.reportDate as reportDate, r.temperature as temperature, " +
+            "r.humidity as humidity, r.windSpeed as windSpeed from weather_report r order by r.reportDate")
+    Stream<ReportRow> streamAllRows();
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select r.sensor.id as sensorId, r.reportDate as reportDate, r.temperature as temperature, " +
+            "r.humidity as humidity, r.windSpeed as windSpeed from weather_report r " +
+            "where r.sensor.id = :sensorId and r.reportDate >= :from and r.reportDate < :to order by r.reportDate")
+    Stream<ReportRow> streamRows(@Param("sensorId") UUID sensorId, @Param("from") Date from, @Param("to") Date to);
 
 }
@@ -0,0 +1,56 @@
+package com.weathersensors.poc.repository;
+
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface WeatherRollupRepository extends JpaRepository<WeatherRollup, UUID> {
+
+    Optional<WeatherRollup> findBySensorAndResolutionAndBucketStart(Sensor sensor, RollupResolution resolution, Date bucketStart);
+
+    @Query("select r from weather_rollup r where r.sensor.id = :sensorId and r.resolution = :resolution " +
+            "and r.bucketStart >= :from and r.bucketStart < :to order by r.bucketStart")
+    List<WeatherRollup> findBySensorId(@Param("sensorId") UUID sensorId, @Param("resolution") RollupResolution resolution,
+                                       @Param("from") Date from, @Param("to") Date to);
+
+    // A bucket can hold readings for some metrics only, so its min/max only count when that metric's count is above zero
+    @Query("select s.id as sensorId, " +
+            "sum(r.aggregate.temperature.count) as temperatureCount, sum(r.aggregate.temperature.sum) as temperatureSum, " +
+            "min(case when r.aggregate.temperature.count > 0 then r.aggregate.temperature.min end) as temperatureMin, " +
+            "max(case when r.aggregate.temperature.count > 0 then r.aggregate.temperature.max end) as temperatureMax, " +
+            "sum(r.aggregate.humidity.count) as humidityCount, sum(r.aggregate.humidity.sum) as humiditySum, " +
+            "min(case when r.aggregate.humidity.count > 0 then r.aggregate.humidity.min end) as humidityMin, " +
+            "max(case when r.aggregate.humidity.count > 0 then r.aggregate.humidity.max end) as humidityMax, " +
+            "sum(r.aggregate.windSpeed.count) as windSpeedCount, sum(r.aggregate.windSpeed.sum) as windSpeedSum, " +
+            "min(case when r.aggregate.windSpeed.count > 0 then r.aggregate.windSpeed.min end) as windSpeedMin, " +
+            "max(case when r.aggregate.windSpeed.count > 0 then r.aggregate.windSpeed.max end) as windSpeedMax " +
+            "from weather_rollup r join r.sensor s " +
+            "where (:anyId = true or s.id in :ids) and (:anyTitle = true or s.title in :titles) " +
+            "and r.resolution = :resolution and r.bucketStart >= :from and r.bucketStart < :to " +
+            "group by s.id")
+    List<SensorAggregateView> aggregateBySensor(@Param("anyId") boolean anyId, @Param("ids") Collection<UUID> ids,
+                                                @Param("anyTitle") boolean anyTitle, @Param("titles") Collection<String> titles,
+                                                @Param("resolution") RollupResolution resolution,
+                                                @Param("from") Date from, @Param("to") Date to);
+
+    // Histograms can't be summed in SQL, so the buckets are read whole and merged by the caller
+    @Query("select s.id as sensorId, r.aggregate as aggregate " +
+            "from weather_rollup r join r.sensor s " +
+            "where (:anyId = true or s.id in :ids) and (:anyTitle = true or s.title in :titles) " +
+            "and r.resolution = :resolution and r.bucketStart >= :from and r.bucketStart < :to")
+    List<SensorRollupView> findBySensors(@Param("anyId") boolean anyId, @Param("ids") Collection<UUID> ids,
+                                         @Param("anyTitle") boolean anyTitle, @Param("titles") Collection<String> titles,
+                                         @Param("resolution") RollupResolution resolution,
+                                         @Param("from") Date from, @Param("to") Date to);
+}
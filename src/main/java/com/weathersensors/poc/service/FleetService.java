@@ -0,0 +1,80 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Combines the aggregates of many sensors into one. Every sensor's aggregate is read with a single call to
+ * {@link StatsService} on the calling thread, so the queries behind it run once for the whole fleet instead of
+ * once per slice, and never block a fork/join worker. The aggregates are then split in halves until a slice is
+ * small enough, each slice is merged on its own worker into a partial aggregate, and the partials are merged
+ * pairwise on the way back up, which gives the same result in any order.
+ */
+@Service
+public class FleetService {
+
+    static final int SLICE_SIZE = 256;
+
+    @Autowired
+    private StatsService statsService;
+
+    private final ForkJoinPool pool;
+
+    public FleetService(@Value("${weather.fleet.parallelism:0}") int parallelism){
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void stop(){
+        pool.shutdown();
+    }
+
+    /**
+     * Aggregates all the sensors together over [from, to), both bounds are null for an all-time query.
+     */
+    public WeatherAggregate aggregate(List<Sensor> sensors, Instant from, Instant to, Collection<Stat> stats){
+        // An empty id filter would match every sensor
+        if(sensors.isEmpty()){
+            return new WeatherAggregate();
+        }
+        List<WeatherAggregate> aggregates = List.copyOf(statsService.aggregate(sensors,
+                sensors.stream().map(Sensor::getId).toList(), List.of(), from, to, stats).values());
+        return pool.invoke(new Slice(aggregates));
+    }
+
+    private static class Slice extends RecursiveTask<WeatherAggregate> {
+
+        private final List<WeatherAggregate> aggregates;
+
+        Slice(List<WeatherAggregate> aggregates){
+            this.aggregates = aggregates;
+        }
+
+        @Override
+        protected WeatherAggregate compute(){
+            if(aggregates.size() > SLICE_SIZE){
+                int middle = aggregates.size() / 2;
+                Slice left = new Slice(aggregates.subList(0, middle));
+                left.fork();
+                WeatherAggregate partial = new Slice(aggregates.subList(middle, aggregates.size())).compute();
+                partial.merge(left.join());
+                return partial;
+            }
+            // The aggregates may be the sensors' own running ones, so they are merged into a new one
+            WeatherAggregate partial = new WeatherAggregate();
+            aggregates.forEach(partial::merge);
+            return partial;
+        }
+    }
+}
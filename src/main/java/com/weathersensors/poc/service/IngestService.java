@@ -0,0 +1,189 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.cache.QueryResultCache;
+import com.weathersensors.poc.dto.BatchItemResultDTO;
+import com.weathersensors.poc.dto.WeatherReportBatchItem;
+import com.weathersensors.poc.entity.InvalidWeatherReportException;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.metrics.WeatherMetrics;
+import com.weathersensors.poc.metrics.WeatherMetrics.IngestPhase;
+import com.weathersensors.poc.store.SeriesStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class IngestService {
+
+    @Autowired
+    private WeatherReportService weatherReportService;
+
+    @Autowired
+    private SensorService sensorService;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private SeriesStore seriesStore;
+
+    @Autowired
+    private WeatherMetrics weatherMetrics;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Transactional
+    public void ingest(WeatherReport weatherReport){
+        ingestAll(List.of(weatherReport));
+    }
+
+    /**
+     * Validates and stores a batch of readings, resolving every referenced sensor with a single lookup.
+     * Invalid items are rejected individually and never stop the rest of the batch. The accepted reports,
+     * their sensors' aggregates and the rollups are stored in one transaction, all of them or none.
+     */
+    @Transactional
+    public List<BatchItemResultDTO> ingestBatch(List<WeatherReportBatchItem> items, String identifier){
+        long start = System.nanoTime();
+        boolean byId = identifier.equalsIgnoreCase("id");
+        Map<String, Sensor> sensors = byId ? resolveById(items) : resolveByTitle(items);
+        long resolved = System.nanoTime();
+        weatherMetrics.ingestPhase(IngestPhase.LOOKUP, resolved - start);
+
+        BatchItemResultDTO[] results = new BatchItemResultDTO[items.size()];
+        List<Integer> accepted = new ArrayList<>();
+        List<WeatherReport> weatherReports = new ArrayList<>();
+        for(int i = 0; i < items.size(); i++){
+            WeatherReportBatchItem item = items.get(i);
+            Sensor sensor = item.getSensor() == null ? null : sensors.get(item.getSensor());
+            if(sensor == null){
+                boolean malformed = byId && !isUuid(item.getSensor());
+                weatherMetrics.rejected(malformed ? WeatherMetrics.MALFORMED_SENSOR_ID : WeatherMetrics.UNKNOWN_SENSOR);
+                results[i] = malformed
+                        ? BatchItemResultDTO.rejected(i, "Incorrect UUID format for id identifier")
+                        : BatchItemResultDTO.rejected(i, "Sensor with " + identifier + " " + item.getSensor() + " not found");
+                continue;
+            }
+            InvalidWeatherReportException.Reason invalid = item.validate();
+            if(invalid != null){
+                weatherMetrics.rejected(invalid);
+                results[i] = BatchItemResultDTO.rejected(i, invalid.getMessage());
+                continue;
+            }
+            weatherReports.add(item.toWeatherReport(sensor));
+            accepted.add(i);
+        }
+        weatherMetrics.ingestPhase(IngestPhase.VALIDATION, System.nanoTime() - resolved);
+
+        if(!weatherReports.isEmpty()){
+            ingestAll(weatherReports);
+        }
+        for(int i = 0; i < accepted.size(); i++){
+            int index = accepted.get(i);
+            results[index] = BatchItemResultDTO.created(index, weatherReports.get(i).getId().toString());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * The reports may reference the detached sensors handed out by {@link SensorService}'s cache, so the
+     * sensors are loaded once here before their aggregates are updated. Their rows stay locked until the
+     * transaction commits, otherwise two ingests for the same sensor could both add to the aggregate they
+     * read and one of the additions would be lost.
+     * <p>
+     * In log storage mode only the log is written, and it adds the reports to the columnar store itself.
+     * The columnar store answers every stat query from the readings, so the sensors are neither locked nor
+     * updated and no rollups are kept.
+     */
+    @Transactional
+    public void ingestAll(List<WeatherReport> weatherReports){
+        long start = System.nanoTime();
+        Set<UUID> ids = weatherReports.stream().map(wr -> wr.getSensor().getId()).collect(Collectors.toSet());
+        boolean database = weatherReportService.isStoredInDatabase();
+        Map<UUID, Sensor> sensors = (database ? sensorService.loadByIds(ids) : sensorService.findByIds(ids)).stream()
+                .collect(Collectors.toMap(Sensor::getId, Function.identity()));
+        for(WeatherReport weatherReport : weatherReports){
+            Sensor sensor = sensors.get(weatherReport.getSensor().getId());
+            if(sensor == null){
+                throw new IllegalArgumentException("Sensor with id " + weatherReport.getSensor().getId() + " not found");
+            }
+            weatherReport.setSensor(sensor);
+        }
+
+        weatherReportService.saveAll(weatherReports);
+        if(database){
+            for(WeatherReport weatherReport : weatherReports){
+                weatherReport.getSensor().getAggregate().add(weatherReport);
+            }
+            sensorService.saveAll(sensors.values());
+            rollupService.recordAll(weatherReports);
+            afterCommit(() -> weatherReports.forEach(seriesStore::append));
+        }
+        queryResultCache.changed(ids);
+        subscriptionService.changed(ids);
+        weatherMetrics.ingestPhase(IngestPhase.PERSISTENCE, System.nanoTime() - start);
+    }
+
+    private Map<String, Sensor> resolveByTitle(List<WeatherReportBatchItem> items){
+        Set<String> titles = items.stream().map(WeatherReportBatchItem::getSensor).filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        return sensorService.findByTitles(titles).stream()
+                .collect(Collectors.toMap(Sensor::getTitle, Function.identity()));
+    }
+
+    // The columnar store can't roll back, so it only gets the reports once they are committed
+    private static void afterCommit(Runnable action){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit(){
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private Map<String, Sensor> resolveById(List<WeatherReportBatchItem> items){
+        Set<UUID> ids = items.stream().map(WeatherReportBatchItem::getSensor).filter(IngestService::isUuid)
+                .map(UUID::fromString).collect(Collectors.toSet());
+        Map<String, Sensor> sensors = new HashMap<>();
+        for(Sensor sensor : sensorService.findByIds(ids)){
+            sensors.put(sensor.getId().toString(), sensor);
+        }
+        // Clients may send ids in any case, so key every item's own spelling to the resolved sensor
+        for(WeatherReportBatchItem item : items){
+            if(isUuid(item.getSensor())){
+                Sensor sensor = sensors.get(UUID.fromString(item.getSensor()).toString());
+                if(sensor != null){
+                    sensors.put(item.getSensor(), sensor);
+                }
+            }
+        }
+        return sensors;
+    }
+
+    private static boolean isUuid(String value){
+        if(value == null){
+            return false;
+        }
+        try{
+            UUID.fromString(value);
+            return true;
+        } catch(IllegalArgumentException e){
+            return false;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.cache.QueryResultCache;
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.store.SeriesStore;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deletes raw reports older than weather.retention.raw-days. Their readings stay in the hourly and daily
+ * rollups, which are kept up to date on ingest, so stat queries before the cutoff are answered from the
+ * rollups alone. Reports are deleted in small transactions so ingest is never blocked for long.
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionService.class);
+
+    @Autowired
+    private WeatherReportRepository weatherReportRepository;
+
+    @Autowired
+    private WeatherReportService weatherReportService;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private SeriesStore seriesStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    private final int rawDays;
+    private final int batchSize;
+
+    public RetentionService(@Value("${weather.retention.raw-days:0}") int rawDays,
+                            @Value("${weather.retention.batch-size:1000}") int batchSize){
+        this.rawDays = rawDays;
+        this.batchSize = batchSize;
+    }
+
+    public boolean isEnabled(){
+        return rawDays > 0;
+    }
+
+    @PostConstruct
+    public void check(){
+        if(isEnabled() && !weatherReportService.isStoredInDatabase()){
+            throw new IllegalStateException("weather.retention.raw-days needs weather.storage.mode=jpa, the segment log keeps no rollups to answer queries before the cutoff");
+        }
+    }
+
+    /**
+     * Start of the oldest day whose raw readings are kept, in the rollup zone, or null when everything is kept.
+     * Readings before it may already be gone, but their rollups are complete. In a zone whose days don't start
+     * on a whole UTC hour, such as Asia/Kolkata, it is the start of that day's first hourly rollup instead.
+     */
+    public Instant cutoff(){
+        if(!isEnabled()){
+            return null;
+        }
+        ZoneId zone = rollupService.getZone();
+        return RollupResolution.HOUR.floor(
+                RollupResolution.DAY.floor(Instant.now().minus(Duration.ofDays(rawDays)), zone), zone);
+    }
+
+    @Scheduled(initialDelayString = "${weather.retention.interval:3600000}",
+            fixedDelayString = "${weather.retention.interval:3600000}")
+    public void compact(){
+        if(isEnabled()){
+            compactBefore(cutoff());
+        }
+    }
+
+    /**
+     * Deletes the raw readings older than the cutoff, returning how many reports were deleted.
+     */
+    public long compactBefore(Instant cutoff){
+        long deleted = 0;
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int batch;
+        do{
+            batch = transaction.execute(status -> deleteBatch(cutoff));
+            deleted += batch;
+        } while(batch == batchSize);
+        if(seriesStore.isEnabled()){
+            seriesStore.truncateBefore(cutoff);
+        }
+        if(deleted > 0){
+            // Answers before the cutoff now come from the rollups instead of the deleted reports
+            queryResultCache.changedAll();
+            log.info("Deleted {} weather reports older than {}", deleted, cutoff);
+        }
+        return deleted;
+    }
+
+    private int deleteBatch(Instant cutoff){
+        List<UUID> ids = weatherReportRepository.findIdsBefore(Date.from(cutoff), PageRequest.ofSize(batchSize));
+        if(ids.isEmpty()){
+            return 0;
+        }
+        weatherReportRepository.deleteByIds(ids);
+        return ids.size();
+    }
+}
@@ -0,0 +1,176 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.entity.WeatherRollup;
+import com.weathersensors.poc.repository.ReadingCountView;
+import com.weathersensors.poc.repository.SensorAggregateView;
+import com.weathersensors.poc.repository.SensorRollupView;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.repository.WeatherRollupRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Keeps hourly and daily {@link WeatherRollup} buckets up to date and answers range queries from them.
+ * A range is covered by whole days first, then whole hours at the edges, and only the sub-hour
+ * remainders are read from the raw reports.
+ */
+@Service
+public class RollupService {
+
+    private static final RollupResolution[] COARSEST_FIRST = {RollupResolution.DAY, RollupResolution.HOUR};
+
+    @Autowired
+    private WeatherRollupRepository weatherRollupRepository;
+
+    @Autowired
+    private WeatherReportRepository weatherReportRepository;
+
+    private final ZoneId zone;
+
+    public RollupService(@Value("${weather.rollup.zone:}") String zone){
+        this.zone = zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone);
+    }
+
+    public ZoneId getZone(){
+        return zone;
+    }
+
+    /**
+     * The coarsest resolution whose buckets each lie within one bucket of the given width, when those are
+     * aligned to multiples of it since the epoch. Null when the width isn't a whole number of hours.
+     */
+    public RollupResolution alignedResolution(Duration width){
+        // Days in the zone only start on whole UTC days when it is UTC all year round
+        if(width.toMillis() % Duration.ofDays(1).toMillis() == 0 && zone.getRules().isFixedOffset()
+                && zone.getRules().getOffset(Instant.EPOCH).getTotalSeconds() == 0){
+            return RollupResolution.DAY;
+        }
+        if(width.toMillis() % Duration.ofHours(1).toMillis() == 0){
+            return RollupResolution.HOUR;
+        }
+        return null;
+    }
+
+    /**
+     * One sensor's rollups of the resolution starting in [from, to), in time order.
+     */
+    public List<WeatherRollup> rollups(UUID sensorId, RollupResolution resolution, Instant from, Instant to){
+        return weatherRollupRepository.findBySensorId(sensorId, resolution, Date.from(from), Date.from(to));
+    }
+
+    public void record(WeatherReport weatherReport){
+        recordAll(List.of(weatherReport));
+    }
+
+    /**
+     * Folds the reports into their buckets first, so each touched bucket is read and written once. Runs in
+     * the ingest transaction, which holds the sensors' rows locked, so no two ingests find and create the same
+     * sensor's buckets at once, and the unique constraint on a bucket backs that up.
+     */
+    public void recordAll(List<WeatherReport> weatherReports){
+        Map<Sensor, Map<String, WeatherRollup>> deltas = new IdentityHashMap<>();
+        for(WeatherReport weatherReport : weatherReports){
+            Sensor sensor = weatherReport.getSensor();
+            Instant reportDate = weatherReport.getReportDate().toInstant();
+            for(RollupResolution resolution : RollupResolution.values()){
+                Date bucketStart = Date.from(resolution.floor(reportDate, zone));
+                deltas.computeIfAbsent(sensor, s -> new LinkedHashMap<>())
+                        .computeIfAbsent(resolution + "@" + bucketStart.getTime(),
+                                key -> new WeatherRollup(sensor, resolution, bucketStart))
+                        .getAggregate().add(weatherReport);
+            }
+        }
+
+        for(Map.Entry<Sensor, Map<String, WeatherRollup>> entry : deltas.entrySet()){
+            Sensor sensor = entry.getKey();
+            for(WeatherRollup delta : entry.getValue().values()){
+                WeatherRollup rollup = weatherRollupRepository
+                        .findBySensorAndResolutionAndBucketStart(sensor, delta.getResolution(), delta.getBucketStart())
+                        .orElse(delta);
+                if(rollup != delta){
+                    rollup.getAggregate().merge(delta.getAggregate());
+                }
+                weatherRollupRepository.save(rollup);
+            }
+        }
+    }
+
+    /**
+     * Aggregates every sensor matching the id and title filters over [from, to), keyed by sensor id.
+     * An empty filter matches all sensors, and sensors without readings in the range are absent.
+     */
+    public Map<UUID, WeatherAggregate> aggregate(Collection<UUID> ids, Collection<String> titles, Instant from, Instant to){
+        return aggregate(ids, titles, from, to, false);
+    }
+
+    /**
+     * With histograms the rollups are read row by row and the raw edges value by value instead of being
+     * summed in SQL, which is slower but fills the histograms percentiles need.
+     */
+    public Map<UUID, WeatherAggregate> aggregate(Collection<UUID> ids, Collection<String> titles, Instant from, Instant to,
+                                                 boolean histograms){
+        Map<UUID, WeatherAggregate> aggregates = new HashMap<>();
+        cover(ids, titles, from, to, histograms, 0, aggregates);
+        return aggregates;
+    }
+
+    private void cover(Collection<UUID> ids, Collection<String> titles, Instant from, Instant to, boolean histograms,
+                       int level, Map<UUID, WeatherAggregate> aggregates){
+        if(!from.isBefore(to)){
+            return;
+        }
+        if(level == COARSEST_FIRST.length){
+            if(histograms){
+                for(ReadingCountView view : weatherReportRepository.countReadingsBySensor(ids.isEmpty(), ids,
+                        titles.isEmpty(), titles, Date.from(from), Date.from(to))){
+                    view.addTo(aggregates.computeIfAbsent(view.getSensorId(), id -> new WeatherAggregate()));
+                }
+            } else {
+                merge(aggregates, weatherReportRepository.aggregateBySensor(ids.isEmpty(), ids, titles.isEmpty(), titles,
+                        Date.from(from), Date.from(to)));
+            }
+            return;
+        }
+
+        RollupResolution resolution = COARSEST_FIRST[level];
+        Instant firstWhole = resolution.ceil(from, zone);
+        Instant lastWhole = resolution.floor(to, zone);
+        // Days in a zone like Asia/Kolkata start at half past, which would leave edges no hourly rollup ends on
+        if(!firstWhole.isBefore(lastWhole) || !isWholeHour(firstWhole) || !isWholeHour(lastWhole)){
+            cover(ids, titles, from, to, histograms, level + 1, aggregates);
+            return;
+        }
+
+        if(histograms){
+            for(SensorRollupView view : weatherRollupRepository.findBySensors(ids.isEmpty(), ids, titles.isEmpty(), titles,
+                    resolution, Date.from(firstWhole), Date.from(lastWhole))){
+                aggregates.computeIfAbsent(view.getSensorId(), id -> new WeatherAggregate()).merge(view.getAggregate());
+            }
+        } else {
+            merge(aggregates, weatherRollupRepository.aggregateBySensor(ids.isEmpty(), ids, titles.isEmpty(), titles,
+                    resolution, Date.from(firstWhole), Date.from(lastWhole)));
+        }
+        cover(ids, titles, from, firstWhole, histograms, level + 1, aggregates);
+        cover(ids, titles, lastWhole, to, histograms, level + 1, aggregates);
+    }
+
+    private boolean isWholeHour(Instant instant){
+        return RollupResolution.HOUR.floor(instant, zone).equals(instant);
+    }
+
+    private static void merge(Map<UUID, WeatherAggregate> aggregates, List<SensorAggregateView> views){
+        for(SensorAggregateView view : views){
+            aggregates.computeIfAbsent(view.getSensorId(), id -> new WeatherAggregate()).merge(view.toAggregate());
+        }
+    }
+}
@@ -1,33 +1,204 @@
 package com.weathersensors.poc.service;
 
+import com.weathersensors.poc.cache.LruCache;
+import com.weathersensors.poc.cache.QueryResultCache;
 import com.weathersensors.poc.entity.Sensor;
 import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.store.SegmentLog;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+/**
+ * Sensor lookups by title and id go through bounded LRU caches, so resolving the sensor of an incoming
+ * report normally costs a hash lookup. The caches hold detached copies carrying only id and title, which
+ * never change once a sensor is created; code that needs the reports or the aggregate loads the entity
+ * with {@link #loadByIds(Collection)}. Unknown titles and ids are not cached, so a new sensor is visible
+ * straight away.
+ */
 @Service
 public class SensorService {
 
     @Autowired
     private SensorRepository sensorRepository;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private SegmentLog segmentLog;
+
+    private final LruCache<String, Sensor> byTitle;
+    private final LruCache<UUID, Sensor> byId;
+
+    public SensorService(@Value("${weather.sensor.cache.max-size:10000}") int cacheSize){
+        this.byTitle = new LruCache<>(cacheSize);
+        this.byId = new LruCache<>(cacheSize);
+    }
+
     public void save(Sensor sensor){
         sensorRepository.save(sensor);
+        if(segmentLog.isEnabled()){
+            // Logged once stored, so a restart gets the sensor back with its id even with an empty database
+            segmentLog.appendSensor(sensor);
+        }
+        evict(sensor);
+        queryResultCache.changedAll();
+    }
+
+    public void saveAll(Collection<Sensor> sensors){
+        sensorRepository.saveAll(sensors);
     }
 
     public Optional<Sensor> findByTitle(String title){
-        return sensorRepository.findByTitle(title);
+        return Optional.ofNullable(byTitle.get(title,
+                key -> sensorRepository.findByTitle(key).map(this::cache).orElse(null)));
     }
 
     public Optional<Sensor> findById(UUID id){
-        return sensorRepository.findById(id);
+        return Optional.ofNullable(byId.get(id,
+                key -> sensorRepository.findById(key).map(this::cache).orElse(null)));
+    }
+
+    public List<Sensor> findByTitles(Collection<String> titles){
+        List<Sensor> sensors = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for(String title : titles){
+            Sensor sensor = byTitle.get(title);
+            if(sensor == null){
+                missing.add(title);
+            } else {
+                sensors.add(sensor);
+            }
+        }
+        if(!missing.isEmpty()){
+            sensorRepository.findByTitleIn(missing).forEach(sensor -> sensors.add(cache(sensor)));
+        }
+        return sensors;
+    }
+
+    public List<Sensor> findByIds(Collection<UUID> ids){
+        List<Sensor> sensors = new ArrayList<>();
+        List<UUID> missing = new ArrayList<>();
+        for(UUID id : ids){
+            Sensor sensor = byId.get(id);
+            if(sensor == null){
+                missing.add(id);
+            } else {
+                sensors.add(sensor);
+            }
+        }
+        if(!missing.isEmpty()){
+            sensorRepository.findAllById(missing).forEach(sensor -> sensors.add(cache(sensor)));
+        }
+        return sensors;
+    }
+
+    /**
+     * Loads the sensors as entities of the current persistence context, bypassing the caches, and locks
+     * their rows until the transaction ends, so concurrent ingests update an aggregate one after the other.
+     */
+    public List<Sensor> loadByIds(Collection<UUID> ids){
+        List<Sensor> sensors = sensorRepository.lockByIds(ids);
+        // A sensor read earlier in the same persistence context, as with open-session-in-view, comes back as
+        // it was read, so the aggregates are read again now that nobody else can change them
+        sensors.forEach(entityManager::refresh);
+        return sensors;
+    }
+
+    /**
+     * Loads the sensors matching both filters, where an empty filter matches every sensor. Unlike the
+     * cached lookups these are full entities, with their running aggregates.
+     */
+    public List<Sensor> findSensors(Collection<UUID> ids, Collection<String> titles){
+        if(ids.isEmpty() && titles.isEmpty()){
+            return sensorRepository.findAll();
+        }
+        if(titles.isEmpty()){
+            return sensorRepository.findByIdIn(ids);
+        }
+        if(ids.isEmpty()){
+            return sensorRepository.findByTitleIn(titles);
+        }
+        return sensorRepository.findByIdInAndTitleIn(ids, titles);
+    }
+
+    /**
+     * Loads every sensor whose title starts with the prefix, all of them when it is empty.
+     */
+    public List<Sensor> findByTitlePrefix(String prefix){
+        return prefix.isEmpty() ? sensorRepository.findAll() : sensorRepository.findByTitleStartingWith(prefix);
+    }
+
+    /**
+     * Returns up to limit sensors in id order, starting after the given id, or from the first sensor when it is null.
+     */
+    public List<Sensor> findPage(UUID after, int limit){
+        PageRequest page = PageRequest.ofSize(limit);
+        return after == null ? sensorRepository.findFirstPage(page) : sensorRepository.findPageAfter(after, page);
+    }
+
+    /**
+     * Hands every sensor to the consumer in id order, chunkSize at a time, read through a database cursor.
+     * Each chunk is detached once the consumer returns, so memory use doesn't grow with the number of sensors.
+     */
+    public void forEachChunk(int chunkSize, Consumer<List<Sensor>> consumer){
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> {
+            try(Stream<Sensor> sensors = sensorRepository.streamAll()){
+                List<Sensor> chunk = new ArrayList<>(chunkSize);
+                Iterator<Sensor> iterator = sensors.iterator();
+                while(iterator.hasNext()){
+                    chunk.add(iterator.next());
+                    if(chunk.size() == chunkSize || !iterator.hasNext()){
+                        consumer.accept(chunk);
+                        chunk = new ArrayList<>(chunkSize);
+                        entityManager.clear();
+                    }
+                }
+            }
+        });
+    }
+
+    public long getCacheHits(){
+        return byTitle.getHits() + byId.getHits();
+    }
+
+    public long getCacheMisses(){
+        return byTitle.getMisses() + byId.getMisses();
+    }
+
+    private Sensor cache(Sensor sensor){
+        Sensor copy = new Sensor();
+        copy.setId(sensor.getId());
+        copy.setTitle(sensor.getTitle());
+        byTitle.put(copy.getTitle(), copy);
+        byId.put(copy.getId(), copy);
+        return copy;
     }
 
-    public List<Sensor> findAllSensors(){
-        return sensorRepository.findAll();
+    private void evict(Sensor sensor){
+        if(sensor.getTitle() != null){
+            byTitle.remove(sensor.getTitle());
+        }
+        if(sensor.getId() != null){
+            byId.remove(sensor.getId());
+        }
     }
 }
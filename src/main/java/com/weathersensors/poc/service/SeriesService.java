@@ -0,0 +1,245 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Metric;
+import com.weathersensors.poc.entity.MetricAggregate;
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherRollup;
+import com.weathersensors.poc.repository.ReportRow;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.store.SensorSeries;
+import com.weathersensors.poc.store.SeriesStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Downsamples one metric of one sensor into fixed width buckets. Buckets are aligned to multiples of
+ * their width since the epoch, so the same bucket always covers the same readings whatever the range,
+ * and a bucket of whole hours or days holds whole hourly or daily rollups.
+ */
+@Service
+public class SeriesService {
+
+    private static final Pattern BUCKET = Pattern.compile("(\\d{1,9})([smhd])");
+
+    @Autowired
+    private WeatherReportRepository weatherReportRepository;
+
+    @Autowired
+    private SeriesStore seriesStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private RetentionService retentionService;
+
+    private final int maxPoints;
+
+    public SeriesService(@Value("${weather.series.max-points:1000}") int maxPoints){
+        this.maxPoints = maxPoints;
+    }
+
+    public int getMaxPoints(){
+        return maxPoints;
+    }
+
+    /**
+     * Widens the bucket to a whole multiple of itself until [from, to) fits in at most points buckets.
+     */
+    public static Duration bucketFor(Instant from, Instant to, Duration bucket, int points){
+        long width = bucket.toMillis();
+        long wanted = buckets(from, to, width);
+        if(wanted <= points){
+            return bucket;
+        }
+        long factor = (wanted + points - 1) / points;
+        while(buckets(from, to, width * factor) > points){
+            factor++;
+        }
+        return bucket.multipliedBy(factor);
+    }
+
+    /**
+     * Aggregates the metric's readings in [from, to) per bucket. The first bucket starts at or before from,
+     * and buckets without readings are null. Without the columnar store a bucket of whole hours or days is
+     * filled from the rollups, and only the edges of the range that don't cover a whole rollup bucket are
+     * read raw. With a retention policy the part of the range before the cutoff is read from whole rollups,
+     * so the first and last points may also count readings of their buckets just outside the range, and the
+     * bucket must be a whole number of hours for the rollups to fit in it.
+     */
+    public MetricAggregate[] series(UUID sensorId, Metric metric, Instant from, Instant to, Duration bucket){
+        long width = bucket.toMillis();
+        long origin = Math.floorDiv(from.toEpochMilli(), width) * width;
+        MetricAggregate[] buckets = new MetricAggregate[(int) buckets(from, to, width)];
+        SensorSeries.ReadingConsumer add = (timestamp, value) -> bucket(buckets, origin, width, timestamp).add(value);
+        RollupResolution resolution = rollupService.alignedResolution(bucket);
+        ZoneId zone = rollupService.getZone();
+
+        Instant rawFrom = from;
+        Instant cutoff = retentionService.cutoff();
+        if(cutoff != null && from.isBefore(cutoff)){
+            if(resolution == null){
+                throw new IllegalArgumentException("Raw readings before " + cutoff
+                        + " have been deleted, a series starting before then needs a bucket of whole hours");
+            }
+            rawFrom = resolution.ceil(to.isBefore(cutoff) ? to : cutoff, zone);
+            addRollups(sensorId, metric, resolution, resolution.floor(from, zone), rawFrom, buckets, origin, width);
+        }
+        if(!rawFrom.isBefore(to)){
+            return buckets;
+        }
+        if(seriesStore.isEnabled() || resolution == null){
+            readRaw(sensorId, metric, rawFrom, to, add);
+        } else {
+            cover(sensorId, metric, resolution, rawFrom, to, buckets, origin, width, add);
+        }
+        return buckets;
+    }
+
+    /**
+     * Reads the whole rollup buckets in [from, to), then covers the edges with hours and the sub-hour
+     * remainders with raw readings.
+     */
+    private void cover(UUID sensorId, Metric metric, RollupResolution resolution, Instant from, Instant to,
+                       MetricAggregate[] buckets, long origin, long width, SensorSeries.ReadingConsumer add){
+        if(!from.isBefore(to)){
+            return;
+        }
+        ZoneId zone = rollupService.getZone();
+        Instant firstWhole = resolution.ceil(from, zone);
+        Instant lastWhole = resolution.floor(to, zone);
+        if(!firstWhole.isBefore(lastWhole)){
+            if(resolution == RollupResolution.DAY){
+                cover(sensorId, metric, RollupResolution.HOUR, from, to, buckets, origin, width, add);
+            } else {
+                readRaw(sensorId, metric, from, to, add);
+            }
+            return;
+        }
+        addRollups(sensorId, metric, resolution, firstWhole, lastWhole, buckets, origin, width);
+        if(resolution == RollupResolution.DAY){
+            cover(sensorId, metric, RollupResolution.HOUR, from, firstWhole, buckets, origin, width, add);
+            cover(sensorId, metric, RollupResolution.HOUR, lastWhole, to, buckets, origin, width, add);
+        } else {
+            if(from.isBefore(firstWhole)){
+                readRaw(sensorId, metric, from, firstWhole, add);
+            }
+            if(lastWhole.isBefore(to)){
+                readRaw(sensorId, metric, lastWhole, to, add);
+            }
+        }
+    }
+
+    private void addRollups(UUID sensorId, Metric metric, RollupResolution resolution, Instant from, Instant to,
+                            MetricAggregate[] buckets, long origin, long width){
+        for(WeatherRollup rollup : rollupService.rollups(sensorId, resolution, from, to)){
+            MetricAggregate aggregate = aggregate(rollup.getAggregate(), metric);
+            if(!aggregate.isEmpty()){
+                bucket(buckets, origin, width, rollup.getBucketStart().getTime()).merge(aggregate);
+            }
+        }
+    }
+
+    private static MetricAggregate bucket(MetricAggregate[] buckets, long origin, long width, long timestamp){
+        int index = (int) ((timestamp - origin) / width);
+        if(buckets[index] == null){
+            buckets[index] = new MetricAggregate();
+        }
+        return buckets[index];
+    }
+
+    private void readRaw(UUID sensorId, Metric metric, Instant from, Instant to, SensorSeries.ReadingConsumer add){
+        if(seriesStore.isEnabled()){
+            seriesStore.forEach(sensorId, column(metric), from.toEpochMilli(), to.toEpochMilli(), add);
+            return;
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> {
+            try(Stream<ReportRow> rows = weatherReportRepository.streamRows(sensorId, Date.from(from), Date.from(to))){
+                rows.forEach(row -> {
+                    Integer value = value(row, metric);
+                    if(value != null){
+                        add.accept(row.getReportDate().getTime(), value);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Parses a bucket width such as 30s, 15m, 1h or 1d.
+     */
+    public static Duration parseBucket(String bucket){
+        Matcher matcher = BUCKET.matcher(bucket);
+        if(!matcher.matches() || Long.parseLong(matcher.group(1)) == 0){
+            throw new IllegalArgumentException("bucket must be a positive number followed by s, m, h or d");
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        return switch(matcher.group(2)){
+            case "s" -> Duration.ofSeconds(amount);
+            case "m" -> Duration.ofMinutes(amount);
+            case "h" -> Duration.ofHours(amount);
+            default -> Duration.ofDays(amount);
+        };
+    }
+
+    public static String formatBucket(Duration bucket){
+        long seconds = bucket.getSeconds();
+        if(seconds % 86400 == 0){
+            return seconds / 86400 + "d";
+        }
+        if(seconds % 3600 == 0){
+            return seconds / 3600 + "h";
+        }
+        if(seconds % 60 == 0){
+            return seconds / 60 + "m";
+        }
+        return seconds + "s";
+    }
+
+    private static long buckets(Instant from, Instant to, long width){
+        long origin = Math.floorDiv(from.toEpochMilli(), width) * width;
+        return (to.toEpochMilli() - origin + width - 1) / width;
+    }
+
+    private static int column(Metric metric){
+        return switch(metric){
+            case TEMPERATURE -> SensorSeries.TEMPERATURE;
+            case HUMIDITY -> SensorSeries.HUMIDITY;
+            case WIND_SPEED -> SensorSeries.WIND_SPEED;
+        };
+    }
+
+    private static MetricAggregate aggregate(WeatherAggregate aggregate, Metric metric){
+        return switch(metric){
+            case TEMPERATURE -> aggregate.getTemperature();
+            case HUMIDITY -> aggregate.getHumidity();
+            case WIND_SPEED -> aggregate.getWindSpeed();
+        };
+    }
+
+    private static Integer value(ReportRow row, Metric metric){
+        return switch(metric){
+            case TEMPERATURE -> row.getTemperature();
+            case HUMIDITY -> row.getHumidity();
+            case WIND_SPEED -> row.getWindSpeed();
+        };
+    }
+}
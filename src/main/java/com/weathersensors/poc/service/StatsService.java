@@ -0,0 +1,83 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.store.SeriesStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Picks the cheapest source for a stat query: the columnar store when it is enabled, otherwise the
+ * sensors' running aggregates for all-time queries and the rollups for date ranges. With a retention
+ * policy the columnar store only answers for the part of a range after the retention cutoff.
+ */
+@Service
+public class StatsService {
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private SeriesStore seriesStore;
+
+    @Autowired
+    private RetentionService retentionService;
+
+    public ZoneId getZone(){
+        return rollupService.getZone();
+    }
+
+    /**
+     * Aggregates the sensors, which must already match the id and title filters, over [from, to).
+     * Both bounds are null for an all-time query. Histograms are only filled in for range queries
+     * when one of the stats is a percentile, the other sources always carry them.
+     */
+    public Map<UUID, WeatherAggregate> aggregate(List<Sensor> sensors, Collection<UUID> ids, Collection<String> titles,
+                                                 Instant from, Instant to, Collection<Stat> stats){
+        checkRange(from, to);
+        boolean histograms = stats.stream().anyMatch(Stat::isPercentile);
+        Instant cutoff = retentionService.cutoff();
+        if(seriesStore.isEnabled() && (cutoff == null || (from != null && !from.isBefore(cutoff)))){
+            return seriesStore.aggregate(sensors.stream().map(Sensor::getId).toList(), from, to);
+        }
+        if(from == null && to == null){
+            Map<UUID, WeatherAggregate> aggregates = new HashMap<>();
+            sensors.forEach(sensor -> aggregates.put(sensor.getId(), sensor.getAggregate()));
+            return aggregates;
+        }
+        if(seriesStore.isEnabled() && to.isAfter(cutoff)){
+            // The columnar store no longer holds readings before the cutoff, the rollups cover that part
+            Map<UUID, WeatherAggregate> aggregates = rollupService.aggregate(ids, titles, from, cutoff, histograms);
+            seriesStore.aggregate(sensors.stream().map(Sensor::getId).toList(), cutoff, to)
+                    .forEach((id, aggregate) -> aggregates.computeIfAbsent(id, key -> new WeatherAggregate()).merge(aggregate));
+            return aggregates;
+        }
+        return rollupService.aggregate(ids, titles, from, to, histograms);
+    }
+
+    /**
+     * Throws IllegalArgumentException when [from, to) reaches before the retention cutoff and has an edge
+     * there that isn't a whole UTC hour, as days in a zone like Asia/Kolkata have. The hourly rollups can't
+     * cover the part of an hour at that edge, and its raw readings have been deleted.
+     */
+    public void checkRange(Instant from, Instant to){
+        Instant cutoff = retentionService.cutoff();
+        if(cutoff == null || from == null || !from.isBefore(cutoff)){
+            return;
+        }
+        if(!isWholeHour(from) || (!to.isAfter(cutoff) && !isWholeHour(to))){
+            throw new IllegalArgumentException("Raw readings before " + cutoff
+                    + " have been deleted, a range starting before then must start and end on whole UTC hours");
+        }
+    }
+
+    private boolean isWholeHour(Instant instant){
+        return RollupResolution.HOUR.floor(instant, getZone()).equals(instant);
+    }
+}
@@ -0,0 +1,262 @@
+package com.weathersensors.poc.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weathersensors.poc.dto.SensorDTO;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes the stats of subscribed sensors over Server-Sent Events when they receive readings. Ingest only
+ * marks a sensor as changed, and only when someone subscribed to it. Every interval the changed sensors are
+ * looked up and aggregated once per distinct set of stats, each {@link SensorDTO} is serialized once, and
+ * every subscriber gets a single event with the Json of its changed sensors.
+ * <p>
+ * Events are written by a small pool of sender threads. A subscriber whose previous event is still being
+ * written is skipped, and its changes are sent with the next interval, so a slow client gets fewer,
+ * coalesced events instead of a growing backlog.
+ */
+@Service
+public class SubscriptionService {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionService.class);
+    static final String EVENT_NAME = "sensors";
+
+    @Autowired
+    private SensorService sensorService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final long timeout;
+    private final int maxSubscribers;
+    private final ExecutorService senders;
+
+    private final Map<UUID, Set<Subscription>> subscriptionsBySensor = new ConcurrentHashMap<>();
+    private final Set<UUID> changed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    // Only touched by the publishing thread
+    private final Set<Subscription> waiting = new LinkedHashSet<>();
+
+    public SubscriptionService(@Value("${weather.subscription.timeout:1800000}") long timeout,
+                               @Value("${weather.subscription.max-subscribers:10000}") int maxSubscribers,
+                               @Value("${weather.subscription.senders:4}") int senders){
+        this.timeout = timeout;
+        this.maxSubscribers = maxSubscribers;
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "weather-subscription-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribes to the sensors and sends their current stats as the first event. Empty when there are
+     * already max-subscribers subscriptions.
+     */
+    public Optional<SseEmitter> subscribe(List<Sensor> sensors, Collection<Stat> stats){
+        if(subscriberCount.incrementAndGet() > maxSubscribers){
+            subscriberCount.decrementAndGet();
+            return Optional.empty();
+        }
+        Subscription subscription = new Subscription(sensors.stream().map(Sensor::getId).collect(Collectors.toSet()),
+                stats.isEmpty() ? EnumSet.noneOf(Stat.class) : EnumSet.copyOf(stats));
+        subscription.emitter.onCompletion(() -> unsubscribe(subscription));
+        subscription.emitter.onTimeout(() -> unsubscribe(subscription));
+        subscription.emitter.onError(error -> unsubscribe(subscription));
+
+        // Registered before reading the current stats, so a reading committed meanwhile is sent as an update.
+        // Until the first event is out the subscription counts as sending, so no update can overtake it.
+        subscription.sending = true;
+        for(UUID id : subscription.sensorIds){
+            subscriptionsBySensor.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+        }
+        Map<UUID, String> current = serialize(sensors, subscription.stats);
+        subscription.send(event(current, subscription.sensorIds));
+        subscription.sending = false;
+        return Optional.of(subscription.emitter);
+    }
+
+    /**
+     * Marks the sensors as changed, once the surrounding transaction committed if there is one, so they
+     * are never read before the new reports are visible.
+     */
+    public void changed(Collection<UUID> sensorIds){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit(){
+                    markChanged(sensorIds);
+                }
+            });
+        } else {
+            markChanged(sensorIds);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${weather.subscription.interval:1000}")
+    public void publish(){
+        if(changed.isEmpty() && waiting.isEmpty()){
+            return;
+        }
+        Set<Subscription> due = new LinkedHashSet<>(waiting);
+        waiting.clear();
+        for(Iterator<UUID> ids = changed.iterator(); ids.hasNext(); ){
+            UUID id = ids.next();
+            ids.remove();
+            for(Subscription subscription : subscriptionsBySensor.getOrDefault(id, Set.of())){
+                subscription.pending.add(id);
+                due.add(subscription);
+            }
+        }
+
+        Map<Set<Stat>, List<Subscription>> byStats = new HashMap<>();
+        for(Subscription subscription : due){
+            if(subscription.closed){
+                continue;
+            }
+            if(subscription.sending){
+                waiting.add(subscription);
+            } else {
+                byStats.computeIfAbsent(subscription.stats, stats -> new ArrayList<>()).add(subscription);
+            }
+        }
+
+        for(Map.Entry<Set<Stat>, List<Subscription>> group : byStats.entrySet()){
+            Set<UUID> ids = new HashSet<>();
+            group.getValue().forEach(subscription -> ids.addAll(subscription.pending));
+            if(ids.isEmpty()){
+                continue;
+            }
+            Map<UUID, String> current = serialize(sensorService.findSensors(ids, List.of()), group.getKey());
+            for(Subscription subscription : group.getValue()){
+                String event = event(current, subscription.pending);
+                subscription.pending.clear();
+                subscription.sending = true;
+                senders.execute(() -> {
+                    subscription.send(event);
+                    subscription.sending = false;
+                });
+            }
+        }
+    }
+
+    public int getSubscriberCount(){
+        return subscriberCount.get();
+    }
+
+    @PreDestroy
+    public void close(){
+        senders.shutdownNow();
+        subscriptionsBySensor.values().stream().flatMap(Set::stream).distinct()
+                .forEach(subscription -> subscription.emitter.complete());
+    }
+
+    private void markChanged(Collection<UUID> sensorIds){
+        for(UUID id : sensorIds){
+            if(subscriptionsBySensor.containsKey(id)){
+                changed.add(id);
+            }
+        }
+    }
+
+    private void unsubscribe(Subscription subscription){
+        if(subscription.closed){
+            return;
+        }
+        subscription.closed = true;
+        subscriberCount.decrementAndGet();
+        for(UUID id : subscription.sensorIds){
+            subscriptionsBySensor.computeIfPresent(id, (key, subscriptions) -> {
+                subscriptions.remove(subscription);
+                return subscriptions.isEmpty() ? null : subscriptions;
+            });
+        }
+    }
+
+    // The Json of each sensor with the stats, keyed by sensor id
+    private Map<UUID, String> serialize(List<Sensor> sensors, Set<Stat> stats){
+        if(sensors.isEmpty()){
+            return Map.of();
+        }
+        Map<UUID, WeatherAggregate> aggregates = statsService.aggregate(sensors,
+                sensors.stream().map(Sensor::getId).toList(), List.of(), null, null, stats);
+        Map<UUID, String> serialized = new HashMap<>();
+        for(Sensor sensor : sensors){
+            SensorDTO sensorDTO = SensorDTO.of(sensor);
+            sensorDTO.setStats(stats, aggregates.getOrDefault(sensor.getId(), new WeatherAggregate()));
+            try{
+                serialized.put(sensor.getId(), objectMapper.writeValueAsString(sensorDTO));
+            } catch(JsonProcessingException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        return serialized;
+    }
+
+    // A Json array of the sensors, built from their serialized form. Sensors deleted meanwhile are left out
+    private static String event(Map<UUID, String> serialized, Collection<UUID> sensorIds){
+        StringJoiner event = new StringJoiner(",", "[", "]");
+        for(UUID id : sensorIds){
+            String sensor = serialized.get(id);
+            if(sensor != null){
+                event.add(sensor);
+            }
+        }
+        return event.toString();
+    }
+
+    private final class Subscription {
+
+        final SseEmitter emitter = new SseEmitter(timeout);
+        final Set<UUID> sensorIds;
+        final Set<Stat> stats;
+        final Set<UUID> pending = new LinkedHashSet<>();
+        volatile boolean sending;
+        volatile boolean closed;
+
+        Subscription(Set<UUID> sensorIds, Set<Stat> stats){
+            this.sensorIds = sensorIds;
+            this.stats = stats;
+        }
+
+        void send(String sensors){
+            if(closed){
+                return;
+            }
+            try{
+                emitter.send(SseEmitter.event().name(EVENT_NAME).data(sensors, MediaType.APPLICATION_JSON));
+            } catch(IOException | IllegalStateException e){
+                // The client went away
+                log.debug("Could not send to a subscriber: {}", e.getMessage());
+                emitter.completeWithError(e);
+                unsubscribe(this);
+            }
+        }
+    }
+}
@@ -2,16 +2,41 @@ package com.weathersensors.poc.service;
 
 import com.weathersensors.poc.entity.WeatherReport;
 import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.store.SegmentLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class WeatherReportService {
 
     @Autowired
     private WeatherReportRepository weatherReportRepository;
 
+    @Autowired
+    private SegmentLog segmentLog;
+
+    /**
+     * Whether reports are JPA entities, as opposed to records in the segment log.
+     */
+    public boolean isStoredInDatabase(){
+        return !segmentLog.isEnabled();
+    }
+
     public void save(WeatherReport weatherReport){
-        weatherReportRepository.save(weatherReport);
+        if(segmentLog.isEnabled()){
+            segmentLog.append(weatherReport);
+        } else {
+            weatherReportRepository.save(weatherReport);
+        }
+    }
+
+    public void saveAll(List<WeatherReport> weatherReports){
+        if(segmentLog.isEnabled()){
+            segmentLog.appendAll(weatherReports);
+        } else {
+            weatherReportRepository.saveAll(weatherReports);
+        }
     }
 }
@@ -0,0 +1,169 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.WeatherReport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of validated reports, used when weather.ingest.mode=async. A single writer thread takes
+ * up to batch-size reports, waiting at most linger milliseconds for the batch to fill, and ingests them
+ * in one transaction. Stats only include a report once its batch is written. When a batch fails its reports
+ * are retried one by one, so a single bad report only loses itself.
+ */
+@Component
+public class WriteBehindQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    @Autowired
+    private IngestService ingestService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<WeatherReport> queue;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public WriteBehindQueue(@Value("${weather.ingest.mode:sync}") String mode,
+                            @Value("${weather.ingest.async.queue-capacity:10000}") int capacity,
+                            @Value("${weather.ingest.async.batch-size:500}") int batchSize,
+                            @Value("${weather.ingest.async.linger:20}") long lingerMillis){
+        this.enabled = mode.equalsIgnoreCase("async");
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start(){
+        if(!enabled){
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drain, "weather-write-behind");
+        writer.start();
+    }
+
+    /**
+     * Returns false without blocking when the queue is full.
+     */
+    public boolean offer(WeatherReport weatherReport){
+        return queue.offer(weatherReport);
+    }
+
+    public int size(){
+        return queue.size();
+    }
+
+    /**
+     * Accepted reports that could not be written, even on their own.
+     */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * Stops taking new batches after the queue is empty, so reports accepted before shutdown are still written.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if(writer == null){
+            return;
+        }
+        running = false;
+        writer.join();
+    }
+
+    private void drain(){
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<WeatherReport> batch = new ArrayList<>(batchSize);
+        boolean interrupted = false;
+        while(!interrupted && (running || !queue.isEmpty())){
+            try{
+                WeatherReport first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while(batch.size() < batchSize){
+                    if(queue.drainTo(batch, batchSize - batch.size()) > 0){
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    WeatherReport next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if(next == null){
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+            if(!batch.isEmpty()){
+                write(transaction, batch);
+                batch.clear();
+            }
+        }
+        if(!queue.isEmpty()){
+            log.warn("Write-behind writer was interrupted with {} weather reports still queued", queue.size());
+        }
+    }
+
+    /**
+     * Every report in the batch was already acknowledged, so when the batch fails they are written again one
+     * at a time, each in its own transaction, and only those failing on their own are dropped.
+     */
+    private void write(TransactionTemplate transaction, List<WeatherReport> batch){
+        try{
+            transaction.executeWithoutResult(status -> ingestService.ingestAll(new ArrayList<>(batch)));
+            return;
+        } catch(RuntimeException e){
+            if(batch.size() == 1){
+                drop(batch.get(0), e);
+                return;
+            }
+            log.warn("Writing {} weather reports failed, writing them one by one", batch.size(), e);
+        }
+        for(WeatherReport weatherReport : batch){
+            // The failed attempt gave the report an id that was rolled back with it
+            weatherReport.setId(null);
+            try{
+                transaction.executeWithoutResult(status -> ingestService.ingestAll(List.of(weatherReport)));
+            } catch(RuntimeException e){
+                drop(weatherReport, e);
+            }
+        }
+    }
+
+    private void drop(WeatherReport weatherReport, RuntimeException e){
+        dropped.incrementAndGet();
+        log.error("Dropped a weather report of sensor {} that could not be written", weatherReport.getSensor().getId(), e);
+    }
+}
@@ -0,0 +1,224 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.repository.SensorTitleView;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Restores the sensors and the columnar store from the segment log at startup in weather.storage.mode=log,
+ * and with weather.snapshot.enabled periodically snapshots both, so a restart only reads the log records
+ * appended after the newest snapshot instead of the whole log. Each snapshot holds the columnar store as
+ * it was at a log position, which it records, and sensors created later come back from their log records.
+ * <p>
+ * A file holds, big endian and followed by a CRC32 of everything before it:
+ * <pre>
+ * magic, format version, sequence number, creation time, log segment, log record, sensor count,
+ * then per sensor its id and title, series count, then per series its sensor id and readings
+ * </pre>
+ * It is written to a temporary file, forced to disk and renamed over, so a crash leaves the previous
+ * snapshot or the new one, never half of one.
+ */
+@Component
+public class AggregateSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregateSnapshot.class);
+
+    private static final int MAGIC = 0x57534E50;
+    static final int FORMAT_VERSION = 2;
+    private static final int KEEP = 2;
+
+    private final SegmentLog segmentLog;
+    private final SeriesStore seriesStore;
+    private final SensorRepository sensorRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final boolean enabled;
+    private final Path directory;
+
+    private long sequence;
+
+    public AggregateSnapshot(SegmentLog segmentLog, SeriesStore seriesStore, SensorRepository sensorRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${weather.snapshot.enabled:false}") boolean enabled,
+                             @Value("${weather.snapshot.directory:data/snapshots}") String directory){
+        this.segmentLog = segmentLog;
+        this.seriesStore = seriesStore;
+        this.sensorRepository = sensorRepository;
+        this.transactionManager = transactionManager;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+    }
+
+    /**
+     * Loads the newest readable snapshot, replays the newer log records into the columnar store and stores
+     * every sensor the database doesn't have yet, with its id. Without snapshots the whole log is replayed.
+     */
+    @PostConstruct
+    public synchronized void restore(){
+        if(!segmentLog.isEnabled()){
+            if(enabled){
+                throw new IllegalStateException("weather.snapshot.enabled needs weather.storage.mode=log, the database already keeps the readings otherwise");
+            }
+            return;
+        }
+        Map<UUID, String> titles = new LinkedHashMap<>();
+        SegmentLog.Position position = SegmentLog.Position.START;
+        if(enabled){
+            try{
+                Files.createDirectories(directory);
+                List<Path> snapshots = snapshotFiles();
+                for(int i = snapshots.size() - 1; i >= 0; i--){
+                    Path path = snapshots.get(i);
+                    try{
+                        position = read(path, titles);
+                        break;
+                    } catch(IOException e){
+                        log.warn("Skipping unreadable snapshot {}: {}", path, e.getMessage());
+                        titles.clear();
+                    }
+                }
+            } catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        long[] replayed = {0};
+        segmentLog.forEach(position, segmentLog.position(), (sensorId, timestamp, temperature, humidity, windSpeed) -> {
+            seriesStore.append(sensorId, timestamp, temperature, humidity, windSpeed);
+            replayed[0]++;
+        }, titles::put);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int restored = transaction.execute(status -> {
+            int count = 0;
+            for(Map.Entry<UUID, String> entry : titles.entrySet()){
+                if(sensorRepository.existsById(entry.getKey()) || sensorRepository.findByTitle(entry.getValue()).isPresent()){
+                    continue;
+                }
+                sensorRepository.insertWithId(entry.getKey(), entry.getValue());
+                count++;
+            }
+            return count;
+        });
+        log.info("Restored {} sensors from snapshot {} and the log, and replayed {} weather reports from the log",
+                restored, sequence, replayed[0]);
+    }
+
+    @Scheduled(initialDelayString = "${weather.snapshot.interval:60000}", fixedDelayString = "${weather.snapshot.interval:60000}")
+    @PreDestroy
+    public synchronized void write(){
+        if(!enabled){
+            return;
+        }
+        // Copied while appends wait, so the copies hold exactly the readings before the position
+        Capture capture = segmentLog.withPosition(position -> new Capture(position, seriesStore.copy()));
+        List<SensorTitleView> sensors = sensorRepository.findAllBy();
+        long next = sequence + 1;
+        Path target = directory.resolve(String.format("snapshot-%012d.bin", next));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try{
+            Files.createDirectories(directory);
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)), crc));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(next);
+                out.writeLong(System.currentTimeMillis());
+                out.writeLong(capture.position().segment());
+                out.writeInt(capture.position().record());
+                out.writeInt(sensors.size());
+                for(SensorTitleView sensor : sensors){
+                    out.writeLong(sensor.getId().getMostSignificantBits());
+                    out.writeLong(sensor.getId().getLeastSignificantBits());
+                    out.writeUTF(sensor.getTitle());
+                }
+                out.writeInt(capture.series().size());
+                for(Map.Entry<UUID, SensorSeries> entry : capture.series().entrySet()){
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    entry.getValue().write(out);
+                }
+                out.writeInt((int) crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            sequence = next;
+            List<Path> snapshots = snapshotFiles();
+            for(Path old : snapshots.subList(0, Math.max(0, snapshots.size() - KEEP))){
+                Files.delete(old);
+            }
+        } catch(IOException e){
+            log.error("Could not write snapshot {}", target, e);
+        }
+    }
+
+    // Restores the snapshot's series into the columnar store once the whole file checked out, returning its position
+    private SegmentLog.Position read(Path path, Map<UUID, String> titles) throws IOException {
+        CRC32 crc = new CRC32();
+        try(DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), crc))){
+            if(in.readInt() != MAGIC){
+                throw new IOException("not a snapshot");
+            }
+            int version = in.readInt();
+            if(version != FORMAT_VERSION){
+                throw new IOException("unsupported format version " + version);
+            }
+            long snapshotSequence = in.readLong();
+            in.readLong();
+            SegmentLog.Position snapshotPosition = new SegmentLog.Position(in.readLong(), in.readInt());
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                titles.put(new UUID(in.readLong(), in.readLong()), in.readUTF());
+            }
+            int seriesCount = in.readInt();
+            Map<UUID, SensorSeries> series = new HashMap<>();
+            for(int i = 0; i < seriesCount; i++){
+                series.put(new UUID(in.readLong(), in.readLong()), SensorSeries.read(in));
+            }
+            int expected = (int) crc.getValue();
+            if(in.readInt() != expected){
+                throw new IOException("checksum mismatch");
+            }
+            series.forEach(seriesStore::restore);
+            sequence = snapshotSequence;
+            return snapshotPosition;
+        } catch(EOFException e){
+            throw new IOException("truncated", e);
+        }
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.filter(path -> path.getFileName().toString().matches("snapshot-\\d{12}\\.bin"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private record Capture(SegmentLog.Position position, Map<UUID, SensorSeries> series) {
+    }
+}
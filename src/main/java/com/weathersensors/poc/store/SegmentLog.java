@@ -0,0 +1,326 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of weather reports kept in memory-mapped segment files, used instead of JPA when
+ * weather.storage.mode=log. Every report is a fixed-width 64 byte record:
+ * <pre>
+ *  0 magic        4 presence flags   8 report id   24 sensor id   40 epoch millis
+ * 48 temperature 52 humidity        56 wind speed  60 CRC32 of bytes 0-59
+ * </pre>
+ * A new sensor takes two records, so a restart gets it back even without the database:
+ * <pre>
+ *  0 sensor magic 4 title length     8 sensor id   24 UTF-8 title, zero padded   124 CRC32 of bytes 0-123
+ * </pre>
+ * Segments are preallocated and zero filled, so reading stops at the first record without a magic
+ * number or with a bad checksum, which is where the next append goes.
+ * <p>
+ * Appended reports are added to the columnar store while appends wait, so {@link #withPosition} sees the
+ * store holding exactly the reports before the position.
+ */
+@Component
+public class SegmentLog {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentLog.class);
+
+    static final int RECORD_SIZE = 64;
+    static final int SENSOR_SIZE = 2 * RECORD_SIZE;
+    private static final int MAGIC = 0x57524C31;
+    private static final int SENSOR_MAGIC = 0x57534E31;
+    private static final int CRC_OFFSET = 60;
+    private static final int SENSOR_CRC_OFFSET = 124;
+    private static final int TITLE_OFFSET = 24;
+    private static final int TEMPERATURE_PRESENT = 1;
+    private static final int HUMIDITY_PRESENT = 2;
+    private static final int WIND_SPEED_PRESENT = 4;
+
+    private final SeriesStore seriesStore;
+    private final boolean enabled;
+    private final Path directory;
+    private final int recordsPerSegment;
+
+    private final ByteBuffer scratch = ByteBuffer.allocate(SENSOR_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long segmentNumber;
+    private MappedByteBuffer segment;
+    private boolean dirty;
+
+    public SegmentLog(SeriesStore seriesStore,
+                      @Value("${weather.storage.mode:jpa}") String mode,
+                      @Value("${weather.storage.log.directory:data/weather-log}") String directory,
+                      @Value("${weather.storage.log.segment-size:67108864}") int segmentSize){
+        this.seriesStore = seriesStore;
+        this.enabled = mode.equalsIgnoreCase("log");
+        this.directory = Path.of(directory);
+        this.recordsPerSegment = segmentSize / RECORD_SIZE;
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    @PostConstruct
+    public void open(){
+        if(!enabled){
+            return;
+        }
+        if(!seriesStore.isEnabled()){
+            throw new IllegalStateException("weather.storage.mode=log needs weather.store.columnar.enabled=true to answer queries");
+        }
+        try{
+            Files.createDirectories(directory);
+            List<Path> segments = segmentFiles();
+            if(segments.isEmpty()){
+                roll();
+            } else {
+                // Older segments are only read when something asks for their records
+                Path last = segments.get(segments.size() - 1);
+                segmentNumber = segmentNumber(last);
+                segment = map(last);
+                segment.position(read(segment, 0, recordsPerSegment, (sensorId, timestamp, temperature, humidity, windSpeed) -> {},
+                        (sensorId, title) -> {}) * RECORD_SIZE);
+            }
+            log.info("Opened the weather log at segment {} record {}", segmentNumber, segment.position() / RECORD_SIZE);
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void append(WeatherReport weatherReport){
+        if(weatherReport.getId() == null){
+            weatherReport.setId(UUID.randomUUID());
+        }
+        if(segment.remaining() < RECORD_SIZE){
+            roll();
+        }
+        encode(weatherReport);
+        segment.put(scratch.array(), 0, RECORD_SIZE);
+        dirty = true;
+        seriesStore.append(weatherReport);
+    }
+
+    /**
+     * Logs a new sensor, its two records never span two segments.
+     */
+    public synchronized void appendSensor(Sensor sensor){
+        byte[] title = sensor.getTitle().getBytes(StandardCharsets.UTF_8);
+        if(title.length > SENSOR_CRC_OFFSET - TITLE_OFFSET){
+            throw new IllegalArgumentException("Sensor title is too long to be logged");
+        }
+        if(segment.remaining() < SENSOR_SIZE){
+            roll();
+        }
+        Arrays.fill(scratch.array(), (byte) 0);
+        scratch.clear();
+        scratch.putInt(SENSOR_MAGIC)
+                .putInt(title.length)
+                .putLong(sensor.getId().getMostSignificantBits())
+                .putLong(sensor.getId().getLeastSignificantBits())
+                .put(title);
+        crc.reset();
+        crc.update(scratch.array(), 0, SENSOR_CRC_OFFSET);
+        scratch.putInt(SENSOR_CRC_OFFSET, (int) crc.getValue());
+        segment.put(scratch.array(), 0, SENSOR_SIZE);
+        dirty = true;
+    }
+
+    public synchronized void appendAll(List<WeatherReport> weatherReports){
+        weatherReports.forEach(this::append);
+    }
+
+    /**
+     * Where the next record will be appended. Every record before it is complete.
+     */
+    public synchronized Position position(){
+        return new Position(segmentNumber, segment.position() / RECORD_SIZE);
+    }
+
+    /**
+     * Calls the reader with the current position while appends wait, so whatever it reads from the columnar
+     * store holds exactly the reports logged before that position.
+     */
+    public synchronized <T> T withPosition(Function<Position, T> reader){
+        return reader.apply(position());
+    }
+
+    /**
+     * Passes every valid report in [from, to) to the consumer, reading the segment files, so appends can go on meanwhile.
+     */
+    public void forEach(Position from, Position to, RecordConsumer consumer){
+        forEach(from, to, consumer, (sensorId, title) -> {});
+    }
+
+    /**
+     * Passes every valid report and sensor in [from, to) to the consumers, in the order they were logged.
+     */
+    public void forEach(Position from, Position to, RecordConsumer consumer, SensorConsumer sensors){
+        try{
+            for(Path path : segmentFiles()){
+                long number = segmentNumber(path);
+                if(number < from.segment() || number > to.segment()){
+                    continue;
+                }
+                int start = number == from.segment() ? from.record() : 0;
+                int end = number == to.segment() ? to.record() : recordsPerSegment;
+                try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                    int records = (int) Math.min(end, channel.size() / RECORD_SIZE);
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) records * RECORD_SIZE);
+                    int valid = read(mapped, start, records, consumer, sensors);
+                    if(valid < records && mapped.getInt(valid * RECORD_SIZE) != 0){
+                        log.warn("Segment {} is corrupt after record {}, the rest of it was skipped", path, valid);
+                    }
+                }
+            }
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${weather.storage.log.fsync-interval:1000}")
+    @PreDestroy
+    public synchronized void sync(){
+        if(segment != null && dirty){
+            segment.force();
+            dirty = false;
+        }
+    }
+
+    private void encode(WeatherReport weatherReport){
+        int flags = (weatherReport.getTemperature() != null ? TEMPERATURE_PRESENT : 0)
+                | (weatherReport.getHumidity() != null ? HUMIDITY_PRESENT : 0)
+                | (weatherReport.getWindSpeed() != null ? WIND_SPEED_PRESENT : 0);
+        scratch.clear();
+        scratch.putInt(MAGIC)
+                .putInt(flags)
+                .putLong(weatherReport.getId().getMostSignificantBits())
+                .putLong(weatherReport.getId().getLeastSignificantBits())
+                .putLong(weatherReport.getSensor().getId().getMostSignificantBits())
+                .putLong(weatherReport.getSensor().getId().getLeastSignificantBits())
+                .putLong(weatherReport.getReportDate().getTime())
+                .putInt(valueOrZero(weatherReport.getTemperature()))
+                .putInt(valueOrZero(weatherReport.getHumidity()))
+                .putInt(valueOrZero(weatherReport.getWindSpeed()));
+        crc.reset();
+        crc.update(scratch.array(), 0, CRC_OFFSET);
+        scratch.putInt((int) crc.getValue());
+    }
+
+    // Returns the index of the first record that is missing or invalid, or end
+    private static int read(MappedByteBuffer mapped, int start, int end, RecordConsumer consumer, SensorConsumer sensors){
+        byte[] record = new byte[SENSOR_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        CRC32 crc = new CRC32();
+        int index = start;
+        while(index < end){
+            int magic = mapped.getInt(index * RECORD_SIZE);
+            if(magic == SENSOR_MAGIC && index + 1 < end){
+                mapped.get(index * RECORD_SIZE, record, 0, SENSOR_SIZE);
+                crc.reset();
+                crc.update(record, 0, SENSOR_CRC_OFFSET);
+                if((int) crc.getValue() != buffer.getInt(SENSOR_CRC_OFFSET)){
+                    break;
+                }
+                sensors.accept(new UUID(buffer.getLong(8), buffer.getLong(16)),
+                        new String(record, TITLE_OFFSET, buffer.getInt(4), StandardCharsets.UTF_8));
+                index += 2;
+                continue;
+            }
+            if(magic != MAGIC){
+                break;
+            }
+            mapped.get(index * RECORD_SIZE, record, 0, RECORD_SIZE);
+            crc.reset();
+            crc.update(record, 0, CRC_OFFSET);
+            if((int) crc.getValue() != buffer.getInt(CRC_OFFSET)){
+                break;
+            }
+            int flags = buffer.getInt(4);
+            consumer.accept(new UUID(buffer.getLong(24), buffer.getLong(32)), buffer.getLong(40),
+                    (flags & TEMPERATURE_PRESENT) != 0 ? buffer.getInt(48) : null,
+                    (flags & HUMIDITY_PRESENT) != 0 ? buffer.getInt(52) : null,
+                    (flags & WIND_SPEED_PRESENT) != 0 ? buffer.getInt(56) : null);
+            index++;
+        }
+        return index;
+    }
+
+    private void roll(){
+        try{
+            if(segment != null){
+                segment.force();
+                segmentNumber++;
+            }
+            segment = map(directory.resolve(String.format("segment-%012d.log", segmentNumber)));
+            dirty = false;
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)){
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.filter(path -> path.getFileName().toString().matches("segment-\\d{12}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentNumber(Path path){
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+    }
+
+    private static int valueOrZero(Integer value){
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * A record's place in the log: its segment number and its index in that segment.
+     */
+    public record Position(long segment, int record) {
+
+        public static final Position START = new Position(0, 0);
+    }
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(UUID sensorId, long timestamp, Integer temperature, Integer humidity, Integer windSpeed);
+    }
+
+    @FunctionalInterface
+    public interface SensorConsumer {
+        void accept(UUID sensorId, String title);
+    }
+}
@@ -0,0 +1,312 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.entity.MetricAggregate;
+import com.weathersensors.poc.entity.WeatherAggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Time ordered readings of one sensor, stored column by column in fixed size chunks: a long[] of epoch
+ * milliseconds, an int[] per metric and a presence bitmap per metric. A reading costs about 20 bytes.
+ * Only the newest chunk grows, so a sensor with a short history only holds a small array.
+ */
+public class SensorSeries {
+
+    public static final int TEMPERATURE = 0;
+    public static final int HUMIDITY = 1;
+    public static final int WIND_SPEED = 2;
+    static final int METRICS = 3;
+
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    public void append(long timestamp, Integer temperature, Integer humidity, Integer windSpeed){
+        lock.writeLock().lock();
+        try{
+            int index = size;
+            ensureCapacity(size + 1);
+            size++;
+            // Readings normally arrive in order, a late one is shifted back to its place
+            while(index > 0 && timestampAt(index - 1) > timestamp){
+                copy(index - 1, index);
+                index--;
+            }
+            set(index, timestamp, temperature, humidity, windSpeed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every reading older than the timestamp.
+     */
+    public void truncateBefore(long timestamp){
+        lock.writeLock().lock();
+        try{
+            int dropped = lowerBound(timestamp);
+            if(dropped == 0){
+                return;
+            }
+            if((dropped & CHUNK_MASK) == 0){
+                chunks.subList(0, dropped >>> CHUNK_SHIFT).clear();
+            } else {
+                for(int index = dropped; index < size; index++){
+                    copy(index, index - dropped);
+                }
+                int kept = size - dropped;
+                chunks.subList(kept == 0 ? 0 : ((kept - 1) >>> CHUNK_SHIFT) + 1, chunks.size()).clear();
+            }
+            size -= dropped;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A copy of the readings as they are now, which later appends don't change.
+     */
+    public SensorSeries copy(){
+        lock.readLock().lock();
+        try{
+            SensorSeries copy = new SensorSeries();
+            chunks.forEach(chunk -> copy.chunks.add(chunk.copy()));
+            copy.size = size;
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the number of readings, then per chunk its timestamps and each metric's presence bitmap and values.
+     */
+    public void write(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try{
+            out.writeInt(size);
+            for(int start = 0; start < size; start += CHUNK_SIZE){
+                chunks.get(start >>> CHUNK_SHIFT).write(out, Math.min(CHUNK_SIZE, size - start));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static SensorSeries read(DataInput in) throws IOException {
+        SensorSeries series = new SensorSeries();
+        int size = in.readInt();
+        for(int start = 0; start < size; start += CHUNK_SIZE){
+            series.chunks.add(Chunk.read(in, Math.min(CHUNK_SIZE, size - start)));
+        }
+        series.size = size;
+        return series;
+    }
+
+    public int size(){
+        lock.readLock().lock();
+        try{
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds every reading with a timestamp in [from, to) to the aggregate.
+     */
+    public void aggregate(long from, long to, WeatherAggregate aggregate){
+        lock.readLock().lock();
+        try{
+            int start = lowerBound(from);
+            int end = lowerBound(to);
+            MetricAggregate[] metrics = {aggregate.getTemperature(), aggregate.getHumidity(), aggregate.getWindSpeed()};
+            while(start < end){
+                Chunk chunk = chunks.get(start >>> CHUNK_SHIFT);
+                int offset = start & CHUNK_MASK;
+                int limit = Math.min(CHUNK_SIZE, offset + (end - start));
+                for(int metric = 0; metric < METRICS; metric++){
+                    chunk.aggregate(metric, offset, limit, metrics[metric]);
+                }
+                start += limit - offset;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void aggregate(WeatherAggregate aggregate){
+        aggregate(Long.MIN_VALUE, Long.MAX_VALUE, aggregate);
+    }
+
+    /**
+     * Passes every present value of the metric with a timestamp in [from, to) to the consumer, oldest first.
+     */
+    public void forEach(int metric, long from, long to, ReadingConsumer consumer){
+        lock.readLock().lock();
+        try{
+            int end = lowerBound(to);
+            for(int index = lowerBound(from); index < end; index++){
+                Chunk chunk = chunks.get(index >>> CHUNK_SHIFT);
+                int offset = index & CHUNK_MASK;
+                if(chunk.isPresent(metric, offset)){
+                    consumer.accept(chunk.timestamps[offset], chunk.values[metric][offset]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int lowerBound(long timestamp){
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(timestampAt(mid) < timestamp){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long timestampAt(int index){
+        return chunks.get(index >>> CHUNK_SHIFT).timestamps[index & CHUNK_MASK];
+    }
+
+    private void set(int index, long timestamp, Integer temperature, Integer humidity, Integer windSpeed){
+        Chunk chunk = chunks.get(index >>> CHUNK_SHIFT);
+        int offset = index & CHUNK_MASK;
+        chunk.timestamps[offset] = timestamp;
+        chunk.set(TEMPERATURE, offset, temperature);
+        chunk.set(HUMIDITY, offset, humidity);
+        chunk.set(WIND_SPEED, offset, windSpeed);
+    }
+
+    private void copy(int from, int to){
+        Chunk source = chunks.get(from >>> CHUNK_SHIFT);
+        Chunk target = chunks.get(to >>> CHUNK_SHIFT);
+        int sourceOffset = from & CHUNK_MASK;
+        int targetOffset = to & CHUNK_MASK;
+        target.timestamps[targetOffset] = source.timestamps[sourceOffset];
+        for(int metric = 0; metric < METRICS; metric++){
+            target.set(metric, targetOffset, source.isPresent(metric, sourceOffset)
+                    ? source.values[metric][sourceOffset] : null);
+        }
+    }
+
+    private void ensureCapacity(int capacity){
+        int chunkIndex = (capacity - 1) >>> CHUNK_SHIFT;
+        if(chunkIndex == chunks.size()){
+            chunks.add(new Chunk(INITIAL_CAPACITY));
+        }
+        chunks.get(chunkIndex).ensureCapacity(((capacity - 1) & CHUNK_MASK) + 1);
+    }
+
+    @FunctionalInterface
+    public interface ReadingConsumer {
+        void accept(long timestamp, int value);
+    }
+
+    private static final class Chunk {
+
+        long[] timestamps;
+        final int[][] values = new int[METRICS][];
+        final long[][] present = new long[METRICS][CHUNK_SIZE >>> 6];
+
+        Chunk(int capacity){
+            timestamps = new long[capacity];
+            for(int metric = 0; metric < METRICS; metric++){
+                values[metric] = new int[capacity];
+            }
+        }
+
+        Chunk copy(){
+            Chunk copy = new Chunk(timestamps.length);
+            System.arraycopy(timestamps, 0, copy.timestamps, 0, timestamps.length);
+            for(int metric = 0; metric < METRICS; metric++){
+                System.arraycopy(values[metric], 0, copy.values[metric], 0, values[metric].length);
+                System.arraycopy(present[metric], 0, copy.present[metric], 0, present[metric].length);
+            }
+            return copy;
+        }
+
+        void write(DataOutput out, int length) throws IOException {
+            for(int i = 0; i < length; i++){
+                out.writeLong(timestamps[i]);
+            }
+            for(int metric = 0; metric < METRICS; metric++){
+                for(int word = 0; word < (length + 63) >>> 6; word++){
+                    out.writeLong(present[metric][word]);
+                }
+                for(int i = 0; i < length; i++){
+                    out.writeInt(values[metric][i]);
+                }
+            }
+        }
+
+        static Chunk read(DataInput in, int length) throws IOException {
+            Chunk chunk = new Chunk(length);
+            for(int i = 0; i < length; i++){
+                chunk.timestamps[i] = in.readLong();
+            }
+            for(int metric = 0; metric < METRICS; metric++){
+                for(int word = 0; word < (length + 63) >>> 6; word++){
+                    chunk.present[metric][word] = in.readLong();
+                }
+                for(int i = 0; i < length; i++){
+                    chunk.values[metric][i] = in.readInt();
+                }
+            }
+            return chunk;
+        }
+
+        void ensureCapacity(int capacity){
+            if(capacity <= timestamps.length){
+                return;
+            }
+            int grown = Math.min(CHUNK_SIZE, Math.max(capacity, timestamps.length * 2));
+            timestamps = Arrays.copyOf(timestamps, grown);
+            for(int metric = 0; metric < METRICS; metric++){
+                values[metric] = Arrays.copyOf(values[metric], grown);
+            }
+        }
+
+        void set(int metric, int offset, Integer value){
+            if(value == null){
+                present[metric][offset >>> 6] &= ~(1L << offset);
+                values[metric][offset] = 0;
+            } else {
+                present[metric][offset >>> 6] |= 1L << offset;
+                values[metric][offset] = value;
+            }
+        }
+
+        boolean isPresent(int metric, int offset){
+            return (present[metric][offset >>> 6] & (1L << offset)) != 0;
+        }
+
+        void aggregate(int metric, int from, int to, MetricAggregate aggregate){
+            int[] column = values[metric];
+            long[] bitmap = present[metric];
+            for(int i = from; i < to; i++){
+                if((bitmap[i >>> 6] & (1L << i)) != 0){
+                    aggregate.add(column[i]);
+                }
+            }
+        }
+    }
+}
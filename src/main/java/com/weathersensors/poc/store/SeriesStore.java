@@ -0,0 +1,122 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.repository.ReportRow;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory columnar copy of every sensor's report history. When enabled it is loaded from the
+ * weather_report table at startup, or from the segment log and its snapshots in log storage mode,
+ * appended to on ingest and used for every stat query.
+ */
+@Component
+public class SeriesStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SeriesStore.class);
+
+    private final Map<UUID, SensorSeries> series = new ConcurrentHashMap<>();
+
+    @Autowired
+    private WeatherReportRepository weatherReportRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${weather.store.columnar.enabled:false}")
+    private boolean enabled;
+
+    @PostConstruct
+    public void load(){
+        if(!enabled){
+            return;
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> {
+            try(Stream<ReportRow> rows = weatherReportRepository.streamAllRows()){
+                rows.forEach(row -> append(row.getSensorId(), row.getReportDate().getTime(),
+                        row.getTemperature(), row.getHumidity(), row.getWindSpeed()));
+            }
+        });
+        long loaded = series.values().stream().mapToLong(SensorSeries::size).sum();
+        log.info("Loaded {} weather reports for {} sensors into the columnar store", loaded, series.size());
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    public void append(WeatherReport weatherReport){
+        if(enabled){
+            append(weatherReport.getSensor().getId(), weatherReport.getReportDate().getTime(),
+                    weatherReport.getTemperature(), weatherReport.getHumidity(), weatherReport.getWindSpeed());
+        }
+    }
+
+    public void append(UUID sensorId, long timestamp, Integer temperature, Integer humidity, Integer windSpeed){
+        series.computeIfAbsent(sensorId, id -> new SensorSeries()).append(timestamp, temperature, humidity, windSpeed);
+    }
+
+    /**
+     * Copies of every sensor's series, keyed by sensor id.
+     */
+    public Map<UUID, SensorSeries> copy(){
+        Map<UUID, SensorSeries> copies = new HashMap<>();
+        series.forEach((sensorId, sensorSeries) -> copies.put(sensorId, sensorSeries.copy()));
+        return copies;
+    }
+
+    /**
+     * Replaces the sensor's series, for a store restored from a snapshot.
+     */
+    public void restore(UUID sensorId, SensorSeries sensorSeries){
+        series.put(sensorId, sensorSeries);
+    }
+
+    public void truncateBefore(Instant cutoff){
+        long timestamp = cutoff.toEpochMilli();
+        series.values().forEach(sensorSeries -> sensorSeries.truncateBefore(timestamp));
+    }
+
+    /**
+     * Passes the sensor's values of one {@link SensorSeries} metric in [from, to) to the consumer, oldest first.
+     */
+    public void forEach(UUID sensorId, int metric, long from, long to, SensorSeries.ReadingConsumer consumer){
+        SensorSeries sensorSeries = series.get(sensorId);
+        if(sensorSeries != null){
+            sensorSeries.forEach(metric, from, to, consumer);
+        }
+    }
+
+    /**
+     * Aggregates the given sensors over [from, to), where a null bound leaves that side of the range open.
+     */
+    public Map<UUID, WeatherAggregate> aggregate(Collection<UUID> sensorIds, Instant from, Instant to){
+        long start = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        long end = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        Map<UUID, WeatherAggregate> aggregates = new HashMap<>();
+        for(UUID sensorId : sensorIds){
+            SensorSeries sensorSeries = series.get(sensorId);
+            if(sensorSeries != null){
+                WeatherAggregate aggregate = new WeatherAggregate();
+                sensorSeries.aggregate(start, end, aggregate);
+                aggregates.put(sensorId, aggregate);
+            }
+        }
+        return aggregates;
+    }
+}
@@ -0,0 +1,86 @@
+package com.weathersensors.poc.cache;
+
+import com.weathersensors.poc.entity.Stat;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestQueryResultCache {
+
+    private static final UUID NORTH = UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f");
+    private static final UUID SOUTH = UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4268f");
+
+    private final QueryResultCache cache = new QueryResultCache(10);
+
+    @Test
+    public void givenEquivalentQueries_whenKeyed_shareAnEntry(){
+
+        QueryResultCache.Key key = QueryResultCache.Key.of(List.of(SOUTH, NORTH, NORTH), List.of("b", "a"),
+                List.of(Stat.MAX, Stat.MIN), Instant.EPOCH, Instant.MAX, null, null);
+
+        assertEquals(key, QueryResultCache.Key.of(List.of(NORTH, SOUTH), List.of("a", "b", "a"),
+                List.of(Stat.MIN, Stat.MAX), Instant.EPOCH, Instant.MAX, null, null));
+        assertNotEquals(key, QueryResultCache.Key.of(List.of(NORTH, SOUTH), List.of("a", "b"),
+                List.of(Stat.MIN), Instant.EPOCH, Instant.MAX, null, null));
+    }
+
+    @Test
+    public void givenChangeToAnotherSensor_whenGet_keepTheEntry(){
+
+        QueryResultCache.Key key = key(NORTH);
+        String etag = cache.put(key, cache.sequence(), List.of(NORTH), "north", Map.of()).etag();
+
+        cache.changed(List.of(SOUTH));
+
+        assertEquals("north", cache.<String>get(key).value());
+        assertEquals(etag, cache.get(key).etag());
+    }
+
+    @Test
+    public void givenChangeToItsSensorOrRegistry_whenGet_dropTheEntry(){
+
+        cache.put(key(NORTH), cache.sequence(), List.of(NORTH), "north", Map.of());
+        cache.put(key(SOUTH), cache.sequence(), List.of(SOUTH), "south", Map.of());
+
+        cache.changed(List.of(NORTH));
+        assertNull(cache.get(key(NORTH)));
+        assertNotNull(cache.get(key(SOUTH)));
+
+        cache.changedAll();
+        assertNull(cache.get(key(SOUTH)));
+    }
+
+    @Test
+    public void givenChangeWhileComputing_whenPut_returnWithoutCachingOrETag(){
+
+        long sequence = cache.sequence();
+        cache.changed(List.of(NORTH));
+
+        QueryResultCache.Entry<String> entry = cache.put(key(NORTH), sequence, List.of(NORTH), "stale", Map.of());
+
+        assertNull(entry.etag());
+        assertNull(cache.get(key(NORTH)));
+    }
+
+    @Test
+    public void givenNewVersion_whenRecomputed_getANewETag(){
+
+        String before = cache.put(key(NORTH), cache.sequence(), List.of(NORTH), "a", Map.of()).etag();
+        cache.changed(List.of(NORTH));
+        QueryResultCache.Entry<String> after = cache.put(key(NORTH), cache.sequence(), List.of(NORTH), "b", Map.of());
+
+        assertNotEquals(before, after.etag());
+        assertTrue(after.matches("\"x\", W/" + after.etag()));
+        assertTrue(after.matches("*"));
+        assertFalse(after.matches(before));
+    }
+
+    private static QueryResultCache.Key key(UUID id){
+        return QueryResultCache.Key.of(List.of(id), List.of(), List.of(Stat.AVERAGE), null, null, null, null);
+    }
+}
@@ -1,32 +1,68 @@
 package com.weathersensors.poc.controller;
 
+import com.weathersensors.poc.cache.QueryResultCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weathersensors.poc.entity.Metric;
+import com.weathersensors.poc.entity.MetricAggregate;
 import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
 import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.metrics.WeatherMetrics;
+import com.weathersensors.poc.service.FleetService;
 import com.weathersensors.poc.service.SensorService;
+import com.weathersensors.poc.service.SeriesService;
+import com.weathersensors.poc.service.StatsService;
+import com.weathersensors.poc.service.SubscriptionService;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(SensorController.class)
+@Import({QueryResultCache.class, SubscriptionService.class})
 public class TestSensorController {
 
     @Autowired
@@ -35,16 +71,37 @@ public class TestSensorController {
     @MockBean
     private SensorService sensorService;
 
+    @MockBean
+    private WeatherMetrics weatherMetrics;
+
+    @MockBean
+    private StatsService statsService;
+
+    @MockBean
+    private SeriesService seriesService;
+
+    @MockBean
+    private FleetService fleetService;
+
     Sensor sensor;
     WeatherReport wr1;
     WeatherReport wr2;
     List<Sensor> sensors;
     List<WeatherReport> wrs;
 
+    @Autowired
+    private QueryResultCache queryResultCache;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
 
     @BeforeEach
     public void setUp(){
 
+        // The cache outlives a test, the mocks behind it don't
+        queryResultCache.changedAll();
+
         sensor = new Sensor();
         sensor.setId(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f"));
         sensor.setTitle("Test");
@@ -71,20 +128,30 @@ public class TestSensorController {
         wr2.setReportDate(wr2Date);
 
         wrs = new ArrayList<>(List.of(wr1, wr2));
-        sensor.setWeatherReports(wrs);
+        wrs.forEach(sensor.getAggregate()::add);
 
         var sensor2 = new Sensor();
         sensor2.setId(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4268f"));
         sensor2.setTitle("Test2");
-        sensor2.setWeatherReports(wrs);
+        wrs.forEach(sensor2.getAggregate()::add);
 
         sensors = List.of(sensor, sensor2);
+
+        given(statsService.getZone()).willReturn(ZoneId.systemDefault());
+        given(seriesService.getMaxPoints()).willReturn(1000);
+        given(statsService.aggregate(anyList(), any(), any(), any(), any(), any())).willReturn(Map.of());
+        given(statsService.aggregate(anyList(), any(), any(), isNull(), isNull(), any())).willAnswer(invocation -> {
+            List<Sensor> requested = invocation.getArgument(0);
+            Map<UUID, WeatherAggregate> aggregates = new HashMap<>();
+            requested.forEach(s -> aggregates.put(s.getId(), s.getAggregate()));
+            return aggregates;
+        });
     }
 
     @Test
     public void givenSensor_whenGetSensors_returnSensorDetails() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor")
                 .contentType(MediaType.APPLICATION_JSON))
@@ -97,7 +164,7 @@ public class TestSensorController {
     @Test
     public void givenSensorWithWeatherReports_whenGetSensors_returnSensorDetailsWithAverageDefault() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -111,7 +178,7 @@ public class TestSensorController {
     @Test
     public void givenSensorWithWeatherReports_whenGetSensors_returnSensorDetailsWithStatAsMin() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MIN")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -126,7 +193,7 @@ public class TestSensorController {
     @Test
     public void givenSensorWithWeatherReports_whenGetSensors_returnSensorDetailsWithStatAsMax() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MAX")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -141,7 +208,7 @@ public class TestSensorController {
     @Test
     public void givenSensorWithWeatherReports_whenGetSensors_returnSensorDetailsWithStatAsSum() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=SUM")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -152,10 +219,50 @@ public class TestSensorController {
 
     }
 
+    @Test
+    public void givenSensorWithWeatherReports_whenGetSensorsWithSeveralStats_returnEveryStat() throws Exception {
+
+        givenStoredSensors(sensors);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MIN,MAX,AVERAGE")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].minTemp", is(10)))
+                .andExpect(jsonPath("$[0].maxTemp", is(20)))
+                .andExpect(jsonPath("$[0].averageTemp", is(15.0)))
+                .andExpect(jsonPath("$[0].tempSum").doesNotExist());
+    }
+
+    @Test
+    public void givenSumLargerThanInt_whenGetSensorsWithStatAsSum_returnSumWithoutOverflow() throws Exception {
+
+        sensor.getAggregate().setTemperature(MetricAggregate.of(20_000_000L, 4_000_000_000L, 200, 200));
+        givenStoredSensors(sensors);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test&stat=SUM")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].tempSum", is(4_000_000_000L)));
+    }
+
+    @Test
+    public void givenSensorWithRunningAggregate_whenGetSensors_returnStatsWithoutReadingReports() throws Exception {
+
+        sensor.setWeatherReports(new ArrayList<>());
+        givenStoredSensors(sensors);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test&stat=MAX")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].maxTemp", is(20)))
+                .andExpect(jsonPath("$[0].maxHumidity", is(40)))
+                .andExpect(jsonPath("$[0].maxWindSpeed", is(30)));
+    }
+
     @Test
     public void givenSensor_whenGetSensorWithIncorrectTitle_returnNoSensors() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?title=NOTAVALIDTILE")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -166,7 +273,7 @@ public class TestSensorController {
     @Test
     public void givenSensor_whenGetSensorsWithValidTitle_returnSensorDetails() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -179,7 +286,7 @@ public class TestSensorController {
     @Test
     public void givenSensor_whenGetSensorsWith2ValidTitles_returnSensorDetails() throws Exception {
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test,Test2")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -193,7 +300,7 @@ public class TestSensorController {
     public void givenSensor_whenGetSensorsWithDateRange_returnSensorWithNoWeatherReports() throws Exception {
 
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test,Test2&startDate=2018-10-02&endDate=2018-10-03")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -206,7 +313,11 @@ public class TestSensorController {
     public void givenSensor_whenGetSensorsWithDateRange_returnSensorWithOneWeatherReports() throws Exception {
 
 
-        given(sensorService.findAllSensors()).willReturn(sensors);
+        givenStoredSensors(sensors);
+        given(statsService.aggregate(eq(sensors), eq(List.of()), eq(List.of("Test", "Test2")),
+                eq(LocalDate.of(2023, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant()),
+                eq(LocalDate.of(2023, 1, 6).atStartOfDay(ZoneId.systemDefault()).toInstant()), any()))
+                .willReturn(Map.of(sensor.getId(), WeatherAggregate.of(List.of(wr1))));
 
         mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test,Test2&startDate=2023-01-01&endDate=2023-01-05")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -216,6 +327,136 @@ public class TestSensorController {
                 .andExpect(jsonPath("$[0].averageTemp", is(10.0)));
     }
 
+    @Test
+    public void givenZone_whenGetSensorsWithDateRange_returnDaysInThatZone() throws Exception {
+
+        givenStoredSensors(sensors);
+        given(statsService.aggregate(eq(sensors), eq(List.of()), eq(List.of("Test", "Test2")),
+                eq(Instant.parse("2023-01-01T00:00:00Z")), eq(Instant.parse("2023-01-06T00:00:00Z")), any()))
+                .willReturn(Map.of(sensor.getId(), WeatherAggregate.of(List.of(wr1))));
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test,Test2&startDate=2023-01-01&endDate=2023-01-05&zone=UTC")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].averageTemp", is(10.0)));
+    }
+
+    @Test
+    public void givenUnknownZone_whenGetSensors_returnBadRequest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?startDate=2023-01-01&endDate=2023-01-05&zone=Mars/Olympus")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("Unknown time zone Mars/Olympus")));
+    }
+
+    @Test
+    public void givenHalfHourZoneBeforeRetentionCutoff_whenGetSensors_returnBadRequest() throws Exception {
+
+        willThrow(new IllegalArgumentException("Raw readings before 2023-02-01T00:00:00Z have been deleted"))
+                .given(statsService).checkRange(Instant.parse("2022-12-31T18:30:00Z"), Instant.parse("2023-01-05T18:30:00Z"));
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?startDate=2023-01-01&endDate=2023-01-05&zone=Asia/Kolkata")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("Raw readings before 2023-02-01T00:00:00Z have been deleted")));
+        mvc.perform(MockMvcRequestBuilders.get("/sensor/fleet?startDate=2023-01-01&endDate=2023-01-05&zone=Asia/Kolkata"))
+                .andExpect(status().isBadRequest());
+        verify(statsService, never()).aggregate(any(), any(), any(), any(), any(), any());
+        verify(fleetService, never()).aggregate(any(), any(), any(), any());
+    }
+
+    @Test
+    public void givenSensors_whenGetSensorsWithPercentiles_returnPercentilesPerMetric() throws Exception {
+
+        givenStoredSensors(sensors);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test&stat=P50,P99")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].p50Temp", is(10)))
+                .andExpect(jsonPath("$[0].p99Temp", is(20)))
+                .andExpect(jsonPath("$[0].p90Temp").doesNotExist())
+                .andExpect(jsonPath("$[0].averageTemp").doesNotExist());
+    }
+
+    @Test
+    public void givenTitlePrefix_whenGetFleet_combineMatchingSensors() throws Exception {
+
+        WeatherAggregate combined = WeatherAggregate.of(List.of(wr1, wr2));
+        given(sensorService.findByTitlePrefix("Te")).willReturn(sensors);
+        given(fleetService.aggregate(eq(sensors), isNull(), isNull(), eq(List.of(Stat.AVERAGE, Stat.MAX))))
+                .willReturn(combined);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor/fleet?titlePrefix=Te&stat=AVERAGE,MAX")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.titlePrefix", is("Te")))
+                .andExpect(jsonPath("$.sensorCount", is(2)))
+                .andExpect(jsonPath("$.averageTemp", is(15.0)))
+                .andExpect(jsonPath("$.maxTemp", is(20)))
+                .andExpect(jsonPath("$.id").doesNotExist());
+    }
+
+    @Test
+    public void givenReadings_whenGetSeries_returnOnePointPerBucketWithReadings() throws Exception {
+
+        MetricAggregate first = new MetricAggregate();
+        first.add(10);
+        first.add(20);
+        MetricAggregate third = new MetricAggregate();
+        third.add(5);
+        given(sensorService.findById(sensor.getId())).willReturn(Optional.of(sensor));
+        given(seriesService.series(sensor.getId(), Metric.TEMPERATURE, Instant.parse("2023-01-01T00:00:00Z"),
+                Instant.parse("2023-01-01T03:00:00Z"), Duration.ofHours(1)))
+                .willReturn(new MetricAggregate[]{first, null, third});
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor/" + sensor.getId() + "/series?metric=TEMPERATURE&bucket=1h"
+                                + "&from=2023-01-01T00:00:00Z&to=2023-01-01T03:00:00Z")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucket", is("1h")))
+                .andExpect(jsonPath("$.points.length()", is(2)))
+                .andExpect(jsonPath("$.points[0].start", is("2023-01-01T00:00:00Z")))
+                .andExpect(jsonPath("$.points[0].value", is(15.0)))
+                .andExpect(jsonPath("$.points[0].count", is(2)))
+                .andExpect(jsonPath("$.points[1].start", is("2023-01-01T02:00:00Z")));
+    }
+
+    @Test
+    public void givenRangeWithTooManyBuckets_whenGetSeries_widenBucket() throws Exception {
+
+        given(sensorService.findById(sensor.getId())).willReturn(Optional.of(sensor));
+        given(seriesService.series(any(), any(), any(), any(), any())).willReturn(new MetricAggregate[0]);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor/" + sensor.getId() + "/series?metric=HUMIDITY&bucket=1h&maxPoints=10"
+                                + "&from=2023-01-01T00:00:00Z&to=2023-01-02T00:00:00Z")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucket", is("3h")));
+    }
+
+    @Test
+    public void givenUnknownSensor_whenGetSeries_returnNotFound() throws Exception {
+
+        given(sensorService.findById(any())).willReturn(Optional.empty());
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor/" + sensor.getId() + "/series?metric=TEMPERATURE"
+                                + "&from=2023-01-01T00:00:00Z&to=2023-01-02T00:00:00Z")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void givenInvalidBucket_whenGetSeries_returnBadRequest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor/" + sensor.getId() + "/series?metric=TEMPERATURE&bucket=1w"
+                                + "&from=2023-01-01T00:00:00Z&to=2023-01-02T00:00:00Z")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("bucket must be a positive number followed by s, m, h or d")));
+    }
+
     @Test
     public void givenValidSensor_whenPostSensor_returnSensorCreated() throws Exception {
 
@@ -230,6 +471,182 @@ public class TestSensorController {
                 .andExpect(jsonPath("$.title", is("Test")));
     }
 
+    @Test
+    public void givenLimit_whenGetSensors_returnPageWithNextLink() throws Exception {
+
+        given(sensorService.findPage(null, 1)).willReturn(List.of(sensor));
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?limit=1&stat=SUM"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].tempSum", is(30)))
+                .andExpect(header().string("Link",
+                        "<http://localhost/sensor?limit=1&stat=SUM&after=41d4bbbf-ea25-46fb-8d18-614053f4267f>; rel=\"next\""));
+    }
+
+    @Test
+    public void givenAfterCursor_whenGetSensorsReachesEnd_returnNoNextLink() throws Exception {
+
+        given(sensorService.findPage(sensor.getId(), 2)).willReturn(List.of(sensors.get(1)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?limit=2&after=41d4bbbf-ea25-46fb-8d18-614053f4267f"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].title", is("Test2")))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    public void givenTitleFilterAndAfterCursor_whenGetSensors_pageFilteredSensors() throws Exception {
+
+        givenStoredSensors(sensors);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test,Test2&limit=5&after=41d4bbbf-ea25-46fb-8d18-614053f4267f"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].title", is("Test2")));
+    }
+
+    @Test
+    public void givenLimitOutOfRange_whenGetSensors_returnBadRequest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?limit=0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("limit must be between 1 and 1000")));
+    }
+
+    @Test
+    public void givenNdjsonAccept_whenGetSensors_streamOneSensorPerLine() throws Exception {
+
+        willAnswer(invocation -> {
+            Consumer<List<Sensor>> consumer = invocation.getArgument(1);
+            consumer.accept(sensors);
+            return null;
+        }).given(sensorService).forEachChunk(anyInt(), any());
+
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MAX")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"title\":\"Test\"") && lines[0].contains("\"maxTemp\":20"));
+        assertTrue(lines[1].contains("\"title\":\"Test2\""));
+    }
+
+    @Test
+    public void givenTitleFilter_whenGetSensors_loadOnlyMatchingSensors() throws Exception {
+
+        givenStoredSensors(sensors);
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test2")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", Matchers.hasSize(1)));
+
+        verify(sensorService).findSensors(List.of(), List.of("Test2"));
+    }
+
+    @Test
+    public void givenRepeatedQuery_whenGetSensors_answerFromCacheAndNotModifiedForItsETag() throws Exception {
+
+        givenStoredSensors(sensors);
+
+        String etag = mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MIN,MAX&title=Test2&title=Test"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MAX,MIN&title=Test&title=Test2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(jsonPath("$[0].minTemp", is(10)));
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?stat=MIN,MAX&title=Test&title=Test2")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(sensorService, times(1)).findSensors(any(), any());
+    }
+
+    @Test
+    public void givenIngestForQueriedSensor_whenGetSensors_recomputeWithNewETag() throws Exception {
+
+        givenStoredSensors(sensors);
+        String etag = mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        queryResultCache.changed(List.of(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4268f")));
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        queryResultCache.changed(List.of(sensor.getId()));
+        mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].averageTemp", is(15.0)));
+
+        verify(sensorService, times(2)).findSensors(any(), any());
+    }
+
+    @Test
+    public void givenSubscription_whenSensorChanged_pushCoalescedUpdateOnPublish() throws Exception {
+
+        givenStoredSensors(sensors);
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/sensor?title=Test&stat=MAX")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals("event:sensors\ndata:[{\"id\":\"41d4bbbf-ea25-46fb-8d18-614053f4267f\",\"title\":\"Test\","
+                + "\"maxTemp\":20,\"maxHumidity\":40,\"maxWindSpeed\":30}]\n\n", result.getResponse().getContentAsString());
+
+        subscriptionService.changed(List.of(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4268f")));
+        subscriptionService.publish();
+        sensor.getAggregate().add(new WeatherReport.Builder(sensor).withTemperature(35).build());
+        subscriptionService.changed(List.of(sensor.getId()));
+        subscriptionService.changed(List.of(sensor.getId()));
+        subscriptionService.publish();
+
+        String body = awaitEvents(result, 2);
+        assertTrue(body.endsWith("event:sensors\ndata:[{\"id\":\"41d4bbbf-ea25-46fb-8d18-614053f4267f\",\"title\":\"Test\","
+                + "\"maxTemp\":35,\"maxHumidity\":40,\"maxWindSpeed\":30}]\n\n"));
+    }
+
+    @Test
+    public void givenNoFilter_whenSubscribe_returnError() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.get("/sensor").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.error.message", is("A subscription needs an id or title")));
+    }
+
+    // Updates are written by the subscription's sender threads
+    private static String awaitEvents(MvcResult result, int events) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        String body = result.getResponse().getContentAsString();
+        while(body.split("event:").length - 1 < events && System.nanoTime() < deadline){
+            Thread.sleep(10);
+            body = result.getResponse().getContentAsString();
+        }
+        assertEquals(events, body.split("event:").length - 1);
+        return body;
+    }
+
+    // Stands in for the repository lookups, which match sensors against both filters
+    private void givenStoredSensors(List<Sensor> stored){
+        given(sensorService.findSensors(any(), any())).willAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            Collection<String> titles = invocation.getArgument(1);
+            return stored.stream()
+                    .filter(s -> ids.isEmpty() || ids.contains(s.getId()))
+                    .filter(s -> titles.isEmpty() || titles.contains(s.getTitle()))
+                    .toList();
+        });
+    }
+
     @Test
     public void givenSensor_whenPostSensorWithEmptyTitle_returnError() throws Exception {
 
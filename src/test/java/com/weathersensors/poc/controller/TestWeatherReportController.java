@@ -1,11 +1,20 @@
 package com.weathersensors.poc.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weathersensors.poc.entity.InvalidWeatherReportException;
 import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.dto.BatchItemResultDTO;
+import com.weathersensors.poc.dto.WeatherReportBatchItem;
+import com.weathersensors.poc.dto.WeatherReportCodec;
+import com.weathersensors.poc.entity.WeatherReading;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.service.IngestService;
+import com.weathersensors.poc.metrics.WeatherMetrics;
 import com.weathersensors.poc.service.SensorService;
-import com.weathersensors.poc.service.WeatherReportService;
+import com.weathersensors.poc.service.WriteBehindQueue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -13,12 +22,24 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -30,12 +51,20 @@ public class TestWeatherReportController {
     private MockMvc mvc;
 
     @MockBean
-    private WeatherReportService weatherReportService;
+    private SensorService sensorService;
 
     @MockBean
-    private SensorService sensorService;
+    private WeatherMetrics weatherMetrics;
+
+    @MockBean
+    private IngestService ingestService;
+
+    @MockBean
+    private WriteBehindQueue writeBehindQueue;
 
 
+    private static final String REPORT_ID = "9b1deb4d-3b7d-4bad-9bdd-2b0d7b3dcb6d";
+
     Optional<Sensor> sensorOptional;
 
     @BeforeEach
@@ -46,6 +75,10 @@ public class TestWeatherReportController {
         sensor.setTitle("Test");
         sensor.setWeatherReports(new ArrayList<>());
         sensorOptional = Optional.of(sensor);
+        willAnswer(invocation -> {
+            invocation.getArgument(0, WeatherReport.class).setId(UUID.fromString(REPORT_ID));
+            return null;
+        }).given(ingestService).ingest(any());
     }
 
     @Test
@@ -59,8 +92,8 @@ public class TestWeatherReportController {
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"temperature\":10}"))
                 .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.sensor.title", is("Test")))
-                .andExpect(jsonPath("$.temperature", is(10)));
+                .andExpect(jsonPath("$.id", is(REPORT_ID)))
+                .andExpect(jsonPath("$.sensor").doesNotExist());
 
 
     }
@@ -76,10 +109,10 @@ public class TestWeatherReportController {
                                 "\"humidity\":10," +
                                 "\"windSpeed\":10}"))
                 .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.sensor.title", is("Test")))
-                .andExpect(jsonPath("$.temperature", is(10)))
-                .andExpect(jsonPath("$.humidity", is(10)))
-                .andExpect(jsonPath("$.windSpeed", is(10)));
+                .andExpect(jsonPath("$.id", is(REPORT_ID)))
+                .andExpect(jsonPath("$.reportDate").exists())
+                .andExpect(jsonPath("$.sensor").doesNotExist())
+                .andExpect(jsonPath("$.temperature").doesNotExist());
 
     }
 
@@ -157,8 +190,7 @@ public class TestWeatherReportController {
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"temperature\":10}"))
                 .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.sensor.title", is("Test")))
-                .andExpect(jsonPath("$.temperature", is(10)));
+                .andExpect(jsonPath("$.id", is(REPORT_ID)));
 
 
     }
@@ -176,4 +208,219 @@ public class TestWeatherReportController {
                 .andExpect(jsonPath("$.error.message",
                         is("Sensor with title INVALID not found")));
     }
+
+    @Test
+    public void givenInvalidWeatherReport_whenPostWeatherReport_countRejectionReason() throws Exception {
+
+        given(sensorService.findByTitle("Test")).willReturn(sensorOptional);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"temperature\":5000}"))
+                .andExpect(status().isBadRequest());
+
+        verify(weatherMetrics).rejected(InvalidWeatherReportException.Reason.TEMPERATURE_OUT_OF_RANGE);
+        verify(sensorService, never()).findByTitle(any());
+    }
+
+    @Test
+    public void givenAsyncMode_whenPostWeatherReport_returnAcceptedWithoutIngesting() throws Exception {
+
+        given(sensorService.findByTitle("Test")).willReturn(sensorOptional);
+        given(writeBehindQueue.isEnabled()).willReturn(true);
+        given(writeBehindQueue.offer(any())).willReturn(true);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"temperature\":10}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").doesNotExist());
+
+        verify(ingestService, never()).ingest(any());
+    }
+
+    @Test
+    public void givenFullQueue_whenPostWeatherReport_returnServiceUnavailable() throws Exception {
+
+        given(sensorService.findByTitle("Test")).willReturn(sensorOptional);
+        given(writeBehindQueue.isEnabled()).willReturn(true);
+        given(writeBehindQueue.offer(any())).willReturn(false);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"temperature\":10}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    public void givenJsonArray_whenPostWeatherReports_returnResultPerItem() throws Exception {
+
+        given(ingestService.ingestBatch(anyList(), eq("title"))).willReturn(List.of(
+                BatchItemResultDTO.created(0, "41d4bbbf-ea25-46fb-8d18-614053f4267f"),
+                BatchItemResultDTO.rejected(1, "Humidity must be between 0 and 100%")));
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"sensor\":\"Test\",\"temperature\":10}," +
+                                "{\"sensor\":\"Test\",\"humidity\":5000}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is(201)))
+                .andExpect(jsonPath("$[1].status", is(400)))
+                .andExpect(jsonPath("$[1].error.message", is("Humidity must be between 0 and 100%")));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<WeatherReportBatchItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(ingestService).ingestBatch(items.capture(), eq("title"));
+        assertEquals(2, items.getValue().size());
+        assertEquals(5000, items.getValue().get(1).getHumidity());
+    }
+
+    @Test
+    public void givenNdjson_whenPostWeatherReports_parseEveryLine() throws Exception {
+
+        given(ingestService.ingestBatch(anyList(), eq("id"))).willReturn(List.of());
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather?identifier=id")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"sensor\":\"41d4bbbf-ea25-46fb-8d18-614053f4267f\",\"temperature\":10}\n" +
+                                "{\"sensor\":\"41d4bbbf-ea25-46fb-8d18-614053f4267f\",\"windSpeed\":20}\n" +
+                                "{\"sensor\":\"41d4bbbf-ea25-46fb-8d18-614053f4267f\",\"humidity\":30}\n"))
+                .andExpect(status().isOk());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<WeatherReportBatchItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(ingestService).ingestBatch(items.capture(), eq("id"));
+        assertEquals(3, items.getValue().size());
+        assertEquals(20, items.getValue().get(1).getWindSpeed());
+    }
+
+    @Test
+    public void givenMalformedBatch_whenPostWeatherReports_returnBadRequest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"sensor\":\"Test\",\"temperature\":"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message",
+                        is("Batch must be a JSON array or newline delimited JSON of weather reports")));
+    }
+
+    @Test
+    public void givenBinaryReport_whenPostWeatherReport_storeTheSameReportAsJson() throws Exception {
+
+        given(sensorService.findByTitle("Test")).willReturn(sensorOptional);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        new WeatherReportCodec.Writer(binary).write(null, new Date(1_700_000_000_000L), -20, 55, null);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"reportDate\":1700000000000,\"temperature\":-20,\"humidity\":55}"))
+                .andExpect(status().isCreated());
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(WeatherReportCodec.MEDIA_TYPE)
+                        .content(binary.toByteArray()))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id", is(REPORT_ID)));
+
+        ArgumentCaptor<WeatherReport> stored = ArgumentCaptor.forClass(WeatherReport.class);
+        verify(ingestService, times(2)).ingest(stored.capture());
+        WeatherReport json = stored.getAllValues().get(0);
+        WeatherReport decoded = stored.getAllValues().get(1);
+        assertEquals(json.getReportDate(), decoded.getReportDate());
+        assertEquals(json.getTemperature(), decoded.getTemperature());
+        assertEquals(json.getHumidity(), decoded.getHumidity());
+        assertEquals(json.getWindSpeed(), decoded.getWindSpeed());
+        assertEquals(new Date(1_700_000_000_000L), decoded.getReportDate());
+    }
+
+    @Test
+    public void givenBinaryReportWithSensorOrTrailingBytes_whenPostWeatherReport_returnBadRequest() throws Exception {
+
+        ByteArrayOutputStream withSensor = new ByteArrayOutputStream();
+        new WeatherReportCodec.Writer(withSensor).write(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f"),
+                null, 10, null, null);
+        ByteArrayOutputStream twoRecords = new ByteArrayOutputStream();
+        WeatherReportCodec.Writer writer = new WeatherReportCodec.Writer(twoRecords);
+        writer.write(null, null, 10, null, null);
+        writer.write(null, null, 20, null, null);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(WeatherReportCodec.MEDIA_TYPE)
+                        .content(withSensor.toByteArray()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message",
+                        is("The sensor is given by the path, the weather report must not carry a sensor id")));
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(WeatherReportCodec.MEDIA_TYPE)
+                        .content(twoRecords.toByteArray()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("Body must be exactly one binary weather report")));
+        verify(ingestService, never()).ingest(any());
+    }
+
+    @Test
+    public void givenFutureReportDate_whenPostWeatherReport_returnBadRequest() throws Exception {
+
+        given(sensorService.findByTitle("Test")).willReturn(sensorOptional);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather/Test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"reportDate\":" + (System.currentTimeMillis() + 3_600_000) + ",\"temperature\":10}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("Report date must not be in the future")));
+
+        verify(weatherMetrics).rejected(InvalidWeatherReportException.Reason.REPORT_DATE_IN_FUTURE);
+    }
+
+    @Test
+    public void givenBinaryBatch_whenPostWeatherReports_passTheSameItemsAsJson() throws Exception {
+
+        given(ingestService.ingestBatch(anyList(), eq("id"))).willReturn(List.of());
+        String id = "41d4bbbf-ea25-46fb-8d18-614053f4267f";
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        WeatherReportCodec.Writer writer = new WeatherReportCodec.Writer(binary);
+        writer.write(UUID.fromString(id), new Date(1_700_000_000_000L), 10, null, null);
+        writer.write(UUID.fromString(id), new Date(1_700_000_060_000L), null, 40, 12);
+        writer.write(UUID.fromString(id), null, null, null, 5000);
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather?identifier=id")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"sensor\":\"" + id + "\",\"reportDate\":1700000000000,\"temperature\":10}," +
+                                "{\"sensor\":\"" + id + "\",\"reportDate\":1700000060000,\"humidity\":40,\"windSpeed\":12}," +
+                                "{\"sensor\":\"" + id + "\",\"windSpeed\":5000}]"))
+                .andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.post("/weather")
+                        .contentType(WeatherReportCodec.MEDIA_TYPE)
+                        .content(binary.toByteArray()))
+                .andExpect(status().isOk());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<WeatherReportBatchItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(ingestService, times(2)).ingestBatch(items.capture(), eq("id"));
+        List<WeatherReportBatchItem> json = items.getAllValues().get(0);
+        List<WeatherReportBatchItem> decoded = items.getAllValues().get(1);
+        assertEquals(3, decoded.size());
+        for(int i = 0; i < json.size(); i++){
+            assertEquals(json.get(i).getSensor(), decoded.get(i).getSensor());
+            for(int flag : new int[]{WeatherReading.TEMPERATURE, WeatherReading.HUMIDITY, WeatherReading.WIND_SPEED,
+                    WeatherReading.REPORT_DATE}){
+                assertEquals(json.get(i).has(flag), decoded.get(i).has(flag));
+            }
+            assertEquals(json.get(i).getReportDate(), decoded.get(i).getReportDate());
+            assertEquals(json.get(i).getTemperature(), decoded.get(i).getTemperature());
+            assertEquals(json.get(i).getHumidity(), decoded.get(i).getHumidity());
+            assertEquals(json.get(i).getWindSpeed(), decoded.get(i).getWindSpeed());
+        }
+    }
+
+    @Test
+    public void givenTruncatedBinaryBatch_whenPostWeatherReports_returnBadRequest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.post("/weather")
+                        .contentType(WeatherReportCodec.MEDIA_TYPE)
+                        .content(new byte[]{WeatherReportCodec.SENSOR_ID | WeatherReportCodec.TEMPERATURE, 1, 2}))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error.message", is("Batch must be a sequence of binary weather reports")));
+    }
 }
@@ -0,0 +1,127 @@
+package com.weathersensors.poc.dto;
+
+import com.weathersensors.poc.entity.WeatherReading;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestWeatherReportCodec {
+
+    private static final UUID SENSOR = UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f");
+
+    @Test
+    public void givenRecords_whenRoundTripped_decodeTheSameFields() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WeatherReportCodec.Writer writer = new WeatherReportCodec.Writer(bytes);
+        writer.write(SENSOR, new Date(1_700_000_000_000L), -150, 0, 250);
+        writer.write(null, new Date(1_699_999_999_000L), null, 100, null);
+        writer.write(SENSOR, null, Integer.MIN_VALUE, null, Integer.MAX_VALUE);
+        writer.write(null, null, 72, null, null);
+
+        List<WeatherReportBatchItem> items = readAll(bytes.toByteArray());
+
+        assertEquals(4, items.size());
+        assertItem(items.get(0), SENSOR.toString(), 1_700_000_000_000L, -150, 0, 250);
+        assertItem(items.get(1), null, 1_699_999_999_000L, null, 100, null);
+        assertItem(items.get(2), SENSOR.toString(), null, Integer.MIN_VALUE, null, Integer.MAX_VALUE);
+        assertItem(items.get(3), null, null, 72, null, null);
+    }
+
+    @Test
+    public void givenTemperatureOnly_whenEncoded_takeTwoBytes() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new WeatherReportCodec.Writer(bytes).write(null, null, 50, null, null);
+
+        assertArrayEquals(new byte[]{WeatherReportCodec.TEMPERATURE, 100}, bytes.toByteArray());
+    }
+
+    @Test
+    public void givenReader_whenNext_exposePrimitives() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new WeatherReportCodec.Writer(bytes).write(SENSOR, new Date(5000L), 10, null, 30);
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertTrue(reader.next());
+        assertEquals(SENSOR, reader.sensorId());
+        assertEquals(5000L, reader.reportDate());
+        assertEquals(10, reader.temperature());
+        assertFalse(reader.has(WeatherReportCodec.HUMIDITY));
+        assertEquals(30, reader.windSpeed());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void givenBodyArrivingInSmallReads_whenRead_decodeRecordsAcrossEveryRead() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WeatherReportCodec.Writer writer = new WeatherReportCodec.Writer(bytes);
+        for(int i = 0; i < 100; i++){
+            writer.write(SENSOR, new Date(1_700_000_000_000L + i * 60_000L), i, null, null);
+        }
+        InputStream trickle = new ByteArrayInputStream(bytes.toByteArray()){
+            @Override
+            public synchronized int read(byte[] b, int off, int len){
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(trickle);
+        for(int i = 0; i < 100; i++){
+            assertTrue(reader.next());
+            assertEquals(SENSOR, reader.sensorId());
+            assertEquals(1_700_000_000_000L + i * 60_000L, reader.reportDate());
+            assertEquals(i, reader.temperature());
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void givenTruncatedRecord_whenRead_thenFail() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new WeatherReportCodec.Writer(bytes).write(SENSOR, null, 10, null, null);
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), 10);
+
+        assertThrows(IOException.class, () -> readAll(truncated));
+    }
+
+    @Test
+    public void givenUnknownFlagsOrOverlongVarint_whenRead_thenFail(){
+
+        assertThrows(IOException.class, () -> readAll(new byte[]{(byte) 0x20}));
+        assertThrows(IOException.class, () -> readAll(new byte[]{WeatherReportCodec.TEMPERATURE,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01}));
+    }
+
+    private static List<WeatherReportBatchItem> readAll(byte[] bytes) throws IOException {
+        WeatherReportCodec.Reader reader = new WeatherReportCodec.Reader(new ByteArrayInputStream(bytes));
+        List<WeatherReportBatchItem> items = new ArrayList<>();
+        while(reader.next()){
+            items.add(reader.item());
+        }
+        return items;
+    }
+
+    private static void assertItem(WeatherReportBatchItem item, String sensor, Long reportDate,
+                                   Integer temperature, Integer humidity, Integer windSpeed){
+        assertEquals(sensor, item.getSensor());
+        assertEquals(reportDate, item.has(WeatherReading.REPORT_DATE) ? item.getReportDate() : null);
+        assertEquals(temperature, item.has(WeatherReading.TEMPERATURE) ? item.getTemperature() : null);
+        assertEquals(humidity, item.has(WeatherReading.HUMIDITY) ? item.getHumidity() : null);
+        assertEquals(windSpeed, item.has(WeatherReading.WIND_SPEED) ? item.getWindSpeed() : null);
+    }
+}
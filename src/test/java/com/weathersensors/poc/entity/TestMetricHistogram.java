@@ -0,0 +1,102 @@
+package com.weathersensors.poc.entity;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMetricHistogram {
+
+    @Test
+    public void givenOneToHundred_whenPercentile_returnNearestRank(){
+
+        MetricHistogram histogram = new MetricHistogram();
+        for(int value = 100; value >= 1; value--){
+            histogram.add(value);
+        }
+
+        assertEquals(100, histogram.getTotal());
+        assertEquals(50, histogram.percentile(50));
+        assertEquals(90, histogram.percentile(90));
+        assertEquals(99, histogram.percentile(99));
+        assertEquals(100, histogram.percentile(100));
+        assertNull(new MetricHistogram().percentile(50));
+    }
+
+    @Test
+    public void givenHistogramsOverDifferentRanges_whenMerge_addCounts(){
+
+        MetricHistogram cold = new MetricHistogram();
+        cold.add(-150, 3);
+        cold.add(-10);
+        MetricHistogram hot = new MetricHistogram();
+        hot.add(180, 6);
+
+        cold.merge(hot);
+
+        assertEquals(10, cold.getTotal());
+        assertEquals(-150, cold.percentile(30));
+        assertEquals(-10, cold.percentile(40));
+        assertEquals(180, cold.percentile(41));
+    }
+
+    @Test
+    public void givenHistogram_whenToBytes_roundTripCounts(){
+
+        MetricHistogram histogram = new MetricHistogram();
+        histogram.add(-150);
+        histogram.add(0, 1_000_000_000_000L);
+        histogram.add(200, 2);
+
+        MetricHistogram decoded = MetricHistogram.fromBytes(histogram.toBytes());
+
+        assertEquals(histogram.getTotal(), decoded.getTotal());
+        assertEquals(-150, decoded.percentile(0));
+        assertEquals(0, decoded.percentile(50));
+        assertEquals(200, decoded.percentile(100));
+        assertEquals(0, MetricHistogram.fromBytes(new byte[0]).getTotal());
+    }
+
+    @Test
+    public void givenEveryValueOfARange_whenToBytes_roundTripCounts(){
+
+        MetricHistogram histogram = new MetricHistogram();
+        for(int value = -20; value <= 110; value++){
+            histogram.add(value, value + 21);
+        }
+
+        MetricHistogram decoded = MetricHistogram.fromBytes(histogram.toBytes());
+
+        assertEquals(histogram, decoded);
+        assertEquals(-20, decoded.percentile(0));
+        assertEquals(110, decoded.percentile(100));
+    }
+
+    @Test
+    public void givenSameCounts_whenEquals_ignoreRangeTheArraysGrewTo(){
+
+        MetricHistogram histogram = new MetricHistogram();
+        histogram.add(-20);
+        histogram.add(40);
+        MetricHistogram merged = new MetricHistogram();
+        merged.add(-100, 0);
+        merged.add(40);
+        merged.add(-20);
+
+        assertEquals(histogram, merged);
+        assertEquals(histogram, MetricHistogram.fromBytes(histogram.toBytes()));
+        merged.add(40);
+        assertNotEquals(histogram, merged);
+    }
+
+    @Test
+    public void givenAggregateWithoutHistogram_whenPercentile_returnNull(){
+
+        MetricAggregate withHistogram = new MetricAggregate();
+        withHistogram.add(10);
+        MetricAggregate fromGroupBy = MetricAggregate.of(2L, 40L, 15, 25);
+
+        assertEquals(10, withHistogram.percentile(50));
+        withHistogram.merge(fromGroupBy);
+        assertNull(withHistogram.percentile(50));
+    }
+}
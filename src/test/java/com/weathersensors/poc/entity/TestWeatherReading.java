@@ -0,0 +1,64 @@
+package com.weathersensors.poc.entity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestWeatherReading {
+
+    @Test
+    public void givenJson_whenBound_onlyNonNullValuesArePresent() throws Exception {
+
+        WeatherReading reading = new ObjectMapper().readValue(
+                "{\"temperature\":-20,\"humidity\":null,\"windSpeed\":0,\"reportDate\":1700000000000}", WeatherReading.class);
+
+        assertTrue(reading.has(WeatherReading.TEMPERATURE));
+        assertFalse(reading.has(WeatherReading.HUMIDITY));
+        assertTrue(reading.has(WeatherReading.WIND_SPEED));
+        assertEquals(-20, reading.getTemperature());
+        assertEquals(0, reading.getWindSpeed());
+        assertEquals(1_700_000_000_000L, reading.getReportDate());
+        assertNull(reading.validate());
+    }
+
+    @Test
+    public void givenInvalidValues_whenValidated_returnTheSameReasonsAsTheBuilder(){
+
+        assertEquals(InvalidWeatherReportException.Reason.NO_METRICS, new WeatherReading().validate());
+        assertEquals(InvalidWeatherReportException.Reason.TEMPERATURE_OUT_OF_RANGE, reading(201, null, null).validate());
+        assertEquals(InvalidWeatherReportException.Reason.HUMIDITY_OUT_OF_RANGE, reading(null, -1, null).validate());
+        assertEquals(InvalidWeatherReportException.Reason.WIND_SPEED_OUT_OF_RANGE, reading(null, null, 251).validate());
+
+        WeatherReading future = reading(10, null, null);
+        future.setReportDate(System.currentTimeMillis() + 3_600_000);
+        assertEquals(InvalidWeatherReportException.Reason.REPORT_DATE_IN_FUTURE, future.validate());
+    }
+
+    @Test
+    public void givenValidReading_whenConverted_keepAbsentMetricsNull(){
+
+        Sensor sensor = new Sensor();
+        sensor.setId(UUID.randomUUID());
+        WeatherReading reading = reading(150, null, 250);
+        reading.setReportDate(1_700_000_000_000L);
+
+        WeatherReport weatherReport = reading.toWeatherReport(sensor);
+
+        assertSame(sensor, weatherReport.getSensor());
+        assertEquals(150, weatherReport.getTemperature());
+        assertNull(weatherReport.getHumidity());
+        assertEquals(250, weatherReport.getWindSpeed());
+        assertEquals(1_700_000_000_000L, weatherReport.getReportDate().getTime());
+    }
+
+    private static WeatherReading reading(Integer temperature, Integer humidity, Integer windSpeed){
+        WeatherReading reading = new WeatherReading();
+        reading.setTemperature(temperature);
+        reading.setHumidity(humidity);
+        reading.setWindSpeed(windSpeed);
+        return reading;
+    }
+}
@@ -0,0 +1,45 @@
+package com.weathersensors.poc.metrics;
+
+import com.weathersensors.poc.entity.InvalidWeatherReportException;
+import com.weathersensors.poc.entity.Stat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestWeatherMetrics {
+
+    private SimpleMeterRegistry registry;
+    private WeatherMetrics weatherMetrics;
+
+    @BeforeEach
+    public void setUp(){
+        registry = new SimpleMeterRegistry();
+        weatherMetrics = new WeatherMetrics(registry);
+    }
+
+    @Test
+    public void givenStatsInAnyOrder_whenQuery_recordUnderOneTag(){
+
+        weatherMetrics.query(List.of(Stat.MAX, Stat.MIN), true, 1_000_000, 2, 10);
+        weatherMetrics.query(List.of(Stat.MIN, Stat.MAX, Stat.MIN), true, 3_000_000, 1, 5);
+
+        assertEquals(2, registry.get("weather.query").tag("stat", "MIN,MAX").tag("range", "true").timer().count());
+        assertEquals(15, registry.get("weather.query.readings").summary().totalAmount());
+        assertEquals(3, registry.get("weather.query.sensors").summary().totalAmount());
+    }
+
+    @Test
+    public void givenRejections_whenCounted_tagByReason(){
+
+        weatherMetrics.rejected(InvalidWeatherReportException.Reason.NO_METRICS);
+        weatherMetrics.rejected(InvalidWeatherReportException.Reason.NO_METRICS);
+        weatherMetrics.rejected(WeatherMetrics.UNKNOWN_SENSOR);
+
+        assertEquals(2, registry.get("weather.ingest.rejected").tag("reason", "no_metrics").counter().count());
+        assertEquals(1, registry.get("weather.ingest.rejected").tag("reason", "unknown_sensor").counter().count());
+    }
+}
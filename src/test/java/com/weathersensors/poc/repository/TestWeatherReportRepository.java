@@ -0,0 +1,204 @@
+package com.weathersensors.poc.repository;
+
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.entity.WeatherRollup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class TestWeatherReportRepository {
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private WeatherReportRepository weatherReportRepository;
+
+    @Autowired
+    private WeatherRollupRepository weatherRollupRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    Sensor north;
+    Sensor south;
+
+    @BeforeEach
+    public void setUp(){
+        north = sensor("North");
+        south = sensor("South");
+
+        report(north, "2023-01-02T10:00:00Z", 10, 30, null);
+        report(north, "2023-01-02T11:00:00Z", 20, null, null);
+        report(north, "2023-01-05T11:00:00Z", 90, 90, 90);
+        report(south, "2023-01-02T12:00:00Z", -5, 50, 7);
+    }
+
+    @Test
+    public void givenSensorAndDateRange_whenReportsScanned_useSensorDateIndex(){
+
+        String plan = entityManager.createNativeQuery("explain select count(*) from weather_report " +
+                        "where sensor_id = :sensor and report_date >= :from and report_date < :to")
+                .setParameter("sensor", north.getId())
+                .setParameter("from", date("2023-01-01T00:00:00Z"))
+                .setParameter("to", date("2023-01-03T00:00:00Z"))
+                .getSingleResult().toString();
+
+        assertTrue(plan.toLowerCase().contains("idx_weather_report_sensor_date"), plan);
+    }
+
+    @Test
+    public void givenReports_whenAggregateBySensor_returnStatsPerSensor(){
+
+        List<SensorAggregateView> views = weatherReportRepository.aggregateBySensor(true, List.of(), true, List.of(),
+                date("2023-01-01T00:00:00Z"), date("2023-01-03T00:00:00Z"));
+
+        assertEquals(2, views.size());
+        WeatherAggregate northAggregate = find(views, north.getId());
+        assertEquals(2, northAggregate.getTemperature().getCount());
+        assertEquals(30, northAggregate.getTemperature().getSum());
+        assertEquals(10, northAggregate.getTemperature().minimum());
+        assertEquals(20, northAggregate.getTemperature().maximum());
+        assertEquals(1, northAggregate.getHumidity().getCount());
+        assertTrue(northAggregate.getWindSpeed().isEmpty());
+        assertEquals(-5, find(views, south.getId()).getTemperature().minimum());
+    }
+
+    @Test
+    public void givenReports_whenAggregateBySensorWithFilters_returnOnlyMatchingSensors(){
+
+        List<SensorAggregateView> byTitle = weatherReportRepository.aggregateBySensor(true, List.of(), false, List.of("South"),
+                date("2023-01-01T00:00:00Z"), date("2023-02-01T00:00:00Z"));
+        List<SensorAggregateView> byIdAndTitle = weatherReportRepository.aggregateBySensor(false, List.of(north.getId()),
+                false, List.of("South"), date("2023-01-01T00:00:00Z"), date("2023-02-01T00:00:00Z"));
+
+        assertEquals(1, byTitle.size());
+        assertEquals(south.getId(), byTitle.get(0).getSensorId());
+        assertTrue(byIdAndTitle.isEmpty());
+    }
+
+    @Test
+    public void givenReportOnUpperBound_whenAggregateBySensor_excludeIt(){
+
+        List<SensorAggregateView> views = weatherReportRepository.aggregateBySensor(false, List.of(north.getId()), true,
+                List.of(), date("2023-01-02T10:00:00Z"), date("2023-01-02T11:00:00Z"));
+
+        assertEquals(1, find(views, north.getId()).getTemperature().getCount());
+    }
+
+    @Test
+    public void givenRollups_whenAggregateBySensor_ignoreMinAndMaxOfEmptyMetrics(){
+
+        rollup(north, "2023-01-02T00:00:00Z", 10, null);
+        rollup(north, "2023-01-03T00:00:00Z", null, 40);
+
+        List<SensorAggregateView> views = weatherRollupRepository.aggregateBySensor(true, List.of(), true, List.of(),
+                RollupResolution.DAY, date("2023-01-01T00:00:00Z"), date("2023-01-04T00:00:00Z"));
+
+        WeatherAggregate northAggregate = find(views, north.getId());
+        assertEquals(10, northAggregate.getTemperature().minimum());
+        assertEquals(10, northAggregate.getTemperature().maximum());
+        assertEquals(40, northAggregate.getHumidity().minimum());
+    }
+
+    @Test
+    public void givenReports_whenCountReadingsBySensor_rebuildHistograms(){
+
+        report(north, "2023-01-02T13:00:00Z", 10, null, null);
+
+        WeatherAggregate northAggregate = new WeatherAggregate();
+        weatherReportRepository.countReadingsBySensor(false, List.of(north.getId()), true, List.of(),
+                        date("2023-01-01T00:00:00Z"), date("2023-01-03T00:00:00Z"))
+                .forEach(view -> view.addTo(northAggregate));
+
+        assertEquals(3, northAggregate.getTemperature().getCount());
+        assertEquals(40, northAggregate.getTemperature().getSum());
+        assertEquals(10, northAggregate.getTemperature().percentile(50));
+        assertEquals(20, northAggregate.getTemperature().percentile(99));
+        assertEquals(30, northAggregate.getHumidity().percentile(50));
+    }
+
+    @Test
+    public void givenRollups_whenFindBySensors_readHistogramsBack(){
+
+        rollup(north, "2023-01-02T00:00:00Z", 10, null);
+        rollup(north, "2023-01-03T00:00:00Z", 30, 40);
+        rollup(south, "2023-01-03T00:00:00Z", -100, null);
+        entityManager.flush();
+        entityManager.clear();
+
+        WeatherAggregate northAggregate = new WeatherAggregate();
+        weatherRollupRepository.findBySensors(true, List.of(), false, List.of("North"), RollupResolution.DAY,
+                        date("2023-01-01T00:00:00Z"), date("2023-01-04T00:00:00Z"))
+                .forEach(view -> northAggregate.merge(view.getAggregate()));
+
+        assertEquals(2, northAggregate.getTemperature().getCount());
+        assertEquals(10, northAggregate.getTemperature().percentile(50));
+        assertEquals(30, northAggregate.getTemperature().percentile(90));
+        assertEquals(40, northAggregate.getHumidity().percentile(50));
+    }
+
+    @Test
+    public void givenOldReports_whenDeletedInBatches_removeOnlyOlderOnes(){
+
+        report(north, "2023-01-01T00:00:00Z", 5, null, null);
+        entityManager.flush();
+
+        List<UUID> batch = weatherReportRepository.findIdsBefore(date("2023-01-03T00:00:00Z"), PageRequest.ofSize(2));
+        weatherReportRepository.deleteByIds(batch);
+        List<UUID> rest = weatherReportRepository.findIdsBefore(date("2023-01-03T00:00:00Z"), PageRequest.ofSize(10));
+        weatherReportRepository.deleteByIds(rest);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(2, batch.size());
+        assertEquals(2, rest.size());
+        assertEquals(1, weatherReportRepository.count());
+        assertEquals(1, sensorRepository.findById(north.getId()).orElseThrow().getWeatherReports().size());
+    }
+
+    private Sensor sensor(String title){
+        Sensor sensor = new Sensor();
+        sensor.setTitle(title);
+        return sensorRepository.save(sensor);
+    }
+
+    private void report(Sensor sensor, String reportDate, Integer temperature, Integer humidity, Integer windSpeed){
+        WeatherReport weatherReport = new WeatherReport.Builder(sensor)
+                .withTemperature(temperature)
+                .withHumidity(humidity)
+                .withWithSpeed(windSpeed)
+                .build();
+        weatherReport.setReportDate(date(reportDate));
+        weatherReportRepository.save(weatherReport);
+    }
+
+    private void rollup(Sensor sensor, String bucketStart, Integer temperature, Integer humidity){
+        WeatherRollup rollup = new WeatherRollup(sensor, RollupResolution.DAY, date(bucketStart));
+        rollup.getAggregate().getTemperature().add(temperature);
+        rollup.getAggregate().getHumidity().add(humidity);
+        weatherRollupRepository.save(rollup);
+    }
+
+    private static WeatherAggregate find(List<SensorAggregateView> views, UUID sensorId){
+        return views.stream().filter(v -> v.getSensorId().equals(sensorId)).findFirst().orElseThrow().toAggregate();
+    }
+
+    private static Date date(String instant){
+        return Date.from(Instant.parse(instant));
+    }
+}
@@ -0,0 +1,76 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestFleetService {
+
+    private StatsService statsService;
+    private FleetService fleetService;
+
+    @BeforeEach
+    public void setUp(){
+        statsService = mock(StatsService.class);
+        fleetService = new FleetService(4);
+        ReflectionTestUtils.setField(fleetService, "statsService", statsService);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        fleetService.stop();
+    }
+
+    @Test
+    public void givenManySensors_whenAggregate_readThemAllAtOnceAndMergeEverySlice(){
+
+        List<Sensor> sensors = new ArrayList<>();
+        for(int i = 0; i < 1000; i++){
+            Sensor sensor = new Sensor();
+            sensor.setId(UUID.randomUUID());
+            sensor.getAggregate().getTemperature().add(i % 100);
+            sensors.add(sensor);
+        }
+        Map<UUID, WeatherAggregate> aggregates = new HashMap<>();
+        sensors.forEach(sensor -> aggregates.put(sensor.getId(), sensor.getAggregate()));
+        Instant from = Instant.parse("2023-01-01T00:00:00Z");
+        Instant to = Instant.parse("2023-01-02T00:00:00Z");
+        given(statsService.aggregate(sensors, sensors.stream().map(Sensor::getId).toList(), List.of(), from, to,
+                List.of(Stat.P50))).willReturn(aggregates);
+
+        WeatherAggregate fleet = fleetService.aggregate(sensors, from, to, List.of(Stat.P50));
+
+        assertEquals(1000, fleet.getTemperature().getCount());
+        assertEquals(49.5, fleet.getTemperature().average());
+        assertEquals(0, fleet.getTemperature().minimum());
+        assertEquals(49, fleet.getTemperature().percentile(50));
+        verify(statsService, times(1)).aggregate(anyList(), any(), any(), any(), any(), any());
+        sensors.forEach(sensor -> assertEquals(1, sensor.getAggregate().getTemperature().getCount()));
+    }
+
+    @Test
+    public void givenNoSensors_whenAggregate_returnEmptyAggregateWithoutQuerying(){
+
+        WeatherAggregate fleet = fleetService.aggregate(List.of(), null, null, List.of(Stat.AVERAGE));
+
+        assertTrue(fleet.getTemperature().isEmpty());
+        verifyNoInteractions(statsService);
+    }
+}
@@ -0,0 +1,103 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.repository.SensorRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ingests readings for one sensor from many threads at once, like concurrent POST /weather requests.
+ */
+@SpringBootTest
+@DirtiesContext
+public class TestIngestConcurrency {
+
+    private static final int THREADS = 16;
+    private static final int REPORTS = 800;
+
+    @Autowired
+    private IngestService ingestService;
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void givenConcurrentIngests_whenDone_aggregateCountsEveryReport() throws Exception {
+
+        Sensor sensor = new Sensor();
+        sensor.setTitle("Concurrent");
+        sensorRepository.save(sensor);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try{
+            List<Future<?>> ingests = new ArrayList<>();
+            for(int i = 0; i < REPORTS; i++){
+                WeatherReport weatherReport = new WeatherReport.Builder(sensor).withTemperature(i % 100).build();
+                ingests.add(executor.submit(() -> ingestService.ingest(weatherReport)));
+            }
+            for(Future<?> ingest : ingests){
+                ingest.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Sensor stored = sensorRepository.findById(sensor.getId()).orElseThrow();
+        assertEquals(REPORTS, jdbcTemplate.queryForObject(
+                "select count(*) from weather_report where sensor_id = ?", Long.class, sensor.getId()));
+        assertEquals(REPORTS, stored.getAggregate().getTemperature().getCount());
+        assertEquals(REPORTS, stored.getAggregate().getTemperature().getHistogram().getTotal());
+        assertEquals(REPORTS, jdbcTemplate.queryForObject(
+                "select sum(temperature_count) from weather_rollup where sensor_id = ? and resolution = 'DAY'",
+                Long.class, sensor.getId()));
+    }
+
+    @Test
+    public void givenSensorReadBeforeAnotherIngest_whenIngest_keepTheOtherIngest(){
+
+        Sensor sensor = new Sensor();
+        sensor.setTitle("Read early");
+        sensorRepository.save(sensor);
+
+        // Like a request with open-session-in-view: the sensor is read before the ingest transaction, in the
+        // entity manager the transaction then uses, and another request ingests meanwhile
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try{
+            Sensor early = sensorRepository.findByTitle(sensor.getTitle()).orElseThrow();
+            CompletableFuture.runAsync(() -> ingestService.ingest(new WeatherReport.Builder(sensor).withTemperature(1).build())).join();
+            ingestService.ingest(new WeatherReport.Builder(early).withTemperature(2).build());
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+        }
+
+        Sensor stored = sensorRepository.findById(sensor.getId()).orElseThrow();
+        assertEquals(2, stored.getAggregate().getTemperature().getCount());
+        assertEquals(3, stored.getAggregate().getTemperature().getSum());
+    }
+
+}
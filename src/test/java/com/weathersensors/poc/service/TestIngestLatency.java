@@ -0,0 +1,113 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.repository.SensorRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ingests readings for a sensor with an empty history and again once it has a long one. Each ingest runs
+ * in its own transaction, like a request with its own persistence context.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@DirtiesContext
+public class TestIngestLatency {
+
+    private static final int HISTORY = 1_000_000;
+    // Enough for a loaded collection to show up, the statements don't depend on its size
+    private static final int STATEMENTS_HISTORY = 10_000;
+    private static final int SAMPLES = 200;
+
+    @Autowired
+    private IngestService ingestService;
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void givenLongHistory_whenIngest_runNoMoreStatementsThanForTheFirstReport(){
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Sensor sensor = sensor("Statements");
+
+        statistics.clear();
+        measure(sensor, SAMPLES);
+        long firstStatements = statistics.getPrepareStatementCount();
+
+        addHistory(sensor, STATEMENTS_HISTORY - SAMPLES);
+        statistics.clear();
+        measure(sensor, SAMPLES);
+        long laterStatements = statistics.getPrepareStatementCount();
+
+        assertTrue(laterStatements <= firstStatements, laterStatements + " statements against " + firstStatements);
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
+
+    // Wall clock timing, excluded from the default build: mvn test -Dgroups=latency -DexcludedGroups=
+    @Test
+    @Tag("latency")
+    public void givenMillionReports_whenIngest_takeAboutAsLongAsTheFirstReport(){
+
+        measure(sensor("Warmup"), SAMPLES);
+        Sensor sensor = sensor("Latency");
+        long first = measure(sensor, SAMPLES);
+
+        addHistory(sensor, HISTORY - 3 * SAMPLES);
+        measure(sensor, SAMPLES);
+        long millionth = measure(sensor, SAMPLES);
+
+        assertEquals(HISTORY, jdbcTemplate.queryForObject(
+                "select count(*) from weather_report where sensor_id = ?", Long.class, sensor.getId()));
+        assertTrue(millionth < first * 3 + 1_000_000,
+                "median ingest took " + millionth + "ns at a million reports against " + first + "ns at the first");
+    }
+
+    private void addHistory(Sensor sensor, int reports){
+        jdbcTemplate.update("insert into weather_report (id, sensor_id, report_date, temperature) " +
+                "select random_uuid(), ?, dateadd('SECOND', -r.n, current_timestamp), mod(r.n, 100) " +
+                "from system_range(1, ?) r(n)", sensor.getId(), reports);
+    }
+
+    // Returns the median latency in nanoseconds
+    private long measure(Sensor sensor, int samples){
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long[] latencies = new long[samples];
+        for(int i = 0; i < samples; i++){
+            WeatherReport weatherReport = new WeatherReport.Builder(sensor).withTemperature(i % 100).build();
+            long start = System.nanoTime();
+            transaction.executeWithoutResult(status -> ingestService.ingest(weatherReport));
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies[samples / 2];
+    }
+
+    private Sensor sensor(String title){
+        Sensor sensor = new Sensor();
+        sensor.setTitle(title);
+        return sensorRepository.save(sensor);
+    }
+}
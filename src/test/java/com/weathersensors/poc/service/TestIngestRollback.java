@@ -0,0 +1,98 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.dto.WeatherReportBatchItem;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.repository.WeatherRollupRepository;
+import com.weathersensors.poc.store.SeriesStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willThrow;
+
+@SpringBootTest(properties = "weather.store.columnar.enabled=true")
+@DirtiesContext
+public class TestIngestRollback {
+
+    @Autowired
+    private IngestService ingestService;
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private SeriesStore seriesStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @SpyBean
+    private WeatherRollupRepository weatherRollupRepository;
+
+    @SpyBean
+    private RollupService rollupService;
+
+    @Test
+    public void givenRollupSaveFails_whenIngestBatch_commitNothing(){
+
+        Sensor sensor = new Sensor();
+        sensor.setTitle("Rollback");
+        sensorRepository.save(sensor);
+        willThrow(new DataIntegrityViolationException("rollup")).given(weatherRollupRepository).save(any());
+
+        assertThrows(DataIntegrityViolationException.class, () -> ingestService.ingestBatch(
+                List.of(item("Rollback", 10), item("Rollback", 20)), "title"));
+
+        Sensor stored = sensorRepository.findById(sensor.getId()).orElseThrow();
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from weather_report where sensor_id = ?", Long.class, sensor.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from weather_rollup where sensor_id = ?", Long.class, sensor.getId()));
+        assertTrue(stored.getAggregate().getTemperature().isEmpty());
+        assertTrue(seriesStore.aggregate(List.of(sensor.getId()), null, null).isEmpty());
+    }
+
+    @Test
+    public void givenFailedWriteBehindBatch_whenRetriedOneByOne_storeEveryReport() throws InterruptedException {
+
+        Sensor sensor = new Sensor();
+        sensor.setTitle("Retry");
+        sensorRepository.save(sensor);
+        willThrow(new DataIntegrityViolationException("rollup")).willCallRealMethod().given(rollupService).recordAll(any());
+        WriteBehindQueue queue = new WriteBehindQueue("async", 10, 10, 50);
+        ReflectionTestUtils.setField(queue, "ingestService", ingestService);
+        ReflectionTestUtils.setField(queue, "transactionManager", transactionManager);
+        queue.offer(new WeatherReport.Builder(sensor).withTemperature(10).build());
+        queue.offer(new WeatherReport.Builder(sensor).withTemperature(20).build());
+
+        queue.start();
+        queue.stop();
+
+        assertEquals(0, queue.getDropped());
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "select count(*) from weather_report where sensor_id = ?", Long.class, sensor.getId()));
+        assertEquals(2, sensorRepository.findById(sensor.getId()).orElseThrow().getAggregate().getTemperature().getCount());
+    }
+
+    private static WeatherReportBatchItem item(String sensor, int temperature){
+        WeatherReportBatchItem item = new WeatherReportBatchItem();
+        item.setSensor(sensor);
+        item.setTemperature(temperature);
+        return item;
+    }
+}
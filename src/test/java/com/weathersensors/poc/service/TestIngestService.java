@@ -0,0 +1,148 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.cache.QueryResultCache;
+import com.weathersensors.poc.dto.BatchItemResultDTO;
+import com.weathersensors.poc.dto.WeatherReportBatchItem;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.metrics.WeatherMetrics;
+import com.weathersensors.poc.store.SeriesStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.*;
+
+public class TestIngestService {
+
+    private SensorService sensorService;
+    private WeatherReportService weatherReportService;
+    private RollupService rollupService;
+    private IngestService ingestService;
+    private Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        sensorService = mock(SensorService.class);
+        weatherReportService = mock(WeatherReportService.class);
+        rollupService = mock(RollupService.class);
+        ingestService = new IngestService();
+        ReflectionTestUtils.setField(ingestService, "sensorService", sensorService);
+        ReflectionTestUtils.setField(ingestService, "weatherReportService", weatherReportService);
+        ReflectionTestUtils.setField(ingestService, "rollupService", rollupService);
+        ReflectionTestUtils.setField(ingestService, "seriesStore", mock(SeriesStore.class));
+        ReflectionTestUtils.setField(ingestService, "weatherMetrics", mock(WeatherMetrics.class));
+        ReflectionTestUtils.setField(ingestService, "queryResultCache", mock(QueryResultCache.class));
+        ReflectionTestUtils.setField(ingestService, "subscriptionService", mock(SubscriptionService.class));
+
+        sensor = new Sensor();
+        sensor.setId(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f"));
+        sensor.setTitle("Test");
+
+        given(sensorService.loadByIds(anyCollection())).willReturn(List.of(sensor));
+        given(weatherReportService.isStoredInDatabase()).willReturn(true);
+        willAnswer(invocation -> {
+            List<WeatherReport> weatherReports = invocation.getArgument(0);
+            weatherReports.forEach(wr -> wr.setId(UUID.randomUUID()));
+            return null;
+        }).given(weatherReportService).saveAll(anyList());
+    }
+
+    @Test
+    public void givenBatchForOneSensor_whenIngestBatch_resolveSensorOnceAndSaveTogether(){
+
+        given(sensorService.findByTitles(Set.of("Test"))).willReturn(List.of(sensor));
+
+        List<BatchItemResultDTO> results = ingestService.ingestBatch(
+                List.of(item("Test", 10, null), item("Test", 20, 30), item("Test", null, 40)), "title");
+
+        verify(sensorService, times(1)).findByTitles(anyCollection());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<WeatherReport>> saved = ArgumentCaptor.forClass(List.class);
+        verify(weatherReportService, times(1)).saveAll(saved.capture());
+        verify(rollupService, times(1)).recordAll(anyList());
+        assertEquals(3, saved.getValue().size());
+        assertEquals(3, results.size());
+        results.forEach(result -> assertEquals(201, result.getStatus()));
+        assertEquals(2, sensor.getAggregate().getTemperature().getCount());
+        assertEquals(2, sensor.getAggregate().getHumidity().getCount());
+    }
+
+    @Test
+    public void givenInvalidItems_whenIngestBatch_rejectOnlyThoseItems(){
+
+        given(sensorService.findByTitles(anyCollection())).willReturn(List.of(sensor));
+
+        List<BatchItemResultDTO> results = ingestService.ingestBatch(
+                List.of(item("Test", 10, null), item("Missing", 10, null), item("Test", 5000, null),
+                        item("Test", null, null)), "title");
+
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals("Sensor with title Missing not found", results.get(1).getError().getMessage());
+        assertEquals("Temperature must be valid value between -150 and 200 Fahrenheit", results.get(2).getError().getMessage());
+        assertEquals("Invalid Weather Report, at least one metric must be reported", results.get(3).getError().getMessage());
+        assertEquals(1, sensor.getAggregate().getTemperature().getCount());
+    }
+
+    @Test
+    public void givenIdIdentifier_whenIngestBatch_resolveByIdAndRejectMalformedIds(){
+
+        given(sensorService.findByIds(Set.of(sensor.getId()))).willReturn(List.of(sensor));
+
+        List<BatchItemResultDTO> results = ingestService.ingestBatch(
+                List.of(item("41D4BBBF-EA25-46FB-8D18-614053F4267F", 10, null), item("not-a-uuid", 10, null)), "id");
+
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals("Incorrect UUID format for id identifier", results.get(1).getError().getMessage());
+    }
+
+    @Test
+    public void givenDetachedSensor_whenIngest_attachReportToLoadedSensor(){
+
+        Sensor detached = new Sensor();
+        detached.setId(sensor.getId());
+        detached.setTitle(sensor.getTitle());
+        WeatherReport weatherReport = new WeatherReport.Builder(detached).withTemperature(10).build();
+
+        ingestService.ingest(weatherReport);
+
+        assertSame(sensor, weatherReport.getSensor());
+        assertEquals(1, sensor.getAggregate().getTemperature().getCount());
+        assertTrue(detached.getAggregate().getTemperature().isEmpty());
+        assertTrue(sensor.getWeatherReports().isEmpty());
+    }
+
+    @Test
+    public void givenSegmentLog_whenIngest_onlyAppendToLog(){
+
+        given(weatherReportService.isStoredInDatabase()).willReturn(false);
+        given(sensorService.findByIds(anyCollection())).willReturn(List.of(sensor));
+        WeatherReport weatherReport = new WeatherReport.Builder(sensor).withTemperature(10).build();
+
+        ingestService.ingest(weatherReport);
+
+        verify(weatherReportService).saveAll(List.of(weatherReport));
+        verify(sensorService, never()).loadByIds(anyCollection());
+        verify(sensorService, never()).saveAll(anyCollection());
+        verifyNoInteractions(rollupService);
+        assertTrue(sensor.getAggregate().getTemperature().isEmpty());
+    }
+
+    private static WeatherReportBatchItem item(String sensor, Integer temperature, Integer humidity){
+        WeatherReportBatchItem item = new WeatherReportBatchItem();
+        item.setSensor(sensor);
+        item.setTemperature(temperature);
+        item.setHumidity(humidity);
+        return item;
+    }
+}
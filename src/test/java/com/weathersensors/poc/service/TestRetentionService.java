@@ -0,0 +1,115 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.cache.QueryResultCache;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.store.SeriesStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestRetentionService {
+
+    private WeatherReportRepository weatherReportRepository;
+    private WeatherReportService weatherReportService;
+    private SeriesStore seriesStore;
+    private RollupService rollupService;
+    private QueryResultCache queryResultCache;
+    private RetentionService retentionService;
+
+    @BeforeEach
+    public void setUp(){
+        weatherReportRepository = mock(WeatherReportRepository.class);
+        weatherReportService = mock(WeatherReportService.class);
+        seriesStore = mock(SeriesStore.class);
+        rollupService = mock(RollupService.class);
+        queryResultCache = mock(QueryResultCache.class);
+        given(rollupService.getZone()).willReturn(ZoneId.of("UTC"));
+        retentionService = new RetentionService(30, 2);
+        ReflectionTestUtils.setField(retentionService, "weatherReportRepository", weatherReportRepository);
+        ReflectionTestUtils.setField(retentionService, "weatherReportService", weatherReportService);
+        ReflectionTestUtils.setField(retentionService, "rollupService", rollupService);
+        ReflectionTestUtils.setField(retentionService, "seriesStore", seriesStore);
+        ReflectionTestUtils.setField(retentionService, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(retentionService, "queryResultCache", queryResultCache);
+    }
+
+    @Test
+    public void givenOldReports_whenCompactBefore_deleteInBatchesUntilNoneLeft(){
+
+        Instant cutoff = Instant.parse("2023-01-01T00:00:00Z");
+        given(seriesStore.isEnabled()).willReturn(true);
+        given(weatherReportRepository.findIdsBefore(Date.from(cutoff), PageRequest.ofSize(2)))
+                .willReturn(ids(2)).willReturn(ids(2)).willReturn(ids(1));
+
+        long deleted = retentionService.compactBefore(cutoff);
+
+        assertEquals(5, deleted);
+        verify(weatherReportRepository, times(3)).deleteByIds(any());
+        verify(seriesStore).truncateBefore(cutoff);
+        verify(queryResultCache).changedAll();
+    }
+
+    @Test
+    public void givenNothingOld_whenCompactBefore_keepCachedAnswers(){
+
+        given(weatherReportRepository.findIdsBefore(any(), any())).willReturn(List.of());
+
+        long deleted = retentionService.compactBefore(Instant.parse("2023-01-01T00:00:00Z"));
+
+        assertEquals(0, deleted);
+        verify(queryResultCache, never()).changedAll();
+    }
+
+    @Test
+    public void givenSegmentLog_whenCheck_refuseRetention(){
+
+        given(weatherReportService.isStoredInDatabase()).willReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> retentionService.check());
+
+        RetentionService disabled = new RetentionService(0, 2);
+        ReflectionTestUtils.setField(disabled, "weatherReportService", weatherReportService);
+        assertDoesNotThrow(disabled::check);
+    }
+
+    @Test
+    public void givenRetentionDays_whenCutoff_returnStartOfDayThatManyDaysAgo(){
+
+        Instant cutoff = retentionService.cutoff();
+
+        assertEquals(cutoff, cutoff.truncatedTo(ChronoUnit.DAYS));
+        assertTrue(cutoff.isBefore(Instant.now().minus(30, ChronoUnit.DAYS)));
+        assertTrue(cutoff.isAfter(Instant.now().minus(31, ChronoUnit.DAYS)));
+        assertNull(new RetentionService(0, 2).cutoff());
+    }
+
+    @Test
+    public void givenHalfHourRollupZone_whenCutoff_returnStartOfHourHoldingStartOfDay(){
+
+        given(rollupService.getZone()).willReturn(ZoneId.of("Asia/Kolkata"));
+
+        Instant cutoff = retentionService.cutoff();
+
+        assertEquals(cutoff, cutoff.truncatedTo(ChronoUnit.HOURS));
+        assertEquals(18, cutoff.atZone(ZoneId.of("UTC")).getHour());
+    }
+
+    private static List<UUID> ids(int count){
+        return IntStream.range(0, count).mapToObj(i -> UUID.randomUUID()).toList();
+    }
+}
@@ -0,0 +1,196 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.entity.WeatherRollup;
+import com.weathersensors.poc.repository.ReadingCountView;
+import com.weathersensors.poc.repository.SensorAggregateView;
+import com.weathersensors.poc.repository.SensorRollupView;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.repository.WeatherRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.*;
+
+public class TestRollupService {
+
+    private WeatherRollupRepository weatherRollupRepository;
+    private WeatherReportRepository weatherReportRepository;
+    private RollupService rollupService;
+    private Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        weatherRollupRepository = mock(WeatherRollupRepository.class);
+        weatherReportRepository = mock(WeatherReportRepository.class);
+        rollupService = new RollupService("UTC");
+        ReflectionTestUtils.setField(rollupService, "weatherRollupRepository", weatherRollupRepository);
+        ReflectionTestUtils.setField(rollupService, "weatherReportRepository", weatherReportRepository);
+
+        sensor = new Sensor();
+        sensor.setId(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f"));
+        sensor.setTitle("Test");
+    }
+
+    @Test
+    public void givenReport_whenRecord_updateHourAndDayBuckets(){
+
+        given(weatherRollupRepository.findBySensorAndResolutionAndBucketStart(any(), any(), any()))
+                .willReturn(Optional.empty());
+
+        rollupService.record(report("2023-01-02T10:45:00Z", 12));
+
+        ArgumentCaptor<WeatherRollup> saved = ArgumentCaptor.forClass(WeatherRollup.class);
+        verify(weatherRollupRepository, times(2)).save(saved.capture());
+        assertEquals(RollupResolution.HOUR, saved.getAllValues().get(0).getResolution());
+        assertEquals(date("2023-01-02T10:00:00Z"), saved.getAllValues().get(0).getBucketStart());
+        assertEquals(RollupResolution.DAY, saved.getAllValues().get(1).getResolution());
+        assertEquals(date("2023-01-02T00:00:00Z"), saved.getAllValues().get(1).getBucketStart());
+        assertEquals(12, saved.getAllValues().get(1).getAggregate().getTemperature().getSum());
+    }
+
+    @Test
+    public void givenRange_whenAggregate_useDaysThenHoursThenRawEdges(){
+
+        List<UUID> ids = List.of(sensor.getId());
+        List<String> titles = List.of();
+        List<SensorAggregateView> days = List.of(view(1));
+        List<SensorAggregateView> leadingHours = List.of(view(2));
+        List<SensorAggregateView> trailingHours = List.of(view(4));
+        List<SensorAggregateView> leadingRaw = List.of(view(8));
+        List<SensorAggregateView> trailingRaw = List.of(view(16));
+        given(weatherRollupRepository.aggregateBySensor(false, ids, true, titles, RollupResolution.DAY,
+                date("2023-01-02T00:00:00Z"), date("2023-01-03T00:00:00Z")))
+                .willReturn(days);
+        given(weatherRollupRepository.aggregateBySensor(false, ids, true, titles, RollupResolution.HOUR,
+                date("2023-01-01T11:00:00Z"), date("2023-01-02T00:00:00Z")))
+                .willReturn(leadingHours);
+        given(weatherRollupRepository.aggregateBySensor(false, ids, true, titles, RollupResolution.HOUR,
+                date("2023-01-03T00:00:00Z"), date("2023-01-03T05:00:00Z")))
+                .willReturn(trailingHours);
+        given(weatherReportRepository.aggregateBySensor(false, ids, true, titles,
+                date("2023-01-01T10:30:00Z"), date("2023-01-01T11:00:00Z")))
+                .willReturn(leadingRaw);
+        given(weatherReportRepository.aggregateBySensor(false, ids, true, titles,
+                date("2023-01-03T05:00:00Z"), date("2023-01-03T05:15:00Z")))
+                .willReturn(trailingRaw);
+
+        Map<UUID, WeatherAggregate> aggregates = rollupService.aggregate(ids, titles,
+                Instant.parse("2023-01-01T10:30:00Z"), Instant.parse("2023-01-03T05:15:00Z"));
+
+        assertEquals(5, aggregates.get(sensor.getId()).getTemperature().getCount());
+        assertEquals(31, aggregates.get(sensor.getId()).getTemperature().getSum());
+        verify(weatherReportRepository, times(2)).aggregateBySensor(anyBoolean(), any(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void givenWholeDayRange_whenAggregate_neverReadRawReports(){
+
+        given(weatherRollupRepository.aggregateBySensor(anyBoolean(), any(), anyBoolean(), any(), any(), any(), any()))
+                .willReturn(List.of());
+
+        rollupService.aggregate(List.of(), List.of(), Instant.parse("2023-01-01T00:00:00Z"), Instant.parse("2023-03-01T00:00:00Z"));
+
+        verify(weatherRollupRepository).aggregateBySensor(true, List.of(), true, List.of(), RollupResolution.DAY,
+                date("2023-01-01T00:00:00Z"), date("2023-03-01T00:00:00Z"));
+        verifyNoMoreInteractions(weatherRollupRepository);
+        verifyNoInteractions(weatherReportRepository);
+    }
+
+    @Test
+    public void givenHalfHourRollupZone_whenAggregateWholeHours_useHoursAndNeverReadRawReports(){
+
+        RollupService kolkata = new RollupService("Asia/Kolkata");
+        ReflectionTestUtils.setField(kolkata, "weatherRollupRepository", weatherRollupRepository);
+        ReflectionTestUtils.setField(kolkata, "weatherReportRepository", weatherReportRepository);
+        given(weatherRollupRepository.aggregateBySensor(anyBoolean(), any(), anyBoolean(), any(), any(), any(), any()))
+                .willReturn(List.of());
+
+        kolkata.aggregate(List.of(), List.of(), Instant.parse("2023-01-01T00:00:00Z"), Instant.parse("2023-01-04T00:00:00Z"));
+
+        verify(weatherRollupRepository).aggregateBySensor(true, List.of(), true, List.of(), RollupResolution.HOUR,
+                date("2023-01-01T00:00:00Z"), date("2023-01-04T00:00:00Z"));
+        verifyNoMoreInteractions(weatherRollupRepository);
+        verifyNoInteractions(weatherReportRepository);
+    }
+
+    @Test
+    public void givenHistogramsWanted_whenAggregate_mergeRollupRowsAndRawValueCounts(){
+
+        List<UUID> ids = List.of(sensor.getId());
+        WeatherAggregate day = new WeatherAggregate();
+        day.getTemperature().add(10, 3);
+        SensorRollupView dayView = mock(SensorRollupView.class);
+        given(dayView.getSensorId()).willReturn(sensor.getId());
+        given(dayView.getAggregate()).willReturn(day);
+        ReadingCountView raw = mock(ReadingCountView.class);
+        given(raw.getSensorId()).willReturn(sensor.getId());
+        willAnswer(invocation -> {
+            invocation.<WeatherAggregate>getArgument(0).getTemperature().add(40, 2);
+            return null;
+        }).given(raw).addTo(any());
+        given(weatherRollupRepository.findBySensors(false, ids, true, List.of(), RollupResolution.DAY,
+                date("2023-01-02T00:00:00Z"), date("2023-01-03T00:00:00Z")))
+                .willReturn(List.of(dayView));
+        given(weatherReportRepository.countReadingsBySensor(false, ids, true, List.of(),
+                date("2023-01-03T00:00:00Z"), date("2023-01-03T00:30:00Z")))
+                .willReturn(List.of(raw));
+
+        Map<UUID, WeatherAggregate> aggregates = rollupService.aggregate(ids, List.of(),
+                Instant.parse("2023-01-02T00:00:00Z"), Instant.parse("2023-01-03T00:30:00Z"), true);
+
+        assertEquals(5, aggregates.get(sensor.getId()).getTemperature().getCount());
+        assertEquals(10, aggregates.get(sensor.getId()).getTemperature().percentile(50));
+        assertEquals(40, aggregates.get(sensor.getId()).getTemperature().percentile(90));
+        verify(weatherRollupRepository, never()).aggregateBySensor(anyBoolean(), any(), anyBoolean(), any(), any(), any(), any());
+        verify(weatherReportRepository, never()).aggregateBySensor(anyBoolean(), any(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void givenBucketWidths_whenAlignedResolution_pickTheCoarsestRollupsFittingInABucket(){
+
+        assertEquals(RollupResolution.DAY, rollupService.alignedResolution(Duration.ofDays(2)));
+        assertEquals(RollupResolution.HOUR, rollupService.alignedResolution(Duration.ofHours(3)));
+        assertNull(rollupService.alignedResolution(Duration.ofMinutes(90)));
+        // Its days start at 23:00 or 22:00 UTC, so a whole UTC day holds parts of two of them
+        assertEquals(RollupResolution.HOUR, new RollupService("Europe/Paris").alignedResolution(Duration.ofDays(1)));
+    }
+
+    private WeatherReport report(String reportDate, int temperature){
+        WeatherReport weatherReport = new WeatherReport.Builder(sensor).withTemperature(temperature).build();
+        weatherReport.setReportDate(date(reportDate));
+        return weatherReport;
+    }
+
+    private SensorAggregateView view(int temperature){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        aggregate.getTemperature().add(temperature);
+        SensorAggregateView view = mock(SensorAggregateView.class);
+        given(view.getSensorId()).willReturn(sensor.getId());
+        given(view.toAggregate()).willReturn(aggregate);
+        return view;
+    }
+
+    private static Date date(String instant){
+        return Date.from(Instant.parse(instant));
+    }
+}
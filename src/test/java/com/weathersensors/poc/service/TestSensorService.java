@@ -0,0 +1,135 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.cache.QueryResultCache;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.store.SegmentLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestSensorService {
+
+    private SensorRepository sensorRepository;
+    private SensorService sensorService;
+    private Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        sensorRepository = mock(SensorRepository.class);
+        sensorService = new SensorService(2);
+        ReflectionTestUtils.setField(sensorService, "sensorRepository", sensorRepository);
+        ReflectionTestUtils.setField(sensorService, "queryResultCache", mock(QueryResultCache.class));
+        ReflectionTestUtils.setField(sensorService, "segmentLog", mock(SegmentLog.class));
+
+        sensor = sensor("Test");
+    }
+
+    @Test
+    public void givenKnownTitle_whenFindByTitleTwice_queryRepositoryOnce(){
+
+        given(sensorRepository.findByTitle("Test")).willReturn(Optional.of(sensor));
+
+        Sensor first = sensorService.findByTitle("Test").orElseThrow();
+        Sensor second = sensorService.findByTitle("Test").orElseThrow();
+
+        verify(sensorRepository, times(1)).findByTitle("Test");
+        assertSame(first, second);
+        assertEquals(sensor.getId(), first.getId());
+        assertEquals(1, sensorService.getCacheHits());
+        assertEquals(1, sensorService.getCacheMisses());
+    }
+
+    @Test
+    public void givenSensorFoundByTitle_whenFindById_serveFromCache(){
+
+        given(sensorRepository.findByTitle("Test")).willReturn(Optional.of(sensor));
+
+        sensorService.findByTitle("Test");
+        assertTrue(sensorService.findById(sensor.getId()).isPresent());
+
+        verify(sensorRepository, never()).findById(any());
+    }
+
+    @Test
+    public void givenUnknownTitle_whenSensorCreated_findIt(){
+
+        given(sensorRepository.findByTitle("Test")).willReturn(Optional.empty());
+        assertTrue(sensorService.findByTitle("Test").isEmpty());
+
+        sensorService.save(sensor);
+        given(sensorRepository.findByTitle("Test")).willReturn(Optional.of(sensor));
+
+        assertTrue(sensorService.findByTitle("Test").isPresent());
+    }
+
+    @Test
+    public void givenFullCache_whenNewSensorCached_evictLeastRecentlyUsed(){
+
+        Sensor other = sensor("Other");
+        Sensor third = sensor("Third");
+        given(sensorRepository.findByTitleIn(anyCollection())).willReturn(List.of(sensor, other));
+        sensorService.findByTitles(Set.of("Test", "Other"));
+        sensorService.findByTitle("Test");
+
+        given(sensorRepository.findByTitle("Third")).willReturn(Optional.of(third));
+        sensorService.findByTitle("Third");
+        given(sensorRepository.findByTitle("Other")).willReturn(Optional.of(other));
+        sensorService.findByTitle("Test");
+        sensorService.findByTitle("Other");
+
+        verify(sensorRepository, never()).findByTitle("Test");
+        verify(sensorRepository, times(1)).findByTitle("Other");
+    }
+
+    @Test
+    public void givenPartlyCachedTitles_whenFindByTitles_queryOnlyMissingOnes(){
+
+        Sensor other = sensor("Other");
+        given(sensorRepository.findByTitle("Test")).willReturn(Optional.of(sensor));
+        given(sensorRepository.findByTitleIn(List.of("Other"))).willReturn(List.of(other));
+        sensorService.findByTitle("Test");
+
+        List<Sensor> sensors = sensorService.findByTitles(List.of("Test", "Other"));
+
+        assertEquals(2, sensors.size());
+        verify(sensorRepository, times(1)).findByTitleIn(List.of("Other"));
+    }
+
+    @Test
+    public void givenOnlyTitles_whenFindSensors_lookUpByTitle(){
+
+        given(sensorRepository.findByTitleIn(List.of("Test"))).willReturn(List.of(sensor));
+
+        assertEquals(List.of(sensor), sensorService.findSensors(List.of(), List.of("Test")));
+        verify(sensorRepository, never()).findAll();
+    }
+
+    @Test
+    public void givenIdsAndTitles_whenFindSensors_lookUpByBoth(){
+
+        sensorService.findSensors(List.of(sensor.getId()), List.of("Test"));
+        sensorService.findSensors(List.of(sensor.getId()), List.of());
+
+        verify(sensorRepository).findByIdInAndTitleIn(List.of(sensor.getId()), List.of("Test"));
+        verify(sensorRepository).findByIdIn(List.of(sensor.getId()));
+        verify(sensorRepository, never()).findAll();
+    }
+
+    private static Sensor sensor(String title){
+        Sensor sensor = new Sensor();
+        sensor.setId(UUID.randomUUID());
+        sensor.setTitle(title);
+        return sensor;
+    }
+}
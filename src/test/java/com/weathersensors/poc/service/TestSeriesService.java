@@ -0,0 +1,195 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Metric;
+import com.weathersensors.poc.entity.MetricAggregate;
+import com.weathersensors.poc.entity.RollupResolution;
+import com.weathersensors.poc.entity.WeatherRollup;
+import com.weathersensors.poc.repository.ReportRow;
+import com.weathersensors.poc.repository.WeatherReportRepository;
+import com.weathersensors.poc.repository.WeatherRollupRepository;
+import com.weathersensors.poc.store.SensorSeries;
+import com.weathersensors.poc.store.SeriesStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestSeriesService {
+
+    private static final UUID SENSOR_ID = UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f");
+
+    private WeatherReportRepository weatherReportRepository;
+    private RollupService rollupService;
+    private RetentionService retentionService;
+    private SeriesService seriesService;
+
+    @BeforeEach
+    public void setUp(){
+        weatherReportRepository = mock(WeatherReportRepository.class);
+        seriesService = new SeriesService(1000);
+        ReflectionTestUtils.setField(seriesService, "weatherReportRepository", weatherReportRepository);
+        ReflectionTestUtils.setField(seriesService, "seriesStore", mock(SeriesStore.class));
+        ReflectionTestUtils.setField(seriesService, "transactionManager", mock(PlatformTransactionManager.class));
+        rollupService = new RollupService("UTC");
+        ReflectionTestUtils.setField(rollupService, "weatherRollupRepository", mock(WeatherRollupRepository.class));
+        rollupService = spy(rollupService);
+        retentionService = mock(RetentionService.class);
+        ReflectionTestUtils.setField(seriesService, "rollupService", rollupService);
+        ReflectionTestUtils.setField(seriesService, "retentionService", retentionService);
+    }
+
+    @Test
+    public void givenRowsInOrder_whenSeries_aggregateEachBucket(){
+
+        Instant from = Instant.parse("2023-01-01T00:40:00Z");
+        Instant to = Instant.parse("2023-01-01T02:00:00Z");
+        given(weatherReportRepository.streamRows(eq(SENSOR_ID), any(), any())).willReturn(Stream.of(
+                row("2023-01-01T00:45:00Z", 10, null),
+                row("2023-01-01T00:50:00Z", 20, 60),
+                row("2023-01-01T01:40:00Z", 5, null)));
+
+        MetricAggregate[] buckets = seriesService.series(SENSOR_ID, Metric.TEMPERATURE, from, to, Duration.ofMinutes(30));
+
+        //Buckets are aligned to whole half hours, so the first one starts at 00:30 and there are three of them
+        assertEquals(3, buckets.length);
+        assertEquals(15.0, buckets[0].average());
+        assertNull(buckets[1]);
+        assertEquals(1, buckets[2].getCount());
+    }
+
+    @Test
+    public void givenMetricMissingFromRows_whenSeries_skipThoseRows(){
+
+        given(weatherReportRepository.streamRows(eq(SENSOR_ID), any(), any())).willReturn(Stream.of(
+                row("2023-01-01T00:45:00Z", 10, null),
+                row("2023-01-01T00:50:00Z", 20, 60)));
+
+        MetricAggregate[] buckets = seriesService.series(SENSOR_ID, Metric.HUMIDITY,
+                Instant.parse("2023-01-01T00:00:00Z"), Instant.parse("2023-01-01T01:00:00Z"), Duration.ofMinutes(30));
+
+        assertNull(buckets[0]);
+        assertEquals(1, buckets[1].getCount());
+        assertEquals(60, buckets[1].minimum());
+    }
+
+    @Test
+    public void givenDailyBuckets_whenSeries_readWholeDaysAndHoursFromRollupsAndOnlyTheEdgesRaw(){
+
+        Instant from = Instant.parse("2023-01-01T22:30:00Z");
+        Instant to = Instant.parse("2023-01-03T00:15:00Z");
+        doReturn(List.of(rollup(RollupResolution.DAY, "2023-01-02T00:00:00Z", 10))).when(rollupService).rollups(SENSOR_ID,
+                RollupResolution.DAY, Instant.parse("2023-01-02T00:00:00Z"), Instant.parse("2023-01-03T00:00:00Z"));
+        doReturn(List.of(rollup(RollupResolution.HOUR, "2023-01-01T23:00:00Z", 20))).when(rollupService).rollups(SENSOR_ID,
+                RollupResolution.HOUR, Instant.parse("2023-01-01T23:00:00Z"), Instant.parse("2023-01-02T00:00:00Z"));
+        given(weatherReportRepository.streamRows(SENSOR_ID, Date.from(from), Date.from(Instant.parse("2023-01-01T23:00:00Z"))))
+                .willReturn(Stream.of(row("2023-01-01T22:40:00Z", 30, null)));
+        given(weatherReportRepository.streamRows(SENSOR_ID, Date.from(Instant.parse("2023-01-03T00:00:00Z")), Date.from(to)))
+                .willReturn(Stream.of(row("2023-01-03T00:05:00Z", 40, null)));
+
+        MetricAggregate[] buckets = seriesService.series(SENSOR_ID, Metric.TEMPERATURE, from, to, Duration.ofDays(1));
+
+        assertEquals(3, buckets.length);
+        assertEquals(2, buckets[0].getCount());
+        assertEquals(25.0, buckets[0].average());
+        assertEquals(10, buckets[1].getSum());
+        assertEquals(40, buckets[2].getSum());
+        verify(weatherReportRepository, times(2)).streamRows(any(), any(), any());
+    }
+
+    @Test
+    public void givenColumnarStore_whenSeries_readItInsteadOfTheRollups(){
+
+        SeriesStore seriesStore = mock(SeriesStore.class);
+        given(seriesStore.isEnabled()).willReturn(true);
+        ReflectionTestUtils.setField(seriesService, "seriesStore", seriesStore);
+
+        seriesService.series(SENSOR_ID, Metric.TEMPERATURE, Instant.parse("2023-01-01T00:00:00Z"),
+                Instant.parse("2023-01-02T00:00:00Z"), Duration.ofHours(1));
+
+        verify(seriesStore).forEach(eq(SENSOR_ID), eq(SensorSeries.TEMPERATURE), anyLong(), anyLong(), any());
+        verify(rollupService, never()).rollups(any(), any(), any(), any());
+    }
+
+    @Test
+    public void givenRangeStartingBeforeRetentionCutoff_whenSeries_readThatPartFromHourlyRollups(){
+
+        Instant from = Instant.parse("2023-01-01T22:30:00Z");
+        Instant cutoff = Instant.parse("2023-01-02T00:00:00Z");
+        given(retentionService.cutoff()).willReturn(cutoff);
+        doReturn(List.of(rollup(RollupResolution.HOUR, "2023-01-01T22:00:00Z", 10),
+                rollup(RollupResolution.HOUR, "2023-01-01T23:00:00Z", 30)))
+                .when(rollupService).rollups(SENSOR_ID, RollupResolution.HOUR, Instant.parse("2023-01-01T22:00:00Z"), cutoff);
+        given(weatherReportRepository.streamRows(SENSOR_ID, Date.from(Instant.parse("2023-01-02T01:00:00Z")),
+                Date.from(Instant.parse("2023-01-02T01:30:00Z")))).willReturn(Stream.of(row("2023-01-02T01:10:00Z", 50, null)));
+
+        MetricAggregate[] buckets = seriesService.series(SENSOR_ID, Metric.TEMPERATURE, from,
+                Instant.parse("2023-01-02T01:30:00Z"), Duration.ofHours(2));
+
+        assertEquals(2, buckets.length);
+        assertEquals(20.0, buckets[0].average());
+        assertEquals(50.0, buckets[1].average());
+    }
+
+    @Test
+    public void givenMinuteBucketBeforeRetentionCutoff_whenSeries_thenFailNamingTheCutoff(){
+
+        given(retentionService.cutoff()).willReturn(Instant.parse("2023-01-02T00:00:00Z"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> seriesService.series(SENSOR_ID,
+                Metric.TEMPERATURE, Instant.parse("2023-01-01T23:00:00Z"), Instant.parse("2023-01-02T01:00:00Z"),
+                Duration.ofMinutes(15)));
+        assertTrue(e.getMessage().contains("2023-01-02T00:00:00Z"));
+    }
+
+    @Test
+    public void givenYearOfHourlyBuckets_whenBucketFor_widenToMaxPoints(){
+
+        Instant from = Instant.parse("2023-01-01T00:00:00Z");
+        Instant to = Instant.parse("2024-01-01T00:00:00Z");
+
+        Duration bucket = SeriesService.bucketFor(from, to, Duration.ofHours(1), 1000);
+
+        assertEquals(Duration.ofHours(9), bucket);
+        assertEquals(Duration.ofMinutes(15), SeriesService.bucketFor(from, from.plusSeconds(3600), Duration.ofMinutes(15), 1000));
+    }
+
+    @Test
+    public void givenBucketText_whenParseBucket_roundTripThroughFormat(){
+
+        assertEquals(Duration.ofSeconds(30), SeriesService.parseBucket("30s"));
+        assertEquals(Duration.ofDays(1), SeriesService.parseBucket("1d"));
+        assertEquals("2h", SeriesService.formatBucket(SeriesService.parseBucket("120m")));
+        assertThrows(IllegalArgumentException.class, () -> SeriesService.parseBucket("0h"));
+        assertThrows(IllegalArgumentException.class, () -> SeriesService.parseBucket("1w"));
+    }
+
+    private static WeatherRollup rollup(RollupResolution resolution, String bucketStart, int temperature){
+        WeatherRollup rollup = new WeatherRollup(null, resolution, Date.from(Instant.parse(bucketStart)));
+        rollup.getAggregate().getTemperature().add(temperature);
+        return rollup;
+    }
+
+    private static ReportRow row(String reportDate, Integer temperature, Integer humidity){
+        return new ReportRow() {
+            public UUID getSensorId(){ return SENSOR_ID; }
+            public Date getReportDate(){ return Date.from(Instant.parse(reportDate)); }
+            public Integer getTemperature(){ return temperature; }
+            public Integer getHumidity(){ return humidity; }
+            public Integer getWindSpeed(){ return null; }
+        };
+    }
+}
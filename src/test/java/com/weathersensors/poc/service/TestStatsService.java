@@ -0,0 +1,122 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.store.SeriesStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestStatsService {
+
+    private static final Instant CUTOFF = Instant.parse("2023-02-01T00:00:00Z");
+
+    private RollupService rollupService;
+    private SeriesStore seriesStore;
+    private RetentionService retentionService;
+    private StatsService statsService;
+    private Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        rollupService = mock(RollupService.class);
+        seriesStore = mock(SeriesStore.class);
+        retentionService = mock(RetentionService.class);
+        statsService = new StatsService();
+        ReflectionTestUtils.setField(statsService, "rollupService", rollupService);
+        ReflectionTestUtils.setField(statsService, "seriesStore", seriesStore);
+        ReflectionTestUtils.setField(statsService, "retentionService", retentionService);
+
+        sensor = new Sensor();
+        sensor.setId(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f"));
+        given(seriesStore.isEnabled()).willReturn(true);
+        given(retentionService.cutoff()).willReturn(CUTOFF);
+    }
+
+    @Test
+    public void givenRangeAcrossRetentionCutoff_whenAggregate_useRollupsBeforeAndColumnsAfter(){
+
+        Instant from = Instant.parse("2023-01-15T00:00:00Z");
+        Instant to = Instant.parse("2023-02-10T00:00:00Z");
+        given(rollupService.aggregate(List.of(sensor.getId()), List.of(), from, CUTOFF, true))
+                .willReturn(aggregates(10));
+        given(seriesStore.aggregate(List.of(sensor.getId()), CUTOFF, to)).willReturn(aggregates(30));
+
+        Map<UUID, WeatherAggregate> aggregates = statsService.aggregate(List.of(sensor), List.of(sensor.getId()), List.of(),
+                from, to, List.of(Stat.P50));
+
+        assertEquals(2, aggregates.get(sensor.getId()).getTemperature().getCount());
+        assertEquals(20.0, aggregates.get(sensor.getId()).getTemperature().average());
+    }
+
+    @Test
+    public void givenHalfHourZoneDayBeforeRetentionCutoff_whenAggregate_refuseRange(){
+
+        ZoneId kolkata = ZoneId.of("Asia/Kolkata");
+        Instant from = LocalDate.parse("2023-01-10").atStartOfDay(kolkata).toInstant();
+        Instant to = LocalDate.parse("2023-01-11").atStartOfDay(kolkata).toInstant();
+
+        assertThrows(IllegalArgumentException.class, () -> statsService.aggregate(List.of(sensor), List.of(), List.of(),
+                from, to, List.of(Stat.AVERAGE)));
+        verifyNoInteractions(seriesStore);
+        verify(rollupService, never()).aggregate(any(), any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void givenHalfHourZoneDayAfterRetentionCutoff_whenCheckRange_acceptRange(){
+
+        ZoneId kolkata = ZoneId.of("Asia/Kolkata");
+
+        assertDoesNotThrow(() -> statsService.checkRange(LocalDate.parse("2023-02-10").atStartOfDay(kolkata).toInstant(),
+                LocalDate.parse("2023-02-11").atStartOfDay(kolkata).toInstant()));
+        assertDoesNotThrow(() -> statsService.checkRange(Instant.parse("2023-01-10T00:00:00Z"),
+                LocalDate.parse("2023-02-11").atStartOfDay(kolkata).toInstant()));
+    }
+
+    @Test
+    public void givenRangeAfterRetentionCutoff_whenAggregate_onlyUseColumns(){
+
+        Instant from = Instant.parse("2023-02-02T00:00:00Z");
+        Instant to = Instant.parse("2023-02-10T00:00:00Z");
+        given(seriesStore.aggregate(List.of(sensor.getId()), from, to)).willReturn(aggregates(30));
+
+        statsService.aggregate(List.of(sensor), List.of(), List.of(), from, to, List.of(Stat.AVERAGE));
+
+        verify(rollupService, never()).aggregate(any(), any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void givenAllTimeWithRetention_whenAggregate_useSensorRunningAggregates(){
+
+        sensor.getAggregate().getTemperature().add(7);
+
+        Map<UUID, WeatherAggregate> aggregates = statsService.aggregate(List.of(sensor), List.of(), List.of(),
+                null, null, List.of(Stat.AVERAGE));
+
+        assertSame(sensor.getAggregate(), aggregates.get(sensor.getId()));
+        verify(seriesStore, never()).aggregate(any(), any(), any());
+    }
+
+    private Map<UUID, WeatherAggregate> aggregates(int temperature){
+        WeatherAggregate aggregate = new WeatherAggregate();
+        aggregate.getTemperature().add(temperature);
+        Map<UUID, WeatherAggregate> aggregates = new HashMap<>();
+        aggregates.put(sensor.getId(), aggregate);
+        return aggregates;
+    }
+}
@@ -0,0 +1,100 @@
+package com.weathersensors.poc.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.Stat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestSubscriptionService {
+
+    private SensorService sensorService;
+    private StatsService statsService;
+    private SubscriptionService subscriptionService;
+    private Sensor sensor;
+    private Sensor other;
+
+    @BeforeEach
+    public void setUp(){
+        sensorService = mock(SensorService.class);
+        statsService = mock(StatsService.class);
+        subscriptionService = new SubscriptionService(0, 1000, 1);
+        ReflectionTestUtils.setField(subscriptionService, "sensorService", sensorService);
+        ReflectionTestUtils.setField(subscriptionService, "statsService", statsService);
+        ReflectionTestUtils.setField(subscriptionService, "objectMapper", new ObjectMapper());
+
+        sensor = sensor("41d4bbbf-ea25-46fb-8d18-614053f4267f", "Test");
+        other = sensor("41d4bbbf-ea25-46fb-8d18-614053f4268f", "Test2");
+        given(sensorService.findSensors(any(), any())).willReturn(List.of(sensor));
+        given(statsService.aggregate(anyList(), any(), any(), any(), any(), any())).willReturn(Map.of());
+    }
+
+    @AfterEach
+    public void tearDown(){
+        subscriptionService.close();
+    }
+
+    @Test
+    public void givenManySubscribers_whenPublish_aggregateOncePerSetOfStats(){
+
+        for(int i = 0; i < 100; i++){
+            subscriptionService.subscribe(List.of(sensor), List.of(Stat.MAX));
+            subscriptionService.subscribe(List.of(sensor, other), List.of(Stat.AVERAGE, Stat.MIN));
+            subscriptionService.subscribe(List.of(sensor, other), List.of(Stat.MIN, Stat.AVERAGE));
+        }
+        clearInvocations(sensorService, statsService);
+
+        subscriptionService.changed(List.of(sensor.getId()));
+        subscriptionService.changed(List.of(sensor.getId()));
+        subscriptionService.publish();
+
+        verify(sensorService, times(2)).findSensors(Set.of(sensor.getId()), List.of());
+        verify(statsService, times(2)).aggregate(anyList(), any(), any(), any(), any(), any());
+        assertEquals(300, subscriptionService.getSubscriberCount());
+    }
+
+    @Test
+    public void givenChangeOfUnsubscribedSensor_whenPublish_readNothing(){
+
+        subscriptionService.subscribe(List.of(sensor), List.of(Stat.MAX));
+        clearInvocations(sensorService, statsService);
+
+        subscriptionService.changed(List.of(other.getId()));
+        subscriptionService.publish();
+
+        verifyNoInteractions(sensorService, statsService);
+    }
+
+    @Test
+    public void givenMaxSubscribers_whenSubscribe_refuse(){
+
+        subscriptionService.close();
+        subscriptionService = new SubscriptionService(0, 1, 1);
+        ReflectionTestUtils.setField(subscriptionService, "statsService", statsService);
+        ReflectionTestUtils.setField(subscriptionService, "objectMapper", new ObjectMapper());
+
+        assertTrue(subscriptionService.subscribe(List.of(sensor), List.of(Stat.MAX)).isPresent());
+        assertTrue(subscriptionService.subscribe(List.of(sensor), List.of(Stat.MAX)).isEmpty());
+        assertEquals(1, subscriptionService.getSubscriberCount());
+    }
+
+    private static Sensor sensor(String id, String title){
+        Sensor sensor = new Sensor();
+        sensor.setId(UUID.fromString(id));
+        sensor.setTitle(title);
+        return sensor;
+    }
+}
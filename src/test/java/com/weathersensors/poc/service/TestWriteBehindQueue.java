@@ -0,0 +1,115 @@
+package com.weathersensors.poc.service;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestWriteBehindQueue {
+
+    private IngestService ingestService;
+    private Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        ingestService = mock(IngestService.class);
+        sensor = new Sensor();
+        sensor.setId(UUID.randomUUID());
+        sensor.setTitle("Test");
+    }
+
+    @Test
+    public void givenFullQueue_whenOffer_rejectWithoutBlocking(){
+
+        WriteBehindQueue queue = queue(2, 10);
+
+        assertTrue(queue.offer(report()));
+        assertTrue(queue.offer(report()));
+        assertFalse(queue.offer(report()));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void givenQueuedReports_whenStopped_writeThemInBatches() throws InterruptedException {
+
+        WriteBehindQueue queue = queue(100, 4);
+        for(int i = 0; i < 10; i++){
+            queue.offer(report());
+        }
+
+        queue.start();
+        queue.stop();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<WeatherReport>> batches = ArgumentCaptor.forClass(List.class);
+        verify(ingestService, atLeast(3)).ingestAll(batches.capture());
+        assertEquals(10, batches.getAllValues().stream().mapToInt(List::size).sum());
+        batches.getAllValues().forEach(batch -> assertTrue(batch.size() <= 4));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void givenFailingBatch_whenWritten_keepDraining() throws InterruptedException {
+
+        WriteBehindQueue queue = queue(100, 1);
+        doThrow(new IllegalArgumentException("Sensor not found")).doNothing().when(ingestService).ingestAll(anyList());
+        queue.offer(report());
+        queue.offer(report());
+
+        queue.start();
+        queue.stop();
+
+        verify(ingestService, times(2)).ingestAll(anyList());
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void givenMixedBatch_whenWritten_storeGoodReportsAndDropOnlyTheBadOne() throws InterruptedException {
+
+        Sensor deleted = new Sensor();
+        deleted.setId(UUID.randomUUID());
+        List<WeatherReport> stored = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<WeatherReport> batch = invocation.getArgument(0);
+            if(batch.stream().anyMatch(wr -> wr.getSensor() == deleted)){
+                throw new IllegalArgumentException("Sensor with id " + deleted.getId() + " not found");
+            }
+            batch.forEach(wr -> wr.setId(UUID.randomUUID()));
+            stored.addAll(batch);
+            return null;
+        }).when(ingestService).ingestAll(anyList());
+        WriteBehindQueue queue = queue(100, 3);
+        WeatherReport first = report();
+        WeatherReport last = report();
+        queue.offer(first);
+        queue.offer(new WeatherReport.Builder(deleted).withTemperature(10).build());
+        queue.offer(last);
+
+        queue.start();
+        queue.stop();
+
+        assertEquals(List.of(first, last), stored);
+        assertEquals(1, queue.getDropped());
+    }
+
+    private WriteBehindQueue queue(int capacity, int batchSize){
+        WriteBehindQueue queue = new WriteBehindQueue("async", capacity, batchSize, 5);
+        ReflectionTestUtils.setField(queue, "ingestService", ingestService);
+        ReflectionTestUtils.setField(queue, "transactionManager", mock(PlatformTransactionManager.class));
+        return queue;
+    }
+
+    private WeatherReport report(){
+        return new WeatherReport.Builder(sensor).withTemperature(10).build();
+    }
+}
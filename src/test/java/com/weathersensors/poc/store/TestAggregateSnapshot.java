@@ -0,0 +1,194 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.repository.SensorRepository;
+import com.weathersensors.poc.repository.SensorTitleView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestAggregateSnapshot {
+
+    @TempDir
+    Path directory;
+
+    Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        sensor = sensor("41d4bbbf-ea25-46fb-8d18-614053f4267f", "Test");
+    }
+
+    @Test
+    public void givenSnapshotAndNewerRecords_whenRestored_readOnlyTheRecordsAfterTheSnapshot() throws IOException {
+
+        SeriesStore seriesStore = seriesStore();
+        SegmentLog segmentLog = openLog(seriesStore, 2);
+        segmentLog.append(report(sensor, 1000L, 10));
+        segmentLog.append(report(sensor, 2000L, 20));
+        snapshot(segmentLog, seriesStore, registry()).write();
+        segmentLog.append(report(sensor, 3000L, 60));
+        segmentLog.sync();
+        // Replaying the log from its start would now miss the first two reports
+        Files.delete(directory.resolve("log/segment-000000000000.log"));
+
+        SeriesStore restarted = seriesStore();
+        SensorRepository repository = mock(SensorRepository.class);
+        given(repository.findByTitle("Test")).willReturn(Optional.empty());
+        snapshot(openLog(restarted, 2), restarted, repository).restore();
+
+        verify(repository).insertWithId(sensor.getId(), "Test");
+        WeatherAggregate aggregate = restarted.aggregate(List.of(sensor.getId()), null, null).get(sensor.getId());
+        assertEquals(3, aggregate.getTemperature().getCount());
+        assertEquals(30.0, aggregate.getTemperature().average());
+        assertEquals(20, aggregate.getTemperature().percentile(50));
+        assertTrue(aggregate.getHumidity().isEmpty());
+    }
+
+    @Test
+    public void givenSensorCreatedAfterSnapshot_whenRestored_insertItFromTheLog(){
+
+        SeriesStore seriesStore = seriesStore();
+        SegmentLog segmentLog = openLog(seriesStore);
+        segmentLog.appendSensor(sensor);
+        segmentLog.append(report(sensor, 1000L, 10));
+        snapshot(segmentLog, seriesStore, registry()).write();
+        Sensor later = sensor("41d4bbbf-ea25-46fb-8d18-614053f4268f", "Later");
+        segmentLog.appendSensor(later);
+        segmentLog.append(report(later, 2000L, 20));
+        segmentLog.sync();
+
+        SeriesStore restarted = seriesStore();
+        SensorRepository repository = mock(SensorRepository.class);
+        given(repository.findByTitle(any())).willReturn(Optional.empty());
+        snapshot(openLog(restarted), restarted, repository).restore();
+
+        verify(repository).insertWithId(sensor.getId(), "Test");
+        verify(repository).insertWithId(later.getId(), "Later");
+        assertEquals(20, restarted.aggregate(List.of(later.getId()), null, null).get(later.getId()).getTemperature().getSum());
+    }
+
+    @Test
+    public void givenSensorAlreadyStored_whenRestored_leaveItAlone(){
+
+        SeriesStore seriesStore = seriesStore();
+        SegmentLog segmentLog = openLog(seriesStore);
+        segmentLog.append(report(sensor, 1000L, 10));
+        snapshot(segmentLog, seriesStore, registry()).write();
+
+        SeriesStore restarted = seriesStore();
+        SensorRepository repository = mock(SensorRepository.class);
+        given(repository.existsById(sensor.getId())).willReturn(true);
+        snapshot(openLog(restarted), restarted, repository).restore();
+
+        verify(repository, never()).insertWithId(any(), any());
+        assertEquals(1, restarted.aggregate(List.of(sensor.getId()), null, null).get(sensor.getId()).getTemperature().getCount());
+    }
+
+    @Test
+    public void givenCorruptLatestSnapshot_whenRestored_fallBackToThePreviousOne() throws IOException {
+
+        SeriesStore seriesStore = seriesStore();
+        SegmentLog segmentLog = openLog(seriesStore);
+        AggregateSnapshot snapshot = snapshot(segmentLog, seriesStore, registry());
+        segmentLog.append(report(sensor, 1000L, 10));
+        snapshot.write();
+        segmentLog.append(report(sensor, 2000L, 20));
+        snapshot.write();
+        segmentLog.append(report(sensor, 3000L, 30));
+        snapshot.write();
+        try(RandomAccessFile file = new RandomAccessFile(directory.resolve("snapshots/snapshot-000000000003.bin").toFile(), "rw")){
+            file.seek(40);
+            file.write(0x7F);
+        }
+
+        SeriesStore restarted = seriesStore();
+        SensorRepository repository = mock(SensorRepository.class);
+        given(repository.findByTitle("Test")).willReturn(Optional.empty());
+        snapshot(openLog(restarted), restarted, repository).restore();
+
+        WeatherAggregate aggregate = restarted.aggregate(List.of(sensor.getId()), null, null).get(sensor.getId());
+        assertEquals(2, snapshotCount());
+        assertEquals(3, aggregate.getTemperature().getCount());
+        assertEquals(60, aggregate.getTemperature().getSum());
+    }
+
+    @Test
+    public void givenJpaStorage_whenRestored_thenFail(){
+
+        SegmentLog segmentLog = new SegmentLog(mock(SeriesStore.class), "jpa", directory.resolve("log").toString(), 1024);
+
+        assertThrows(IllegalStateException.class, () -> snapshot(segmentLog, seriesStore(), registry()).restore());
+    }
+
+    private AggregateSnapshot snapshot(SegmentLog segmentLog, SeriesStore seriesStore, SensorRepository sensorRepository){
+        return new AggregateSnapshot(segmentLog, seriesStore, sensorRepository, mock(PlatformTransactionManager.class), true,
+                directory.resolve("snapshots").toString());
+    }
+
+    private SegmentLog openLog(SeriesStore seriesStore){
+        return openLog(seriesStore, 16);
+    }
+
+    private SegmentLog openLog(SeriesStore seriesStore, int recordsPerSegment){
+        SegmentLog segmentLog = new SegmentLog(seriesStore, "log", directory.resolve("log").toString(),
+                recordsPerSegment * SegmentLog.RECORD_SIZE);
+        segmentLog.open();
+        return segmentLog;
+    }
+
+    private static SeriesStore seriesStore(){
+        SeriesStore seriesStore = new SeriesStore();
+        ReflectionTestUtils.setField(seriesStore, "enabled", true);
+        return seriesStore;
+    }
+
+    private SensorRepository registry(){
+        SensorRepository sensorRepository = mock(SensorRepository.class);
+        SensorTitleView view = mock(SensorTitleView.class);
+        given(view.getId()).willReturn(sensor.getId());
+        given(view.getTitle()).willReturn(sensor.getTitle());
+        given(sensorRepository.findAllBy()).willReturn(List.of(view));
+        return sensorRepository;
+    }
+
+    private static Sensor sensor(String id, String title){
+        Sensor sensor = new Sensor();
+        sensor.setId(UUID.fromString(id));
+        sensor.setTitle(title);
+        return sensor;
+    }
+
+    private static WeatherReport report(Sensor sensor, long timestamp, Integer temperature){
+        WeatherReport weatherReport = new WeatherReport.Builder(sensor)
+                .withTemperature(temperature)
+                .build();
+        weatherReport.setReportDate(new Date(timestamp));
+        return weatherReport;
+    }
+
+    private long snapshotCount() throws IOException {
+        try(Stream<Path> files = Files.list(directory.resolve("snapshots"))){
+            return files.count();
+        }
+    }
+}
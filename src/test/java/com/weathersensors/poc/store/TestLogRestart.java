@@ -0,0 +1,76 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.WeatherSensorsApplication;
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherAggregate;
+import com.weathersensors.poc.entity.WeatherReport;
+import com.weathersensors.poc.service.IngestService;
+import com.weathersensors.poc.service.SensorService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Restarts the application in log storage mode with a fresh in-memory database each time, so whatever
+ * comes back after the restart was read from the log and the snapshots.
+ */
+public class TestLogRestart {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenSensorCreatedAfterSnapshot_whenRestarted_restoreBothSensorsAndTheirReadings() throws IOException {
+
+        UUID before;
+        UUID after;
+        try(ConfigurableApplicationContext context = start()){
+            before = create(context, "Before", 10);
+            context.getBean(AggregateSnapshot.class).write();
+            after = create(context, "After", 20);
+            context.getBean(SegmentLog.class).sync();
+        }
+        // Shutting down wrote one more snapshot, without it the restart is the one after a crash
+        Files.delete(directory.resolve("snapshots/snapshot-000000000002.bin"));
+
+        try(ConfigurableApplicationContext context = start()){
+            SensorService sensorService = context.getBean(SensorService.class);
+            assertEquals(before, sensorService.findByTitle("Before").orElseThrow().getId());
+            assertEquals(after, sensorService.findByTitle("After").orElseThrow().getId());
+            SeriesStore seriesStore = context.getBean(SeriesStore.class);
+            WeatherAggregate aggregate = seriesStore.aggregate(List.of(after), null, null).get(after);
+            assertEquals(1, aggregate.getTemperature().getCount());
+            assertEquals(20, aggregate.getTemperature().getSum());
+            assertEquals(10, seriesStore.aggregate(List.of(before), null, null).get(before).getTemperature().getSum());
+        }
+    }
+
+    private ConfigurableApplicationContext start(){
+        return new SpringApplicationBuilder(WeatherSensorsApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DATABASE_TO_LOWER=TRUE",
+                "--weather.storage.mode=log",
+                "--weather.store.columnar.enabled=true",
+                "--weather.storage.log.directory=" + directory.resolve("log"),
+                "--weather.snapshot.enabled=true",
+                "--weather.snapshot.directory=" + directory.resolve("snapshots"),
+                "--weather.snapshot.interval=3600000");
+    }
+
+    private static UUID create(ConfigurableApplicationContext context, String title, int temperature){
+        Sensor sensor = new Sensor();
+        sensor.setTitle(title);
+        context.getBean(SensorService.class).save(sensor);
+        context.getBean(IngestService.class).ingest(new WeatherReport.Builder(sensor).withTemperature(temperature).build());
+        return sensor.getId();
+    }
+}
@@ -0,0 +1,156 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.entity.Sensor;
+import com.weathersensors.poc.entity.WeatherReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+public class TestSegmentLog {
+
+    @TempDir
+    Path directory;
+
+    Sensor sensor;
+
+    @BeforeEach
+    public void setUp(){
+        sensor = new Sensor();
+        sensor.setId(UUID.fromString("41d4bbbf-ea25-46fb-8d18-614053f4267f"));
+        sensor.setTitle("Test");
+    }
+
+    @Test
+    public void givenAppendedReports_whenReopened_readEveryRecordAcrossSegments() throws IOException {
+
+        SeriesStore seriesStore = seriesStore();
+        SegmentLog segmentLog = open(seriesStore, 4);
+        for(int i = 0; i < 10; i++){
+            segmentLog.append(report(1000L + i, i, i % 2 == 0 ? null : 50));
+        }
+        segmentLog.sync();
+
+        SegmentLog reopened = open(seriesStore(), 4);
+        SegmentLog.RecordConsumer consumer = mock(SegmentLog.RecordConsumer.class);
+        reopened.forEach(SegmentLog.Position.START, reopened.position(), consumer);
+
+        assertEquals(3, segmentCount());
+        assertEquals(new SegmentLog.Position(2, 2), reopened.position());
+        verify(seriesStore, times(10)).append(any(WeatherReport.class));
+        verify(consumer, times(10)).accept(eq(sensor.getId()), anyLong(), any(), any(), isNull());
+        verify(consumer).accept(sensor.getId(), 1003L, 3, 50, null);
+        verify(consumer).accept(sensor.getId(), 1004L, 4, null, null);
+    }
+
+    @Test
+    public void givenTornRecord_whenReopened_stopReplayAndOverwriteIt() throws IOException {
+
+        SegmentLog segmentLog = open(seriesStore(), 16);
+        segmentLog.append(report(1000L, 1, null));
+        segmentLog.append(report(2000L, 2, null));
+        segmentLog.sync();
+        try(RandomAccessFile file = new RandomAccessFile(directory.resolve("segment-000000000000.log").toFile(), "rw")){
+            file.seek(SegmentLog.RECORD_SIZE + 50);
+            file.write(0x7F);
+        }
+
+        SegmentLog reopened = open(seriesStore(), 16);
+        SegmentLog.Position afterTear = reopened.position();
+        reopened.append(report(3000L, 3, null));
+        reopened.sync();
+        SegmentLog afterOverwrite = open(seriesStore(), 16);
+        SegmentLog.RecordConsumer consumer = mock(SegmentLog.RecordConsumer.class);
+        afterOverwrite.forEach(SegmentLog.Position.START, afterOverwrite.position(), consumer);
+
+        assertEquals(new SegmentLog.Position(0, 1), afterTear);
+        verify(consumer, times(2)).accept(any(), anyLong(), any(), any(), any());
+        verify(consumer).accept(sensor.getId(), 3000L, 3, null, null);
+    }
+
+    @Test
+    public void givenSensorLogged_whenReopened_readItInOrderWithoutSpanningSegments(){
+
+        SegmentLog segmentLog = open(seriesStore(), 4);
+        for(int i = 0; i < 3; i++){
+            segmentLog.append(report(1000L + i, i, null));
+        }
+        segmentLog.appendSensor(sensor);
+        segmentLog.append(report(2000L, 20, null));
+        segmentLog.sync();
+
+        SegmentLog reopened = open(seriesStore(), 4);
+        SegmentLog.RecordConsumer consumer = mock(SegmentLog.RecordConsumer.class);
+        SegmentLog.SensorConsumer sensors = mock(SegmentLog.SensorConsumer.class);
+        reopened.forEach(SegmentLog.Position.START, reopened.position(), consumer, sensors);
+
+        assertEquals(new SegmentLog.Position(1, 3), reopened.position());
+        InOrder inOrder = inOrder(consumer, sensors);
+        inOrder.verify(consumer, times(3)).accept(eq(sensor.getId()), anyLong(), any(), isNull(), isNull());
+        inOrder.verify(sensors).accept(sensor.getId(), "Test");
+        inOrder.verify(consumer).accept(sensor.getId(), 2000L, 20, null, null);
+    }
+
+    @Test
+    public void givenPosition_whenMoreAppended_forEachReadsOnlyTheNewerRecords(){
+
+        SegmentLog segmentLog = open(seriesStore(), 4);
+        for(int i = 0; i < 3; i++){
+            segmentLog.append(report(1000L + i, i, null));
+        }
+        SegmentLog.Position position = segmentLog.position();
+        for(int i = 3; i < 7; i++){
+            segmentLog.append(report(1000L + i, i, null));
+        }
+
+        SegmentLog.RecordConsumer consumer = mock(SegmentLog.RecordConsumer.class);
+        segmentLog.forEach(position, segmentLog.position(), consumer);
+
+        assertEquals(new SegmentLog.Position(0, 3), position);
+        assertEquals(new SegmentLog.Position(1, 3), segmentLog.position());
+        verify(consumer, times(4)).accept(eq(sensor.getId()), anyLong(), any(), isNull(), isNull());
+        verify(consumer).accept(sensor.getId(), 1003L, 3, null, null);
+        verify(consumer).accept(sensor.getId(), 1006L, 6, null, null);
+    }
+
+    private SegmentLog open(SeriesStore seriesStore, int recordsPerSegment){
+        SegmentLog segmentLog = new SegmentLog(seriesStore, "log", directory.toString(),
+                recordsPerSegment * SegmentLog.RECORD_SIZE);
+        segmentLog.open();
+        return segmentLog;
+    }
+
+    private static SeriesStore seriesStore(){
+        SeriesStore seriesStore = mock(SeriesStore.class);
+        given(seriesStore.isEnabled()).willReturn(true);
+        return seriesStore;
+    }
+
+    private WeatherReport report(long timestamp, Integer temperature, Integer humidity){
+        WeatherReport weatherReport = new WeatherReport.Builder(sensor)
+                .withTemperature(temperature)
+                .withHumidity(humidity)
+                .build();
+        weatherReport.setReportDate(new Date(timestamp));
+        return weatherReport;
+    }
+
+    private long segmentCount() throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.weathersensors.poc.store;
+
+import com.weathersensors.poc.entity.WeatherAggregate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSensorSeries {
+
+    @Test
+    public void givenReadingsAcrossChunks_whenAggregate_countEveryPresentValue(){
+
+        SensorSeries series = new SensorSeries();
+        int readings = SensorSeries.CHUNK_SIZE * 2 + 10;
+        for(int i = 0; i < readings; i++){
+            series.append(i, i % 100, i % 2 == 0 ? null : 50, null);
+        }
+
+        WeatherAggregate aggregate = new WeatherAggregate();
+        series.aggregate(aggregate);
+
+        assertEquals(readings, series.size());
+        assertEquals(readings, aggregate.getTemperature().getCount());
+        assertEquals(0, aggregate.getTemperature().minimum());
+        assertEquals(99, aggregate.getTemperature().maximum());
+        assertEquals(readings / 2, aggregate.getHumidity().getCount());
+        assertTrue(aggregate.getWindSpeed().isEmpty());
+    }
+
+    @Test
+    public void givenRange_whenAggregate_includeFromAndExcludeTo(){
+
+        SensorSeries series = new SensorSeries();
+        for(int i = 0; i < 10_000; i++){
+            series.append(i * 1000L, 1, null, null);
+        }
+
+        WeatherAggregate aggregate = new WeatherAggregate();
+        series.aggregate(4_000_000L, 8_096_000L, aggregate);
+
+        assertEquals(4096, aggregate.getTemperature().getCount());
+    }
+
+    @Test
+    public void givenRange_whenForEach_visitPresentValuesInOrder(){
+
+        SensorSeries series = new SensorSeries();
+        for(int i = 0; i < 10; i++){
+            series.append(i * 1000L, null, i % 3 == 0 ? null : i, null);
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        series.forEach(SensorSeries.HUMIDITY, 2000, 8000, (timestamp, value) -> {
+            timestamps.add(timestamp);
+            values.add(value);
+        });
+
+        assertEquals(List.of(2000L, 4000L, 5000L, 7000L), timestamps);
+        assertEquals(List.of(2, 4, 5, 7), values);
+    }
+
+    @Test
+    public void givenReadingsAcrossChunks_whenTruncateBefore_keepNewerReadings(){
+
+        SensorSeries series = new SensorSeries();
+        int readings = SensorSeries.CHUNK_SIZE * 3;
+        for(int i = 0; i < readings; i++){
+            series.append(i, i, null, null);
+        }
+
+        series.truncateBefore(SensorSeries.CHUNK_SIZE);
+        series.truncateBefore(SensorSeries.CHUNK_SIZE + 100);
+        series.append(readings, -1, null, null);
+
+        WeatherAggregate aggregate = new WeatherAggregate();
+        series.aggregate(aggregate);
+        assertEquals(readings - SensorSeries.CHUNK_SIZE - 100 + 1, series.size());
+        assertEquals(-1, aggregate.getTemperature().minimum());
+        assertEquals(readings - 1, aggregate.getTemperature().maximum());
+        WeatherAggregate oldest = new WeatherAggregate();
+        series.aggregate(0, SensorSeries.CHUNK_SIZE + 101, oldest);
+        assertEquals(1, oldest.getTemperature().getCount());
+        assertEquals(SensorSeries.CHUNK_SIZE + 100, oldest.getTemperature().minimum());
+
+        series.truncateBefore(Long.MAX_VALUE);
+        assertEquals(0, series.size());
+    }
+
+    @Test
+    public void givenLateReading_whenAppend_keepSeriesOrdered(){
+
+        SensorSeries series = new SensorSeries();
+        series.append(1000, 10, null, null);
+        series.append(3000, 30, null, 7);
+        series.append(2000, 20, 40, null);
+
+        WeatherAggregate upToLate = new WeatherAggregate();
+        series.aggregate(0, 2001, upToLate);
+        WeatherAggregate afterLate = new WeatherAggregate();
+        series.aggregate(2001, 4000, afterLate);
+
+        assertEquals(30, upToLate.getTemperature().getSum());
+        assertEquals(40, upToLate.getHumidity().getSum());
+        assertTrue(upToLate.getWindSpeed().isEmpty());
+        assertEquals(30, afterLate.getTemperature().getSum());
+        assertEquals(7, afterLate.getWindSpeed().getSum());
+        assertTrue(afterLate.getHumidity().isEmpty());
+    }
+}